@@ -0,0 +1,89 @@
+package com.sultanofcardio.database.benchmark;
+
+import com.sultanofcardio.database.sql.Database;
+import com.sultanofcardio.database.sql.FileDatabase;
+import com.sultanofcardio.database.sql.MemoryDatabase;
+import com.sultanofcardio.database.sql.types.Types;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures statements executed end-to-end through {@link Database#execute} and {@link Database#run}, against an
+ * H2 in-memory database and an SQLite file database. <br><br>
+ *
+ * Run with <code>./gradlew jmh</code>. The gc profiler reports allocations per operation as
+ * <code>gc.alloc.rate.norm</code>
+ */
+@State(Scope.Benchmark)
+public class ExecutionBenchmark {
+    private static final int ROWS = 1000;
+
+    @Param({"H2Mem", "SQLite"})
+    public String type;
+
+    private Database database;
+    private File file;
+
+    @Setup
+    public void setup() throws SQLException, IOException {
+        if(type.equals("SQLite")) {
+            file = File.createTempFile("hoverdb-benchmark", ".db");
+            database = FileDatabase.connect(file.getAbsolutePath(), Types.SQLite, "execution-sqlite");
+            database.run("CREATE TABLE test_table ( id INTEGER PRIMARY KEY, words VARCHAR(50) )");
+        } else {
+            database = MemoryDatabase.Companion.connect("benchmark", Types.H2Mem, "execution-h2");
+            database.run("CREATE TABLE test_table ( id INTEGER PRIMARY KEY, words VARCHAR(50) )");
+        }
+
+        for(int i = 0; i < ROWS; i++) {
+            database.insert()
+                    .into("test_table")
+                    .value("id", i)
+                    .value("words", "Row " + i)
+                    .run();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.getPool().close();
+        if(file != null && !file.delete()) file.deleteOnExit();
+    }
+
+    @Benchmark
+    public void selectById(Blackhole blackhole) throws SQLException {
+        database.select("words")
+                .from("test_table")
+                .where("id", ThreadLocalRandom.current().nextInt(ROWS))
+                .execute(resultSet -> {
+                    while (resultSet.next()) blackhole.consume(resultSet.getString(1));
+                });
+    }
+
+    @Benchmark
+    public void selectRaw(Blackhole blackhole) throws SQLException {
+        database.execute("SELECT words FROM test_table WHERE id = " + ThreadLocalRandom.current().nextInt(ROWS),
+                resultSet -> {
+                    while (resultSet.next()) blackhole.consume(resultSet.getString(1));
+                });
+    }
+
+    @Benchmark
+    public long updateById() throws SQLException {
+        return database.update("test_table")
+                .set("words", "Updated")
+                .where("id", ThreadLocalRandom.current().nextInt(ROWS))
+                .run();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long updateByIdContended() throws SQLException {
+        return updateById();
+    }
+}
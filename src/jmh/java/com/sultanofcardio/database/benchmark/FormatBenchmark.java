@@ -0,0 +1,83 @@
+package com.sultanofcardio.database.benchmark;
+
+import com.sultanofcardio.database.sql.BoundSql;
+import com.sultanofcardio.database.sql.Database;
+import com.sultanofcardio.database.sql.statement.Insert;
+import com.sultanofcardio.database.sql.statement.Select;
+import com.sultanofcardio.database.sql.statement.Statement;
+import com.sultanofcardio.database.sql.statement.Update;
+import com.sultanofcardio.database.sql.types.DatabaseType;
+import com.sultanofcardio.database.sql.types.Types;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures how fast each built-in {@link DatabaseType} formats statements, and how much it allocates doing so.
+ * No database connection is needed. <br><br>
+ *
+ * Run with <code>./gradlew jmh</code>. The gc profiler reports allocations per operation as
+ * <code>gc.alloc.rate.norm</code>
+ */
+@State(Scope.Thread)
+public class FormatBenchmark {
+
+    /**
+     * The name of a constant in {@link Types}
+     */
+    @Param({"MySQL", "SQLServer", "Oracle", "PostgreSQL", "SQLite", "H2File", "H2Mem"})
+    public String type;
+
+    private Select<?> select;
+    private Update<?> update;
+    private Insert<?> insert;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        DatabaseType databaseType = (DatabaseType) Types.class.getField(type).get(null);
+        Database database = Database.connect("benchmark", databaseType, "localhost", "0", "user", "",
+                "format-" + type);
+
+        select = database.select("id", "words", "created")
+                .from("test_table")
+                .where("id", 24)
+                .where("words", "It's a benchmark")
+                .where("created > 0")
+                .orderBy("id")
+                .limit(10);
+
+        update = database.update("test_table")
+                .set("words", "It's a benchmark")
+                .set("count", 3)
+                .where("id", 24);
+
+        insert = database.insert()
+                .into("test_table")
+                .value("id", 24)
+                .value("words", "It's a benchmark")
+                .value("count", 3);
+    }
+
+    @Benchmark
+    public String formatSelect() {
+        return select.toString();
+    }
+
+    @Benchmark
+    public BoundSql bindSelect() {
+        return select.bind();
+    }
+
+    @Benchmark
+    public String formatUpdate() {
+        return update.toString();
+    }
+
+    @Benchmark
+    public String formatInsert() {
+        return insert.toString();
+    }
+
+    @Benchmark
+    public String escape() {
+        return Statement.escape("It's a benchmark");
+    }
+}
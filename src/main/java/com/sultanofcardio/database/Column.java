@@ -0,0 +1,23 @@
+package com.sultanofcardio.database;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Map a field of an {@link Entity} to a column of its table. The enclosing class must be annotated with
+ * {@link EntityName} for a mapper to be generated for it. Mapped fields must not be private, static or final
+ *
+ * @see MappedEntity
+ */
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = ElementType.FIELD)
+public @interface Column {
+
+    /**
+     * Sets the name of the column
+     * @return The name of the column, or an empty string to use the name of the field
+     */
+    String value() default "";
+}
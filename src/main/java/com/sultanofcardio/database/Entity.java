@@ -2,7 +2,6 @@ package com.sultanofcardio.database;
 
 import com.sultanofcardio.database.sql.Database;
 
-import java.lang.reflect.Constructor;
 import java.sql.SQLException;
 import java.util.List;
 
@@ -44,7 +43,9 @@ public abstract class Entity<T extends Entity<T>> {
     }
 
     /**
-     * Get an instance of an entity from the database
+     * Get an instance of an entity from the database. The entity is created by its generated {@link EntityMapper}
+     * if it has one, and otherwise by its constructor that takes a {@link Database}, which is looked up once per
+     * entity class
      * @param type The type of the entity to load
      * @param database The database from which to load
      * @param args The arguments to load by
@@ -53,15 +54,11 @@ public abstract class Entity<T extends Entity<T>> {
      * @throws Exception if any error occurs while loading, or if the entity is not found
      */
     public static <T extends Entity<T>> T load(Class<T> type, Database database, Object... args) throws Exception{
-        Constructor<T> dBConstructor;
-        try {
-            dBConstructor = type.getDeclaredConstructor(Database.class);
-        } catch (NoSuchMethodException e) {
-            throw new IllegalStateException(String.format("Required constructor not found. Please add public %s(Database database){...}", type.getSimpleName()));
-        }
+        EntityMapper<T> mapper = EntityMappers.find(type);
+        if(mapper != null)
+            return mapper.newInstance(database).load(args);
 
-        dBConstructor.setAccessible(true);
-        return dBConstructor.newInstance(database).load(args);
+        return EntityMappers.constructor(type).newInstance(database).load(args);
     }
 
     /**
@@ -0,0 +1,81 @@
+package com.sultanofcardio.database;
+
+import com.sultanofcardio.database.sql.Database;
+import com.sultanofcardio.database.sql.RowMapper;
+import com.sultanofcardio.database.sql.statement.Delete;
+import com.sultanofcardio.database.sql.statement.Insert;
+import com.sultanofcardio.database.sql.statement.Select;
+import com.sultanofcardio.database.sql.statement.Update;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps an {@link Entity} to and from the rows of its table. Implementations are generated at compile time by
+ * {@link com.sultanofcardio.database.processor.EntityProcessor} for every class annotated with {@link EntityName}
+ * that has fields annotated with {@link Column} or {@link Id}, and are named after the entity with a
+ * <code>_Mapper</code> suffix
+ *
+ * @param <T> the type of the entity
+ * @see MappedEntity
+ */
+public interface EntityMapper<T extends Entity<T>> {
+
+    /**
+     * Get the name of the table the entity is stored in
+     * @return The table name
+     */
+    String getTableName();
+
+    /**
+     * Create a new, empty instance of the entity
+     * @param database The database of the entity
+     * @return The new entity
+     */
+    T newInstance(Database database);
+
+    /**
+     * Get a row mapper for a result set. The indexes of the mapped columns are looked up once, when the row mapper
+     * is created, rather than for every row
+     * @param database The database of the entities being mapped
+     * @param resultSet The result set the row mapper will read from
+     * @return A row mapper that creates an entity from each row
+     */
+    RowMapper<T> rowMapper(Database database, ResultSet resultSet) throws SQLException;
+
+    /**
+     * Populate an entity from the current row of a result set
+     * @param entity The entity to populate
+     * @param resultSet The result set, positioned on a row
+     */
+    void hydrate(T entity, ResultSet resultSet) throws SQLException;
+
+    /**
+     * Select the rows of the entity's table with the given identifiers, or every row if none are given
+     * @param database The database to select from
+     * @param ids The values of the identifying columns, in the order they are declared
+     * @return The select query
+     */
+    Select<?> select(Database database, Object... ids);
+
+    /**
+     * Insert an entity as a new row. Identifying columns generated by the database are left out
+     * @param entity The entity to insert
+     * @return The insert statement
+     */
+    Insert<?> insert(T entity);
+
+    /**
+     * Update the row of an entity, by its identifying columns
+     * @param entity The entity to update
+     * @return The update statement
+     */
+    Update<?> update(T entity);
+
+    /**
+     * Delete the row of an entity, by its identifying columns
+     * @param entity The entity to delete
+     * @return The delete statement
+     */
+    Delete<?> delete(T entity);
+}
@@ -0,0 +1,66 @@
+package com.sultanofcardio.database;
+
+import com.sultanofcardio.database.sql.Database;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Finds and caches the generated {@link EntityMapper} of each entity class, along with the constructor used to
+ * create entities that have no mapper, so that reflection only happens once per class
+ */
+final class EntityMappers {
+
+    static final String SUFFIX = "_Mapper";
+
+    private static final ClassValue<EntityMapper<?>[]> mappers = new ClassValue<EntityMapper<?>[]>() {
+        @Override
+        protected EntityMapper<?>[] computeValue(Class<?> type) {
+            try {
+                Class<?> mapperType = Class.forName(type.getName() + SUFFIX, true, type.getClassLoader());
+                return new EntityMapper<?>[]{(EntityMapper<?>) mapperType.getDeclaredConstructor().newInstance()};
+            } catch (ClassNotFoundException e) {
+                return new EntityMapper<?>[]{null};
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unable to create the mapper of " + type.getName(), e);
+            }
+        }
+    };
+
+    private static final ClassValue<Constructor<?>> constructors = new ClassValue<Constructor<?>>() {
+        @Override
+        protected Constructor<?> computeValue(Class<?> type) {
+            Constructor<?> constructor;
+            try {
+                constructor = type.getDeclaredConstructor(Database.class);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(String.format("Required constructor not found. Please add public %s(Database database){...}", type.getSimpleName()));
+            }
+
+            constructor.setAccessible(true);
+            return constructor;
+        }
+    };
+
+    private EntityMappers() {
+    }
+
+    /**
+     * Get the generated mapper of an entity class
+     * @param type The entity class
+     * @return The mapper, or null if none was generated
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Entity<T>> EntityMapper<T> find(Class<T> type) {
+        return (EntityMapper<T>) mappers.get(type)[0];
+    }
+
+    /**
+     * Get the constructor of an entity class that takes its database
+     * @param type The entity class
+     * @return The constructor, which has already been made accessible
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Entity<T>> Constructor<T> constructor(Class<T> type) {
+        return (Constructor<T>) constructors.get(type);
+    }
+}
@@ -1,6 +1,22 @@
 package com.sultanofcardio.database
 
+import com.sultanofcardio.database.sql.Database
+import com.sultanofcardio.database.sql.RowMapper
+import com.sultanofcardio.database.sql.statement.Query
+import com.sultanofcardio.database.sql.statement.Select
+import com.sultanofcardio.database.sql.statement.Statement
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.suspendCancellableCoroutine
 import java.sql.ResultSet
+import java.util.concurrent.CompletableFuture
+import java.util.function.Consumer
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
 
 /**
  * Transform a ResultSet into an immutable list of objects
@@ -19,3 +35,73 @@ fun <R> ResultSet.set(mapper: (ResultSet) -> R): Set<R> {
     while(next()) set.add(mapper(this))
     return set
 }
+
+/**
+ * Lazily read the results of a select query as a sequence of mapped rows. The sequence can only be consumed inside
+ * [block], after which the connection used by the query is returned to its pool
+ */
+inline fun <R, T> Select<*>.sequence(noinline mapper: (ResultSet) -> R, block: (Sequence<R>) -> T): T {
+    return stream(RowMapper(mapper)).use { block(it.iterator().asSequence()) }
+}
+
+/**
+ * A dispatcher for blocking database work, backed by [Database.getAsyncExecutor]. By default it has one thread for
+ * each connection the pool can open, so coroutines waiting on the database never block more threads than that
+ */
+val Database.dispatcher: CoroutineDispatcher
+    get() = asyncExecutor.asCoroutineDispatcher()
+
+/**
+ * Execute this query without blocking the calling thread, reading every row of its result. If the calling coroutine
+ * is cancelled while the query runs, the query is cancelled on the database
+ */
+suspend fun <R> Query<*>.await(mapper: (ResultSet) -> R): List<R> {
+    return executeAsync(RowMapper(mapper)).awaitResult()
+}
+
+/**
+ * Run this statement without blocking the calling thread, and return the number of rows it affected. If the calling
+ * coroutine is cancelled while the statement runs, the statement is cancelled on the database
+ */
+suspend fun Statement<*>.awaitRun(): Long {
+    return runAsync().awaitResult()
+}
+
+/**
+ * Read the results of a select query as a cold flow of mapped rows. The query runs each time the flow is collected.
+ * A single task on the async executor of its database leases a connection, runs the query and reads its rows,
+ * [Select.fetchSize] rows at a time, handing them to the collector through a buffer. Collectors therefore never
+ * wait on that executor, however many of them there are. Cancelling the collector cancels the query, even while
+ * its rows are being read, and returns its connection to the pool
+ */
+fun <R> Select<*>.asFlow(mapper: (ResultSet) -> R): Flow<R> {
+    val select = this
+    return flow {
+        val rows = Channel<R>(Channel.BUFFERED)
+        val reading = select.database.forEachAsync(select, RowMapper(mapper), Consumer { row ->
+            runBlocking { rows.send(row) }
+        })
+        reading.whenComplete { _, error -> rows.close(error) }
+
+        try {
+            for (row in rows) emit(row)
+        } finally {
+            reading.cancel(true)
+            rows.cancel()
+        }
+    }
+}
+
+/**
+ * Suspend until this future completes, cancelling it if the calling coroutine is cancelled
+ */
+private suspend fun <T> CompletableFuture<T>.awaitResult(): T {
+    return suspendCancellableCoroutine { continuation ->
+        whenComplete { value, error ->
+            if (error == null) continuation.resume(value)
+            else continuation.resumeWithException(error)
+        }
+
+        continuation.invokeOnCancellation { cancel(true) }
+    }
+}
@@ -0,0 +1,23 @@
+package com.sultanofcardio.database;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Mark a field of an {@link Entity} as part of the identifier of its table. Entities are loaded, updated and deleted
+ * by their identifying columns. The name of the column can be set with {@link Column}
+ *
+ * @see MappedEntity
+ */
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = ElementType.FIELD)
+public @interface Id {
+
+    /**
+     * Sets whether the database generates the value of this column, in which case it is left out of inserts
+     * @return whether or not the value is generated by the database
+     */
+    boolean generated() default false;
+}
@@ -0,0 +1,135 @@
+package com.sultanofcardio.database;
+
+import com.sultanofcardio.database.sql.Database;
+import com.sultanofcardio.database.sql.RowMapper;
+import com.sultanofcardio.database.sql.UncheckedSQLException;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link Entity} whose loading and saving is done by the {@link EntityMapper} generated for it at compile time.
+ * Annotate the class with {@link EntityName} and its mapped fields with {@link Column} and {@link Id}, and give it a
+ * non-private constructor that takes only a {@link Database}
+ *
+ * <pre>
+ * &#64;EntityName("people")
+ * public class Person extends MappedEntity&lt;Person&gt; {
+ *     &#64;Id(generated = true) int id;
+ *     &#64;Column("full_name") String name;
+ *
+ *     Person(Database database) {
+ *         super(database);
+ *     }
+ * }
+ * </pre>
+ *
+ * @param <T> the type of your entity class
+ */
+@SuppressWarnings("unchecked")
+public abstract class MappedEntity<T extends MappedEntity<T>> extends Entity<T> {
+
+    /**
+     * Create a new instance of this entity on its database
+     * @param database The database on which to create the entity
+     */
+    protected MappedEntity(Database database) {
+        super(database);
+    }
+
+    /**
+     * Get the generated mapper of this entity
+     * @return The mapper
+     * @throws IllegalStateException if no mapper was generated, which usually means annotation processing is off
+     */
+    protected EntityMapper<T> getMapper() {
+        EntityMapper<T> mapper = EntityMappers.find((Class<T>) getClass());
+        if(mapper == null)
+            throw new IllegalStateException("No mapper was generated for " + getClass().getName() +
+                    ". Make sure annotation processing is enabled");
+
+        return mapper;
+    }
+
+    /**
+     * Load this entity from the database by its identifying columns
+     * @param args The values of the identifying columns, in the order they are declared
+     * @return this entity, populated from the database
+     * @throws SQLException if any error occurs while loading, or if the entity is not found
+     */
+    @Override
+    public T load(Object... args) throws SQLException {
+        EntityMapper<T> mapper = getMapper();
+        getDatabase().execute(mapper.select(getDatabase(), args), resultSet -> {
+            if(!resultSet.next())
+                throw new SQLException("Unable to find entity");
+
+            mapper.hydrate((T) this, resultSet);
+        });
+
+        return (T) this;
+    }
+
+    /**
+     * Load every instance of this entity from the database, or only those with the given identifying columns
+     * @param args The values of the identifying columns, if any
+     * @return a list of the loaded entities
+     * @throws SQLException if any error occurs while loading
+     */
+    @Override
+    public List<T> loadAll(Object... args) throws SQLException {
+        EntityMapper<T> mapper = getMapper();
+        List<T> entities = new ArrayList<>();
+        getDatabase().execute(mapper.select(getDatabase(), args), resultSet -> {
+            RowMapper<T> rowMapper = mapper.rowMapper(getDatabase(), resultSet);
+            while (resultSet.next()){
+                entities.add(rowMapper.map(resultSet));
+            }
+        });
+
+        return entities;
+    }
+
+    /**
+     * Insert this entity into the database
+     * @return number of rows affected by the save
+     * @throws UncheckedSQLException if any error occurs while running the save
+     */
+    @Override
+    public long save() {
+        try {
+            return getMapper().insert((T) this).run();
+        } catch (SQLException e) {
+            throw new UncheckedSQLException(e);
+        }
+    }
+
+    /**
+     * Update this entity in the database
+     * @return number of rows affected by the update
+     * @throws UncheckedSQLException if any error occurs while running the update
+     */
+    @Override
+    public long update() {
+        try {
+            return getMapper().update((T) this).run();
+        } catch (SQLException e) {
+            throw new UncheckedSQLException(e);
+        }
+    }
+
+    /**
+     * Delete this entity from the database
+     * @return number of rows affected by the delete
+     * @throws UncheckedSQLException if any error occurs while running the delete
+     */
+    @Override
+    public long delete() {
+        try {
+            return getMapper().delete((T) this).run();
+        } catch (SQLException e) {
+            throw new UncheckedSQLException(e);
+        }
+    }
+}
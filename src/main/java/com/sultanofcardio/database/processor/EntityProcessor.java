@@ -0,0 +1,422 @@
+package com.sultanofcardio.database.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Generates an {@link com.sultanofcardio.database.EntityMapper} for every class annotated with
+ * {@link com.sultanofcardio.database.EntityName} that has fields annotated with
+ * {@link com.sultanofcardio.database.Column} or {@link com.sultanofcardio.database.Id}. <br><br>
+ *
+ * The generated mapper lives in the same package as its entity and reads and writes the mapped fields directly,
+ * which is why they must not be private. Mapped fields inherited from superclasses are included, and must be public
+ * if the superclass is in another package. Rows are read with the typed getters of {@link java.sql.ResultSet}, by
+ * column indexes that are looked up once per result set. <br><br>
+ *
+ * The processor is registered through <code>META-INF/services</code>, so it runs whenever hoverdb is on the
+ * annotation processor path
+ *
+ * @author sultanofcardio
+ */
+public class EntityProcessor extends AbstractProcessor {
+
+    private static final String ENTITY = "com.sultanofcardio.database.Entity";
+    private static final String ENTITY_NAME = "com.sultanofcardio.database.EntityName";
+    private static final String COLUMN = "com.sultanofcardio.database.Column";
+    private static final String ID = "com.sultanofcardio.database.Id";
+    private static final String DATABASE = "com.sultanofcardio.database.sql.Database";
+    private static final String SUFFIX = "_Mapper";
+
+    /**
+     * ResultSet getters of the column types that have one, keyed by the name of the field type
+     */
+    private static final Map<String, String> GETTERS = new HashMap<>();
+
+    static {
+        GETTERS.put("boolean", "getBoolean");
+        GETTERS.put("byte", "getByte");
+        GETTERS.put("short", "getShort");
+        GETTERS.put("int", "getInt");
+        GETTERS.put("long", "getLong");
+        GETTERS.put("float", "getFloat");
+        GETTERS.put("double", "getDouble");
+        GETTERS.put("java.lang.Boolean", "getBoolean");
+        GETTERS.put("java.lang.Byte", "getByte");
+        GETTERS.put("java.lang.Short", "getShort");
+        GETTERS.put("java.lang.Integer", "getInt");
+        GETTERS.put("java.lang.Long", "getLong");
+        GETTERS.put("java.lang.Float", "getFloat");
+        GETTERS.put("java.lang.Double", "getDouble");
+        GETTERS.put("java.lang.String", "getString");
+        GETTERS.put("java.math.BigDecimal", "getBigDecimal");
+        GETTERS.put("java.sql.Date", "getDate");
+        GETTERS.put("java.sql.Time", "getTime");
+        GETTERS.put("java.sql.Timestamp", "getTimestamp");
+        GETTERS.put("java.util.Date", "getTimestamp");
+        GETTERS.put("byte[]", "getBytes");
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ENTITY_NAME);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement entityName = processingEnv.getElementUtils().getTypeElement(ENTITY_NAME);
+        if(entityName == null) return false;
+
+        for(TypeElement type: ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(entityName))){
+            List<MappedColumn> columns = columnsOf(type);
+            if(columns.isEmpty() || !validate(type, columns)) continue;
+
+            try {
+                write(type, columns);
+            } catch (IOException e) {
+                error(type, "Unable to generate mapper: " + e.getMessage());
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Collect the mapped fields of an entity, including those it inherits. Fields of superclasses come first, and are
+     * accessed through a cast to the class that declares them so that a field of the same name further down cannot
+     * hide them
+     */
+    private List<MappedColumn> columnsOf(TypeElement type) {
+        Deque<TypeElement> hierarchy = new ArrayDeque<>();
+        for(TypeElement current = type; current != null; current = superclassOf(current)){
+            hierarchy.push(current);
+        }
+
+        List<MappedColumn> columns = new ArrayList<>();
+        for(TypeElement owner: hierarchy){
+            String entity = owner == type ? "entity" :
+                    "((" + processingEnv.getTypeUtils().erasure(owner.asType()) + ") entity)";
+            for(VariableElement field: ElementFilter.fieldsIn(owner.getEnclosedElements())){
+                AnnotationMirror column = annotation(field, COLUMN);
+                AnnotationMirror id = annotation(field, ID);
+                if(column == null && id == null) continue;
+
+                String name = column == null ? "" : (String) value(column, "value", "");
+                columns.add(new MappedColumn(field, entity + "." + field.getSimpleName(),
+                        name.isEmpty() ? field.getSimpleName().toString() : name,
+                        id != null, id != null && (Boolean) value(id, "generated", false)));
+            }
+        }
+
+        return columns;
+    }
+
+    private static TypeElement superclassOf(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+
+    private boolean validate(TypeElement type, List<MappedColumn> columns) {
+        boolean valid = true;
+
+        TypeElement entity = processingEnv.getElementUtils().getTypeElement(ENTITY);
+        if(type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT) ||
+                !processingEnv.getTypeUtils().isSubtype(processingEnv.getTypeUtils().erasure(type.asType()),
+                        processingEnv.getTypeUtils().erasure(entity.asType()))) {
+            error(type, "Mapped entities must be concrete classes that extend Entity");
+            valid = false;
+        }
+
+        if(type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+            error(type, "Mapped entities must not be inner classes");
+            valid = false;
+        }
+
+        boolean hasConstructor = false;
+        for(ExecutableElement constructor: ElementFilter.constructorsIn(type.getEnclosedElements())){
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if(parameters.size() == 1 && !constructor.getModifiers().contains(Modifier.PRIVATE) &&
+                    parameters.get(0).asType().toString().equals(DATABASE)) {
+                hasConstructor = true;
+            }
+        }
+
+        if(!hasConstructor) {
+            error(type, "Mapped entities need a non-private constructor that takes only a Database");
+            valid = false;
+        }
+
+        for(MappedColumn column: columns){
+            Set<Modifier> modifiers = column.field.getModifiers();
+            if(modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) ||
+                    modifiers.contains(Modifier.FINAL)) {
+                error(column.field, "Mapped fields must not be private, static or final");
+                valid = false;
+            } else if(!modifiers.contains(Modifier.PUBLIC) && !processingEnv.getElementUtils().getPackageOf(column.field)
+                    .equals(processingEnv.getElementUtils().getPackageOf(type))) {
+                error(column.field, "Mapped fields inherited from another package must be public");
+                valid = false;
+            }
+        }
+
+        return valid;
+    }
+
+    private void write(TypeElement type, List<MappedColumn> columns) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String entityType = type.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String mapperName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                + SUFFIX;
+        String tableName = (String) value(annotation(type, ENTITY_NAME), "value", "");
+
+        List<MappedColumn> ids = new ArrayList<>();
+        for(MappedColumn column: columns){
+            if(column.id) ids.add(column);
+        }
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                packageName.isEmpty() ? mapperName : packageName + "." + mapperName, type);
+
+        try (PrintWriter out = new PrintWriter(file.openWriter())) {
+            if(!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+
+            out.println("import com.sultanofcardio.database.EntityMapper;");
+            out.println("import com.sultanofcardio.database.sql.Database;");
+            out.println("import com.sultanofcardio.database.sql.RowMapper;");
+            out.println("import com.sultanofcardio.database.sql.statement.Delete;");
+            out.println("import com.sultanofcardio.database.sql.statement.Insert;");
+            out.println("import com.sultanofcardio.database.sql.statement.Select;");
+            out.println("import com.sultanofcardio.database.sql.statement.Update;");
+            out.println();
+            out.println("import java.sql.ResultSet;");
+            out.println("import java.sql.SQLException;");
+            out.println();
+            out.println("/**");
+            out.println(" * Maps {@link " + entityType + "} to and from the table " + tableName + ". Generated by " +
+                    getClass().getSimpleName() + ", do not edit");
+            out.println(" */");
+            out.println("public final class " + mapperName + " implements EntityMapper<" + entityType + "> {");
+            out.println();
+            out.println("    private static final String TABLE_NAME = " + literal(tableName) + ";");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public String getTableName() {");
+            out.println("        return TABLE_NAME;");
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public " + entityType + " newInstance(Database database) {");
+            out.println("        return new " + entityType + "(database);");
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public RowMapper<" + entityType + "> rowMapper(Database database, ResultSet resultSet) throws SQLException {");
+            for(int i = 0; i < columns.size(); i++){
+                out.println("        final int column" + i + " = resultSet.findColumn(" + literal(columns.get(i).name) + ");");
+            }
+            out.println("        return row -> {");
+            out.println("            " + entityType + " entity = new " + entityType + "(database);");
+            out.println("            hydrate(entity, row" + columnArguments(columns.size()) + ");");
+            out.println("            return entity;");
+            out.println("        };");
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public void hydrate(" + entityType + " entity, ResultSet resultSet) throws SQLException {");
+            out.print("        hydrate(entity, resultSet");
+            for(MappedColumn column: columns){
+                out.print(", resultSet.findColumn(" + literal(column.name) + ")");
+            }
+            out.println(");");
+            out.println("    }");
+            out.println();
+
+            out.print("    private static void hydrate(" + entityType + " entity, ResultSet resultSet");
+            for(int i = 0; i < columns.size(); i++){
+                out.print(", int column" + i);
+            }
+            out.println(") throws SQLException {");
+            for(int i = 0; i < columns.size(); i++){
+                writeRead(out, columns.get(i), "column" + i);
+            }
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public Select<?> select(Database database, Object... ids) {");
+            out.println("        Select<?> select = database.select().from(TABLE_NAME);");
+            out.println("        if(ids.length == 0) return select;");
+            out.println();
+            out.println("        if(ids.length != " + ids.size() + ")");
+            out.println("            throw new IllegalArgumentException(\"Expected " + ids.size() +
+                    " identifying values but got \" + ids.length);");
+            out.println();
+            for(int i = 0; i < ids.size(); i++){
+                out.println("        select.where(" + literal(ids.get(i).name) + ", ids[" + i + "]);");
+            }
+            out.println("        return select;");
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public Insert<?> insert(" + entityType + " entity) {");
+            out.println("        Insert<?> insert = entity.getDatabase().insert().into(TABLE_NAME);");
+            for(MappedColumn column: columns){
+                if(!column.generated)
+                    out.println("        insert.value(" + literal(column.name) + ", " + column.access + ");");
+            }
+            out.println("        return insert;");
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public Update<?> update(" + entityType + " entity) {");
+            if(ids.isEmpty()) {
+                writeUnsupported(out);
+            } else {
+                out.println("        Update<?> update = entity.getDatabase().update(TABLE_NAME);");
+                for(MappedColumn column: columns){
+                    if(!column.id)
+                        out.println("        update.set(" + literal(column.name) + ", " + column.access + ");");
+                }
+                for(MappedColumn id: ids){
+                    out.println("        update.where(" + literal(id.name) + ", " + id.access + ");");
+                }
+                out.println("        return update;");
+            }
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public Delete<?> delete(" + entityType + " entity) {");
+            if(ids.isEmpty()) {
+                writeUnsupported(out);
+            } else {
+                out.println("        Delete<?> delete = entity.getDatabase().delete().from(TABLE_NAME);");
+                for(MappedColumn id: ids){
+                    out.println("        delete.where(" + literal(id.name) + ", " + id.access + ");");
+                }
+                out.println("        return delete;");
+            }
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    private void writeRead(PrintWriter out, MappedColumn column, String index) {
+        TypeMirror type = column.field.asType();
+        String typeName = type.getKind() == TypeKind.ARRAY ? type.toString() :
+                processingEnv.getTypeUtils().erasure(type).toString();
+        String field = column.access;
+        String getter = GETTERS.get(typeName);
+
+        if(getter == null) {
+            // getObject(int, Class) is not supported everywhere, cached row sets included
+            out.println("        " + field + " = (" + typeName + ") resultSet.getObject(" + index + ");");
+        } else if(type.getKind().isPrimitive() || !typeName.startsWith("java.lang.") ||
+                typeName.equals("java.lang.String")) {
+            out.println("        " + field + " = resultSet." + getter + "(" + index + ");");
+        } else {
+            // Boxed columns keep SQL NULL as null rather than the primitive default
+            String variable = "value" + index.substring("column".length());
+            out.println("        " + unbox(typeName) + " " + variable + " = resultSet." + getter + "(" + index + ");");
+            out.println("        " + field + " = resultSet.wasNull() ? null : " + variable + ";");
+        }
+    }
+
+    private void writeUnsupported(PrintWriter out) {
+        out.println("        throw new UnsupportedOperationException(\"Entities without @Id columns can only be " +
+                "loaded and inserted\");");
+    }
+
+    private static String unbox(String boxed) {
+        switch (boxed) {
+            case "java.lang.Boolean": return "boolean";
+            case "java.lang.Byte": return "byte";
+            case "java.lang.Short": return "short";
+            case "java.lang.Integer": return "int";
+            case "java.lang.Long": return "long";
+            case "java.lang.Float": return "float";
+            default: return "double";
+        }
+    }
+
+    private static String columnArguments(int count) {
+        StringBuilder arguments = new StringBuilder();
+        for(int i = 0; i < count; i++){
+            arguments.append(", column").append(i);
+        }
+
+        return arguments.toString();
+    }
+
+    private static String literal(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static AnnotationMirror annotation(Element element, String annotationType) {
+        for(AnnotationMirror mirror: element.getAnnotationMirrors()){
+            if(mirror.getAnnotationType().toString().equals(annotationType)) return mirror;
+        }
+
+        return null;
+    }
+
+    private static Object value(AnnotationMirror annotation, String name, Object defaultValue) {
+        for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry:
+                annotation.getElementValues().entrySet()){
+            if(entry.getKey().getSimpleName().contentEquals(name)) return entry.getValue().getValue();
+        }
+
+        return defaultValue;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * A field mapped to a column
+     */
+    private static class MappedColumn {
+        private final VariableElement field;
+        /**
+         * The expression that reads and writes the field on a variable called entity
+         */
+        private final String access;
+        private final String name;
+        private final boolean id;
+        private final boolean generated;
+
+        MappedColumn(VariableElement field, String access, String name, boolean id, boolean generated) {
+            this.field = field;
+            this.access = access;
+            this.name = name;
+            this.id = id;
+            this.generated = generated;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.sultanofcardio.database.sql;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The result of a database call running on an executor. Cancelling it before the call starts skips the call, and
+ * cancelling it while the call runs cancels the JDBC statement being executed with {@link Statement#cancel()}.
+ * <br><br>
+ *
+ * While a call runs, its result is bound to the running thread, so that every statement it prepares is registered
+ * for cancellation until it is given back. Futures derived from this one, for example with
+ * {@link #thenApply(java.util.function.Function)}, do not cancel it when they are cancelled. A result that is
+ * {@link AutoCloseable}, such as a stream of rows, is closed if the call is cancelled before it can be returned.
+ * The registered statement is guarded by a lock rather than a monitor, so that a virtual thread cancelling it is not
+ * pinned to its carrier thread while the driver talks to the database
+ *
+ * @author sultanofcardio
+ * @see Database#getAsyncExecutor()
+ */
+final class AsyncResult<T> extends CompletableFuture<T> {
+
+    private static final ThreadLocal<AsyncResult<?>> current = new ThreadLocal<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Statement statement;
+    private boolean cancelled;
+
+    private AsyncResult() {
+    }
+
+    /**
+     * Run a call on an executor
+     * @param executor The executor
+     * @param call The call
+     * @param <T> The result of the call
+     * @return A future that completes with the result of the call
+     */
+    static <T> CompletableFuture<T> submit(Executor executor, Call<T> call) {
+        AsyncResult<T> result = new AsyncResult<>();
+        try {
+            executor.execute(() -> result.run(call));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+
+    private void run(Call<T> call) {
+        if(isDone()) return;
+
+        AsyncResult<?> outer = current.get();
+        current.set(this);
+        try {
+            T value = call.run();
+            if(!complete(value) && value instanceof AutoCloseable)
+                close((AutoCloseable) value);
+        } catch (Throwable e) {
+            completeExceptionally(e);
+        } finally {
+            if(outer != null) current.set(outer);
+            else current.remove();
+        }
+    }
+
+    /**
+     * Close a result that was cancelled while it was being produced, since nobody can receive it
+     */
+    private static void close(AutoCloseable value) {
+        try {
+            value.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    /**
+     * Register a statement that is about to be executed, so that it is cancelled if the call running on the current
+     * thread is cancelled
+     * @param statement The statement
+     * @throws SQLException if the call has already been cancelled
+     */
+    static void register(Statement statement) throws SQLException {
+        AsyncResult<?> result = current.get();
+        if(result != null) result.setStatement(statement);
+    }
+
+    /**
+     * Stop cancelling the statement registered by the call running on the current thread. This must be done
+     * before the statement is closed, since closing it returns it to the statement cache of its connection
+     */
+    static void release() {
+        AsyncResult<?> result = current.get();
+        if(result != null) result.clearStatement();
+    }
+
+    private void setStatement(Statement statement) throws SQLException {
+        lock.lock();
+        try {
+            if(cancelled)
+                throw new SQLException("The call was cancelled", "HY008");
+
+            this.statement = statement;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void clearStatement() {
+        lock.lock();
+        try {
+            this.statement = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if(cancelled) cancelStatement();
+        return cancelled;
+    }
+
+    private void cancelStatement() {
+        lock.lock();
+        try {
+            cancelled = true;
+            if(statement == null) return;
+
+            statement.cancel();
+        } catch (SQLException ignored) {
+            // The statement finished or the driver cannot cancel it, so the call runs to completion
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A database call
+     * @param <T> The result of the call
+     */
+    @FunctionalInterface
+    interface Call<T> {
+        T run() throws SQLException;
+    }
+}
@@ -0,0 +1,10 @@
+package com.sultanofcardio.database.sql
+
+/**
+ * SQL code with <code>?</code> placeholders, along with the values to bind to them in order
+ *
+ * @see com.sultanofcardio.database.sql.statement.Statement.bind
+ */
+data class BoundSql(val sql: String, val parameters: List<Any?>) {
+    override fun toString(): String = sql
+}
@@ -0,0 +1,324 @@
+package com.sultanofcardio.database.sql;
+
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the rows of a query result, which hands out any number of independent, read-only
+ * cursors over them. <br><br>
+ *
+ * Rows are read once, with large objects read into memory, so that the snapshot no longer depends on the
+ * connection it was read from. A cursor only keeps its own position, which makes one much cheaper to hand out than
+ * a copy of the rows. Values that can be modified, such as byte arrays and dates, are copied as they are read
+ *
+ * @author sultanofcardio
+ * @see QueryCache
+ */
+final class CachedResult {
+
+    private final ResultSetMetaData metaData;
+    private final Map<String, Integer> columns;
+    private final Object[][] rows;
+
+    private CachedResult(ResultSetMetaData metaData, Map<String, Integer> columns, Object[][] rows) {
+        this.metaData = metaData;
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * Read the remaining rows of a result set
+     * @param resultSet The result set, which is read to the end
+     * @return The snapshot
+     */
+    static CachedResult read(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData source = resultSet.getMetaData();
+        int count = source.getColumnCount();
+
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(count);
+        Map<String, Integer> columns = new HashMap<>();
+        for(int i = 1; i <= count; i++){
+            metaData.setColumnLabel(i, source.getColumnLabel(i));
+            metaData.setColumnName(i, source.getColumnName(i));
+            metaData.setColumnType(i, source.getColumnType(i));
+            metaData.setColumnTypeName(i, source.getColumnTypeName(i));
+            metaData.setTableName(i, source.getTableName(i));
+            metaData.setSchemaName(i, source.getSchemaName(i));
+            metaData.setCatalogName(i, source.getCatalogName(i));
+            metaData.setNullable(i, source.isNullable(i));
+            metaData.setSigned(i, source.isSigned(i));
+            metaData.setCurrency(i, source.isCurrency(i));
+            metaData.setAutoIncrement(i, source.isAutoIncrement(i));
+            metaData.setCaseSensitive(i, source.isCaseSensitive(i));
+            metaData.setSearchable(i, source.isSearchable(i));
+            metaData.setColumnDisplaySize(i, Math.max(0, source.getColumnDisplaySize(i)));
+            metaData.setPrecision(i, Math.max(0, source.getPrecision(i)));
+            metaData.setScale(i, Math.max(0, source.getScale(i)));
+
+            // Labels are matched before names, and the first column with a label wins, as with JDBC drivers
+            addColumn(columns, source.getColumnLabel(i), i);
+        }
+        for(int i = 1; i <= count; i++){
+            addColumn(columns, source.getColumnName(i), i);
+        }
+
+        List<Object[]> rows = new ArrayList<>();
+        while (resultSet.next()){
+            Object[] row = new Object[count];
+            for(int i = 0; i < count; i++){
+                row[i] = detach(resultSet.getObject(i + 1));
+            }
+            rows.add(row);
+        }
+
+        return new CachedResult(metaData, columns, rows.toArray(new Object[0][]));
+    }
+
+    private static void addColumn(Map<String, Integer> columns, String name, int index) {
+        if(name != null) columns.putIfAbsent(name.toUpperCase(Locale.ROOT), index);
+    }
+
+    /**
+     * Read a large object into memory, since it is only valid while its connection is open
+     */
+    private static Object detach(Object value) throws SQLException {
+        if(value instanceof Clob) {
+            Clob clob = (Clob) value;
+            return clob.length() == 0 ? "" : clob.getSubString(1, (int) clob.length());
+        }
+
+        if(value instanceof Blob) {
+            Blob blob = (Blob) value;
+            return blob.length() == 0 ? new byte[0] : blob.getBytes(1, (int) blob.length());
+        }
+
+        return value;
+    }
+
+    /**
+     * Open a new scrollable, read-only cursor over the rows, positioned before the first one
+     * @return the cursor
+     */
+    ResultSet cursor() {
+        Cursor cursor = new Cursor();
+        return (ResultSet) Proxy.newProxyInstance(CachedResult.class.getClassLoader(), new Class[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "CachedResult.Cursor@" + Integer.toHexString(System.identityHashCode(proxy));
+                        case "unwrap":
+                            if(((Class<?>) args[0]).isInstance(proxy)) return proxy;
+                            throw new SQLException("Not a wrapper for " + args[0]);
+                        case "isWrapperFor":
+                            return ((Class<?>) args[0]).isInstance(proxy);
+                        case "close":
+                            cursor.closed = true;
+                            return null;
+                        case "isClosed":
+                            return cursor.closed;
+                    }
+
+                    if(cursor.closed)
+                        throw new SQLException("The result set is closed");
+
+                    return cursor.invoke(method, args);
+                });
+    }
+
+    /**
+     * The position of a single cursor over the rows
+     */
+    private final class Cursor {
+        private int row = -1;
+        private boolean closed;
+        private boolean wasNull;
+
+        Object invoke(Method method, Object[] args) throws SQLException {
+            String name = method.getName();
+            switch (name) {
+                case "next": return move(row + 1);
+                case "previous": return move(row - 1);
+                case "first": return move(0);
+                case "last": return move(rows.length - 1);
+                case "beforeFirst": move(-1); return null;
+                case "afterLast": move(rows.length); return null;
+                case "absolute": {
+                    int index = (Integer) args[0];
+                    return move(index >= 0 ? index - 1 : rows.length + index);
+                }
+                case "relative": return move(row + (Integer) args[0]);
+                case "isBeforeFirst": return rows.length > 0 && row < 0;
+                case "isAfterLast": return rows.length > 0 && row >= rows.length;
+                case "isFirst": return rows.length > 0 && row == 0;
+                case "isLast": return rows.length > 0 && row == rows.length - 1;
+                case "getRow": return row >= 0 && row < rows.length ? row + 1 : 0;
+                case "getType": return ResultSet.TYPE_SCROLL_INSENSITIVE;
+                case "getConcurrency": return ResultSet.CONCUR_READ_ONLY;
+                case "getHoldability": return ResultSet.HOLD_CURSORS_OVER_COMMIT;
+                case "getFetchDirection": return ResultSet.FETCH_FORWARD;
+                case "getFetchSize": return 0;
+                case "setFetchDirection": case "setFetchSize": case "clearWarnings": return null;
+                case "getWarnings": case "getStatement": case "getCursorName": return null;
+                case "getMetaData": return metaData;
+                case "findColumn": return findColumn((String) args[0]);
+                case "wasNull": return wasNull;
+            }
+
+            if(name.startsWith("get") && args != null && args.length > 0 &&
+                    (args[0] instanceof Integer || args[0] instanceof String))
+                return get(name, args);
+
+            if(name.startsWith("update") || name.endsWith("Row") || name.equals("moveToInsertRow") ||
+                    name.equals("moveToCurrentRow") || name.startsWith("row"))
+                throw new SQLFeatureNotSupportedException("The result set is read only");
+
+            throw new SQLFeatureNotSupportedException(name + " is not supported by a cached result");
+        }
+
+        private boolean move(int index) {
+            row = Math.max(-1, Math.min(rows.length, index));
+            return row >= 0 && row < rows.length;
+        }
+
+        private int findColumn(String label) throws SQLException {
+            Integer index = columns.get(label.toUpperCase(Locale.ROOT));
+            if(index == null)
+                throw new SQLException("Column not found: " + label);
+
+            return index;
+        }
+
+        private Object get(String name, Object[] args) throws SQLException {
+            if(row < 0 || row >= rows.length)
+                throw new SQLException("The result set is not positioned on a row");
+
+            int column = args[0] instanceof String ? findColumn((String) args[0]) : (Integer) args[0];
+            if(column < 1 || column > rows[row].length)
+                throw new SQLException("Column index out of range: " + column);
+
+            Object value = rows[row][column - 1];
+            wasNull = value == null;
+
+            if(name.equals("getObject") && args.length == 2 && args[1] instanceof Class)
+                return convert(value, (Class<?>) args[1]);
+
+            switch (name) {
+                case "getObject": return copy(value);
+                case "getString": case "getNString": return value == null ? null : value.toString();
+                case "getBoolean": return value != null && convert(value, Boolean.class);
+                case "getByte": return value == null ? (byte) 0 : toNumber(value).byteValue();
+                case "getShort": return value == null ? (short) 0 : toNumber(value).shortValue();
+                case "getInt": return value == null ? 0 : toNumber(value).intValue();
+                case "getLong": return value == null ? 0L : toNumber(value).longValue();
+                case "getFloat": return value == null ? 0f : toNumber(value).floatValue();
+                case "getDouble": return value == null ? 0d : toNumber(value).doubleValue();
+                case "getBigDecimal": return convert(value, BigDecimal.class);
+                case "getBytes": return convert(value, byte[].class);
+                case "getDate": return convert(value, java.sql.Date.class);
+                case "getTime": return convert(value, Time.class);
+                case "getTimestamp": return convert(value, Timestamp.class);
+                case "getCharacterStream": case "getNCharacterStream":
+                    return value == null ? null : new StringReader(value.toString());
+                case "getAsciiStream":
+                    return value == null ? null : new ByteArrayInputStream(value.toString()
+                            .getBytes(StandardCharsets.US_ASCII));
+                case "getBinaryStream":
+                    return value == null ? null : new ByteArrayInputStream(convert(value, byte[].class));
+                case "getClob": case "getNClob":
+                    return value == null ? null : new SerialClob(value.toString().toCharArray());
+                case "getBlob":
+                    return value == null ? null : new SerialBlob(convert(value, byte[].class));
+                case "getArray": case "getRef": case "getURL": case "getRowId": case "getSQLXML":
+                    return value;
+            }
+
+            throw new SQLFeatureNotSupportedException(name + " is not supported by a cached result");
+        }
+    }
+
+    private static Object copy(Object value) {
+        if(value instanceof byte[]) return ((byte[]) value).clone();
+        if(value instanceof java.util.Date) return ((java.util.Date) value).clone();
+        return value;
+    }
+
+    private static Number toNumber(Object value) throws SQLException {
+        if(value instanceof Number) return (Number) value;
+        if(value instanceof Boolean) return (Boolean) value ? 1 : 0;
+
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new SQLException("Cannot convert " + value + " to a number", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T convert(Object value, Class<T> type) throws SQLException {
+        if(value == null) return null;
+        if(type.isInstance(value)) return (T) copy(value);
+
+        if(type == String.class) return (T) value.toString();
+        if(type == Boolean.class) {
+            if(value instanceof Number) return (T) Boolean.valueOf(((Number) value).doubleValue() != 0);
+            String string = value.toString().trim();
+            return (T) Boolean.valueOf(string.equalsIgnoreCase("true") || string.equals("1"));
+        }
+        if(type == BigDecimal.class) {
+            Number number = toNumber(value);
+            return (T) (number instanceof BigDecimal ? number : new BigDecimal(number.toString()));
+        }
+        if(type == Integer.class) return (T) Integer.valueOf(toNumber(value).intValue());
+        if(type == Long.class) return (T) Long.valueOf(toNumber(value).longValue());
+        if(type == Short.class) return (T) Short.valueOf(toNumber(value).shortValue());
+        if(type == Byte.class) return (T) Byte.valueOf(toNumber(value).byteValue());
+        if(type == Double.class) return (T) Double.valueOf(toNumber(value).doubleValue());
+        if(type == Float.class) return (T) Float.valueOf(toNumber(value).floatValue());
+        if(type == byte[].class && value instanceof String)
+            return (T) ((String) value).getBytes(StandardCharsets.UTF_8);
+
+        if(value instanceof java.util.Date) {
+            long time = ((java.util.Date) value).getTime();
+            if(type == java.sql.Date.class) return (T) new java.sql.Date(time);
+            if(type == Time.class) return (T) new Time(time);
+            if(type == Timestamp.class || type == java.util.Date.class) return (T) new Timestamp(time);
+        }
+
+        if(value instanceof String) {
+            try {
+                if(type == java.sql.Date.class) return (T) java.sql.Date.valueOf(((String) value).trim());
+                if(type == Time.class) return (T) Time.valueOf(((String) value).trim());
+                if(type == Timestamp.class) return (T) Timestamp.valueOf(((String) value).trim());
+            } catch (IllegalArgumentException e) {
+                throw new SQLException("Cannot convert " + value + " to " + type.getSimpleName(), e);
+            }
+        }
+
+        throw new SQLException("Cannot convert " + value.getClass().getName() + " to " + type.getName());
+    }
+}
@@ -0,0 +1,626 @@
+package com.sultanofcardio.database.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of physical connections to a single database. <br><br>
+ *
+ * Connections are created lazily, up to {@link #getMaxSize()}, and handed out as leases by {@link #lease()}.
+ * Closing a leased connection returns it to the pool instead of closing the physical connection. A connection that is
+ * returned with auto-commit turned off has its open transaction rolled back and auto-commit restored. Idle connections
+ * are validated before they are leased again, and connections that have been idle for longer than
+ * {@link #getIdleTimeout()} are closed, as long as at least {@link #getMinSize()} connections remain open. <br><br>
+ *
+ * Each connection also keeps a least-recently-used cache of the statements prepared on it, so that running the same
+ * SQL again skips the prepare round trip. Closing a cached statement hands it back to the cache.
+ *
+ * @author sultanofcardio
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue"})
+public class ConnectionPool implements AutoCloseable {
+
+    /**
+     * Creates the physical connections held by a {@link ConnectionPool}
+     */
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private int size;
+    private boolean closed;
+
+    private volatile int minSize = 1;
+    private volatile int maxSize = 10;
+    private volatile long leaseTimeout = 30_000;
+    private volatile long idleTimeout = 600_000;
+    private volatile int validationTimeout = 5;
+    private volatile int statementCacheSize = 32;
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    /**
+     * Create a new, empty connection pool
+     * @param factory Used to open new physical connections when the pool needs them
+     */
+    public ConnectionPool(ConnectionFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Lease a connection from this pool, waiting up to {@link #getLeaseTimeout()} milliseconds for one to become
+     * available. The connection must be closed once you are done with it so that it can be returned to the pool
+     * @return A leased connection
+     * @throws SQLTimeoutException if no connection became available in time
+     */
+    public Connection lease() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseTimeout);
+
+        while (true) {
+            PooledConnection candidate = null;
+            boolean create = false;
+            List<PooledConnection> expired;
+
+            lock.lock();
+            try {
+                expired = evictIdle();
+                while (candidate == null && !create) {
+                    if(closed)
+                        throw new SQLException("Connection pool has been closed");
+
+                    candidate = idle.pollFirst();
+                    if(candidate != null) break;
+
+                    if(size < maxSize) {
+                        size++;
+                        create = true;
+                    } else {
+                        long remaining = deadline - System.nanoTime();
+                        if(remaining <= 0)
+                            throw new SQLTimeoutException(String.format(
+                                    "Timed out after %s ms waiting for a connection", leaseTimeout));
+
+                        try {
+                            available.awaitNanos(remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new SQLException("Interrupted while waiting for a connection", e);
+                        }
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            closeAll(expired);
+
+            if(create) {
+                Connection connection;
+                try {
+                    connection = factory.create();
+                } catch (SQLException | RuntimeException e) {
+                    discard(null);
+                    throw e;
+                }
+
+                if(connection == null) {
+                    discard(null);
+                    throw new SQLException("Unable to establish a database connection");
+                }
+
+                return new PooledConnection(connection).lease();
+            }
+
+            if(isValid(candidate.connection))
+                return candidate.lease();
+
+            discard(candidate);
+        }
+    }
+
+    /**
+     * Close every idle connection and prevent any further leases. Connections that are currently leased are closed
+     * as soon as they are returned
+     */
+    @Override
+    public void close() {
+        List<PooledConnection> connections;
+        lock.lock();
+        try {
+            closed = true;
+            connections = new ArrayList<>(idle);
+            size -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        closeAll(connections);
+    }
+
+    /**
+     * Check if this pool has been closed
+     * @return whether or not {@link #close()} has been called
+     */
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of physical connections currently open, whether idle or leased
+     * @return the number of open connections
+     */
+    public int getSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of open connections that are waiting to be leased
+     * @return the number of idle connections
+     */
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of times a prepared statement was served from a connection's statement cache
+     * @return the number of cache hits
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    /**
+     * Get the number of times a statement had to be prepared because it was not found in a connection's cache
+     * @return the number of cache misses
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    private void release(PooledConnection pooled, boolean autoCommitChanged) {
+        boolean healthy;
+        try {
+            healthy = !pooled.connection.isClosed();
+
+            // A connection returned mid-transaction would leak its uncommitted work into the next lease
+            if(healthy && autoCommitChanged && !pooled.connection.getAutoCommit()) {
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            healthy = false;
+        }
+
+        List<PooledConnection> expired;
+        lock.lock();
+        try {
+            if(closed || !healthy) {
+                size--;
+                expired = new ArrayList<>();
+                expired.add(pooled);
+            } else {
+                pooled.lastUsed = System.nanoTime();
+                idle.addFirst(pooled);
+                expired = evictIdle();
+            }
+
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        closeAll(expired);
+    }
+
+    private void discard(PooledConnection pooled) {
+        lock.lock();
+        try {
+            size--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        if(pooled != null) closeAll(Collections.singletonList(pooled));
+    }
+
+    /**
+     * Remove connections that have been idle for too long. Must be called while holding the lock
+     * @return the connections to be closed once the lock is released
+     */
+    private List<PooledConnection> evictIdle() {
+        List<PooledConnection> expired = new ArrayList<>();
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+
+        // The least recently used connections are at the tail of the deque
+        Iterator<PooledConnection> iterator = idle.descendingIterator();
+        while (iterator.hasNext() && size > minSize) {
+            PooledConnection pooled = iterator.next();
+            if(pooled.lastUsed - cutoff > 0) break;
+
+            iterator.remove();
+            size--;
+            expired.add(pooled);
+        }
+
+        return expired;
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(validationTimeout);
+        } catch (SQLException | AbstractMethodError e) {
+            // Older drivers may not implement isValid
+            try {
+                return !connection.isClosed();
+            } catch (SQLException ignored) {
+                return false;
+            }
+        }
+    }
+
+    private static void closeAll(List<PooledConnection> connections) {
+        for(PooledConnection pooled: connections) {
+            closeQuietly(pooled.connection);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if(closeable != null) {
+            try { closeable.close(); } catch (Exception ignored){}
+        }
+    }
+
+    // <editor-fold desc="Getters and setters">
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Set the number of connections that idle eviction will always leave open
+     * @param minSize minimum number of open connections
+     * @return this pool
+     */
+    public ConnectionPool setMinSize(int minSize) {
+        if(minSize < 0)
+            throw new IllegalArgumentException("minSize cannot be negative");
+
+        this.minSize = minSize;
+        return this;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the maximum number of connections this pool may have open at once
+     * @param maxSize maximum number of open connections
+     * @return this pool
+     */
+    public ConnectionPool setMaxSize(int maxSize) {
+        if(maxSize < 1)
+            throw new IllegalArgumentException("maxSize must be at least 1");
+
+        lock.lock();
+        try {
+            this.maxSize = maxSize;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    public long getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+    /**
+     * Set how long {@link #lease()} waits for a connection when the pool is exhausted
+     * @param leaseTimeout timeout in milliseconds
+     * @return this pool
+     */
+    public ConnectionPool setLeaseTimeout(long leaseTimeout) {
+        this.leaseTimeout = leaseTimeout;
+        return this;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Set how long a connection may sit unused in the pool before it is closed
+     * @param idleTimeout timeout in milliseconds
+     * @return this pool
+     */
+    public ConnectionPool setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    public int getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    /**
+     * Set how long to wait for an idle connection to be validated before it is leased
+     * @param validationTimeout timeout in seconds
+     * @return this pool
+     */
+    public ConnectionPool setValidationTimeout(int validationTimeout) {
+        this.validationTimeout = validationTimeout;
+        return this;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * Set how many prepared statements each connection keeps open for re-use, keyed by their SQL. The least
+     * recently used statement is closed once the cache is full. Set to 0 to disable statement caching
+     * @param statementCacheSize number of statements cached per connection
+     * @return this pool
+     */
+    public ConnectionPool setStatementCacheSize(int statementCacheSize) {
+        if(statementCacheSize < 0)
+            throw new IllegalArgumentException("statementCacheSize cannot be negative");
+
+        this.statementCacheSize = statementCacheSize;
+        return this;
+    }
+
+    // </editor-fold>
+
+    /**
+     * A physical connection owned by this pool, along with its cache of prepared statements
+     */
+    private class PooledConnection {
+        private final Connection connection;
+        private long lastUsed;
+        private final Map<String, CachedStatement> statements =
+                new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                        if(size() <= statementCacheSize) return false;
+
+                        // Statements that are still in use are closed once they are returned
+                        CachedStatement evicted = eldest.getValue();
+                        if(!evicted.inUse) closeQuietly(evicted.statement);
+                        return true;
+                    }
+                };
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.lastUsed = System.nanoTime();
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class[]{Connection.class}, new Lease(this));
+        }
+
+        /**
+         * Get a prepared statement for the given SQL, re-using a cached one if it is not already in use
+         */
+        CachedStatement prepare(String sql) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if(cached != null && !cached.inUse) {
+                statementCacheHits.increment();
+                cached.inUse = true;
+                return cached;
+            }
+
+            statementCacheMisses.increment();
+            CachedStatement prepared = new CachedStatement(sql, connection.prepareStatement(sql));
+            prepared.inUse = true;
+
+            // A busy statement means that the same SQL is being run twice on one connection. Only one is cached
+            if(cached == null) statements.put(sql, prepared);
+            return prepared;
+        }
+
+        /**
+         * Return a statement to the cache once its user has closed it
+         */
+        void giveBack(CachedStatement cached, ResultSet resultSet) {
+            closeQuietly(resultSet);
+
+            if(statements.get(cached.sql) == cached) {
+                try {
+                    cached.statement.clearParameters();
+                    if(cached.fetchSizeChanged) {
+                        cached.statement.setFetchSize(cached.fetchSize);
+                        cached.fetchSizeChanged = false;
+                    }
+                    cached.inUse = false;
+                    return;
+                } catch (SQLException e) {
+                    statements.remove(cached.sql);
+                }
+            }
+
+            closeQuietly(cached.statement);
+        }
+    }
+
+    /**
+     * A prepared statement held in the cache of a pooled connection
+     */
+    private static class CachedStatement {
+        private final String sql;
+        private final PreparedStatement statement;
+        private final int fetchSize;
+        private boolean inUse;
+        private boolean fetchSizeChanged;
+
+        CachedStatement(String sql, PreparedStatement statement) throws SQLException {
+            this.sql = sql;
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+        }
+    }
+
+    /**
+     * A single lease of a pooled connection. Closing the lease returns the connection to the pool, after which
+     * the lease can no longer be used
+     */
+    private class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final List<StatementLease> statements = new ArrayList<>();
+        private boolean closed;
+        private boolean autoCommitChanged;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if(!closed) {
+                        // Closing a connection closes its statements, which hands them back to the cache
+                        for(StatementLease statement: new ArrayList<>(statements)) statement.close();
+                        closed = true;
+                        release(pooled, autoCommitChanged);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Lease of " + pooled.connection;
+            }
+
+            if(closed)
+                throw new SQLException("Connection has already been returned to the pool");
+
+            if(method.getName().equals("setAutoCommit")) autoCommitChanged = true;
+
+            if(method.getName().equals("prepareStatement") && args.length == 1 && statementCacheSize > 0) {
+                StatementLease statement = new StatementLease(this, (Connection) proxy,
+                        pooled.prepare((String) args[0]));
+                statements.add(statement);
+                return statement.proxy;
+            }
+
+            try {
+                return method.invoke(pooled.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * A single use of a cached prepared statement. Closing it hands the statement back to the cache instead of
+     * closing it
+     */
+    private class StatementLease implements InvocationHandler {
+        private final Lease lease;
+        private final Connection connection;
+        private final CachedStatement cached;
+        private final PreparedStatement proxy;
+        private ResultSet resultSet;
+        private boolean closed;
+
+        StatementLease(Lease lease, Connection connection, CachedStatement cached) {
+            this.lease = lease;
+            this.connection = connection;
+            this.cached = cached;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class[]{PreparedStatement.class}, this);
+        }
+
+        void close() {
+            if(!closed) {
+                closed = true;
+                lease.statements.remove(this);
+                lease.pooled.giveBack(cached, resultSet);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed || cached.statement.isClosed();
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return cached.statement.toString();
+            }
+
+            if(closed)
+                throw new SQLException("Statement has already been closed");
+
+            // Restored when the statement is handed back, so the next user gets the driver default
+            if(method.getName().equals("setFetchSize")) cached.fetchSizeChanged = true;
+
+            Object result;
+            try {
+                result = method.invoke(cached.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+
+            if(result instanceof ResultSet) resultSet = (ResultSet) result;
+            return result;
+        }
+    }
+}
@@ -5,10 +5,29 @@ import com.sultanofcardio.database.sql.statement.*;
 import com.sultanofcardio.database.sql.types.DatabaseType;
 import org.intellij.lang.annotations.Language;
 
+import java.lang.ref.WeakReference;
 import java.sql.*;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class represents a connection to a database in a Relational Database Management System (RDBMS). <br><br>
@@ -22,12 +41,22 @@ import java.util.Properties;
  * statements are facilitated by allowing the executing or arbitrary SQL using the {@link #run(String)} and
  * {@link #execute(String)} methods<br><br>
  *
- * Transactions are not yet supported
+ * Connections are leased from a {@link ConnectionPool} owned by each instance, so concurrent callers each get
+ * their own connection. The pool can be tuned using {@link #getPool()} <br><br>
+ *
+ * Closing a database closes its pool and removes it from the cache. Databases that are never closed have their
+ * pools closed once they are garbage collected, and {@link #shutdownAll()} closes every cached database <br><br>
+ *
+ * Statements that fail because of a deadlock or a serialization failure can be retried automatically by setting a
+ * {@link RetryPolicy}, and every statement can be wrapped by a chain of {@link StatementInterceptor}s <br><br>
+ *
+ * Queries and statements can also be run without blocking the caller through {@link #executeAsync(Query, RowMapper)}
+ * and {@link #runAsync(Statement)}, which run them on {@link #getAsyncExecutor()}
  *
  * @author sultanofcardio
  */
 @SuppressWarnings("WeakerAccess")
-public class Database {
+public class Database implements AutoCloseable {
     protected String schema;
     protected String host;
     protected String port;
@@ -35,8 +64,17 @@ public class Database {
     protected String password;
     protected DatabaseType databaseType;
     protected Properties properties;
-    protected Connection connection;
-    protected static Map<String, Database> manager = new HashMap<>();
+    protected ConnectionPool pool;
+    protected volatile QueryCache queryCache;
+    protected volatile RetryPolicy retryPolicy;
+    protected volatile StatementMetrics metrics;
+    protected volatile SlowQueryLog slowQueryLog;
+    protected List<StatementInterceptor> interceptors = new CopyOnWriteArrayList<>();
+    protected volatile Executor asyncExecutor;
+    protected volatile int tempTableThreshold;
+    private ExecutorService ownedExecutor;
+    private final ResourceCleaner.Cleanable cleanable;
+    protected static final ConcurrentMap<String, Database> manager = new ConcurrentHashMap<>();
 
     public Database copy(){
         return new Database(schema, databaseType, host, port, username, password);
@@ -59,7 +97,8 @@ public class Database {
         this.username = username;
         this.password = password;
         this.properties = new Properties();
-        this.connection = null;
+        this.pool = new ConnectionPool(new DatabaseConnectionFactory(this));
+        this.cleanable = ResourceCleaner.register(this, pool::close);
         addProperty("user", username);
         addProperty("password", password);
     }
@@ -73,7 +112,29 @@ public class Database {
         this.schema = schema;
         this.databaseType = type;
         this.properties = new Properties();
-        this.connection = null;
+        this.pool = new ConnectionPool(new DatabaseConnectionFactory(this));
+        this.cleanable = ResourceCleaner.register(this, pool::close);
+    }
+
+    /**
+     * Get a view of another Database connector that shares its settings, connection pool, metrics, slow query log
+     * and interceptors. The view does not own the pool, so closing it leaves the pool open
+     * @param database the database to share
+     */
+    protected Database(Database database) {
+        this.schema = database.schema;
+        this.databaseType = database.databaseType;
+        this.host = database.host;
+        this.port = database.port;
+        this.username = database.username;
+        this.password = database.password;
+        this.properties = database.properties;
+        this.pool = database.pool;
+        this.metrics = database.metrics;
+        this.slowQueryLog = database.slowQueryLog;
+        this.interceptors = database.interceptors;
+        this.tempTableThreshold = database.tempTableThreshold;
+        this.cleanable = null;
     }
 
     /**
@@ -110,10 +171,9 @@ public class Database {
         if(password == null)
             password = "";
 
-        Database database = getInstance(alias);
-        if(database == null) database = new Database(schema, type, host, port, username, password);
-        cacheDatabase(alias, database);
-        return database;
+        String finalPassword = password;
+        return cacheDatabase(alias, Database.class,
+                () -> new Database(schema, type, host, port, username, finalPassword));
     }
 
     /**
@@ -136,20 +196,51 @@ public class Database {
     }
 
     /**
-     * Retrieve the connection object for this database.
-     * This connection is maintained for the life of the JVM and you are limited to one connection per database
-     * @return A connection instance, or null if a connection cannot be established
+     * Atomically get the database cached by name, creating and caching a new one if there is none. An existing
+     * database that is not an instance of the given type is replaced
+     * @param name The name of the database
+     * @param type The type of database expected
+     * @param factory Creates the database if needed
+     * @param <T> The type of database expected
+     * @return The cached database
      */
-    public Connection getConnection() throws SQLException {
-        if(this.connection == null || this.connection.isClosed()) {
-            this.connection = createConnection();
+    protected static <T extends Database> T cacheDatabase(String name, Class<T> type, Supplier<? extends T> factory){
+        return type.cast(manager.compute(name, (alias, existing) -> type.isInstance(existing) ? existing : factory.get()));
+    }
+
+    /**
+     * Close every cached database and empty the cache
+     */
+    public static void shutdownAll(){
+        for(String alias: manager.keySet()){
+            Database database = manager.remove(alias);
+            if(database != null) database.close();
         }
+    }
 
-        return connection;
+    /**
+     * Lease a connection to this database from its pool. The connection must be closed once you are done with it,
+     * which returns it to the pool rather than closing it
+     * @return A leased connection instance
+     * @throws java.sql.SQLTimeoutException if the pool is exhausted and no connection is returned in time
+     * @see ConnectionPool#lease()
+     */
+    public Connection getConnection() throws SQLException {
+        Object event = FlightRecorderSupport.RECORDER.beginLease();
+        if(event == null) return pool.lease();
+
+        boolean failed = true;
+        try {
+            Connection connection = pool.lease();
+            failed = false;
+            return connection;
+        } finally {
+            FlightRecorderSupport.RECORDER.endLease(event, pool, schema, failed);
+        }
     }
 
     /**
-     * Create a brand new database connection. Used for transactions where the commit mode needs to be manipulated
+     * Create a brand new physical database connection. Used by the connection pool whenever it needs to grow
      * @return A new connection instance
      */
     protected Connection createConnection() throws SQLException {
@@ -167,32 +258,144 @@ public class Database {
     }
 
     /**
-     * Execute a raw SQL query that returns a result set
+     * Execute a raw SQL query that returns a result set. The connection used by the query stays leased until the
+     * returned {@link ResourceSet} is closed
      * @param sql Valid SQL code
      * @return The result of the query
      * @see #run(String)
      */
     public ResourceSet execute(@Language("SQL") String sql) throws SQLException {
-        Connection connection = getConnection();
+        return execute(sql, Collections.emptyList());
+    }
+
+    /**
+     * Execute a parameterized SQL query that returns a result set. The connection used by the query stays leased
+     * until the returned {@link ResourceSet} is closed
+     * @param sql Valid SQL code with <code>?</code> placeholders
+     * @param parameters The values to bind to the placeholders, in order
+     * @return The result of the query
+     * @see #run(String, List)
+     */
+    public ResourceSet execute(@Language("SQL") String sql, List<?> parameters) throws SQLException {
+        return execute(sql, parameters, 0);
+    }
+
+    /**
+     * Execute a parameterized SQL query that returns a result set, fetching rows from the database
+     * <code>fetchSize</code> at a time. The connection used by the query stays leased until the returned
+     * {@link ResourceSet} is closed
+     * @param sql Valid SQL code with <code>?</code> placeholders
+     * @param parameters The values to bind to the placeholders, in order
+     * @param fetchSize The number of rows to fetch at a time, or 0 for the driver default
+     * @return The result of the query
+     * @see java.sql.Statement#setFetchSize(int)
+     */
+    public ResourceSet execute(@Language("SQL") String sql, List<?> parameters, int fetchSize) throws SQLException {
+        return executeQuery(null, sql, parameters, fetchSize);
+    }
+
+    /**
+     * Execute a query through the interceptor chain
+     * @param source The statement object the SQL was rendered from, or null for raw SQL
+     */
+    private ResourceSet executeQuery(Statement<?> source, String sql, List<?> parameters,
+                                     int fetchSize) throws SQLException {
+        return intercept(source, StatementInvocation.Kind.QUERY, sql, parameters,
+                (interceptedSql, interceptedParameters) ->
+                        retryQuery(source, interceptedSql, interceptedParameters, fetchSize));
+    }
+
+    /**
+     * Pass a statement through the interceptor chain, ending with a target that runs it
+     * @param source The statement object the SQL was rendered from, or null for raw SQL
+     */
+    private <R> R intercept(Statement<?> source, StatementInvocation.Kind kind, String sql, List<?> parameters,
+                            StatementInvocation.Target<R> target) throws SQLException {
+        if(interceptors.isEmpty()) return target.run(sql, parameters);
+
+        return new StatementInvocation<>(this, source, kind, sql, parameters,
+                interceptors.toArray(new StatementInterceptor[0]), target).proceed();
+    }
+
+    /**
+     * Execute a query, retrying it according to the retry policy, if any
+     */
+    private ResourceSet retryQuery(Statement<?> source, String sql, List<?> parameters,
+                                   int fetchSize) throws SQLException {
+        RetryPolicy policy = retryPolicy;
+        if(policy == null) return executeQueryOnce(source, sql, parameters, fetchSize);
+
+        return policy.execute(databaseType, () -> executeQueryOnce(source, sql, parameters, fetchSize));
+    }
+
+    private ResourceSet executeQueryOnce(Statement<?> source, String sql, List<?> parameters,
+                                         int fetchSize) throws SQLException {
+        Execution execution = Execution.start(this, source, sql, parameters);
+        Connection connection = null;
         PreparedStatement statement = null;
-        ResultSet resultSet = null;
 
-        if (connection != null) {
+        try {
+            connection = getConnection();
+            if(execution != null) execution.connected();
             statement = connection.prepareStatement(sql);
-            resultSet = statement.executeQuery();
-        }
+            if(execution != null) execution.prepared();
+            AsyncResult.register(statement);
+            if(fetchSize != 0) statement.setFetchSize(fetchSize);
+            setParameters(statement, parameters);
+            ResultSet resultSet = statement.executeQuery();
+            if(execution == null) return new ResourceSet(resultSet, statement, connection);
+
+            execution.executed(0);
+            return new ResourceSet(execution.track(resultSet), statement, connection);
+        } catch (SQLException | RuntimeException e) {
+            if(execution != null) execution.failed();
+            if(statement != null) {
+                AsyncResult.release();
+                try { statement.close(); } catch (Exception ignored){}
+            }
 
-        return new ResourceSet(resultSet, statement);
+            if(connection != null) connection.close();
+            throw e;
+        }
     }
 
     /**
-     * Execute a query object
+     * Execute a query object. Its values are bound as parameters rather than inlined into the SQL. A query whose
+     * IN list is too large to send as it is runs in several parts, and its rows are read into memory
      * @param query A query object that formats to valid SQL code
      * @return The result of the query
      * @see #run(Statement)
+     * @see #setTempTableThreshold(int)
      */
     public ResourceSet execute(Query<?> query) throws SQLException {
-        return execute(query.toString());
+        BoundSql bound = query.bind();
+        InListExpansion expansion = InListExpansion.plan(this, query, bound, tempTableThreshold);
+        if(expansion != null) return expansion.query();
+
+        QueryCache cache = queryCache;
+        if(cache == null)
+            return executeQuery(query, bound.getSql(), bound.getParameters(), 0);
+
+        return executeCached(query, bound, cache);
+    }
+
+    /**
+     * Answer a query from the query cache through the interceptor chain, running it and caching the result on a
+     * miss. The cache is keyed by the SQL and parameters the chain ends with
+     */
+    private ResourceSet executeCached(Query<?> query, BoundSql bound, QueryCache cache) throws SQLException {
+        return intercept(query, StatementInvocation.Kind.QUERY, bound.getSql(), bound.getParameters(),
+                (sql, parameters) -> {
+                    BoundSql key = new BoundSql(sql, parameters);
+                    ResultSet cached = cache.get(key);
+                    if(cached != null) return new ResourceSet(cached, null);
+
+                    long version = cache.getVersion();
+                    try (ResourceSet resources = retryQuery(query, sql, parameters, 0)) {
+                        return new ResourceSet(cache.put(query.getTableName(), key, resources.getResultSet(),
+                                version), null);
+                    }
+                });
     }
 
     /**
@@ -202,22 +405,20 @@ public class Database {
      * @see #run(String)
      */
     public void execute(@Language("SQL") String sql, ResultSetHandler resultSetHandler) throws SQLException {
-        PreparedStatement statement = null;
-        ResultSet resultSet = null;
-        final Connection connection = getConnection();
-
-        if (connection != null) {
-            statement = connection.prepareStatement(sql);
-            resultSet = statement.executeQuery();
-            resultSetHandler.handle(resultSet);
-        }
-
-        if(resultSet != null) {
-            try { resultSet.close(); } catch (Exception ignored){}
-        }
+        execute(sql, Collections.emptyList(), resultSetHandler);
+    }
 
-        if(statement != null) {
-            try { statement.close(); } catch (Exception ignored){}
+    /**
+     * Execute a parameterized SQL query that auto-closes its resources
+     * @param sql Valid SQL code with <code>?</code> placeholders
+     * @param parameters The values to bind to the placeholders, in order
+     * @param resultSetHandler Handle the result of the query
+     * @see #run(String, List)
+     */
+    public void execute(@Language("SQL") String sql, List<?> parameters,
+                        ResultSetHandler resultSetHandler) throws SQLException {
+        try (ResourceSet resources = execute(sql, parameters, 0)) {
+            resultSetHandler.handle(resources.getResultSet());
         }
     }
 
@@ -228,7 +429,26 @@ public class Database {
      * @see #run(Statement)
      */
     public void execute(Query<?> query, ResultSetHandler resultSetHandler) throws SQLException {
-        execute(query.toString(), resultSetHandler);
+        BoundSql bound = query.bind();
+        InListExpansion expansion = InListExpansion.plan(this, query, bound, tempTableThreshold);
+        if(expansion != null) {
+            try (ResourceSet resources = expansion.query()) {
+                resultSetHandler.handle(resources.getResultSet());
+            }
+            return;
+        }
+
+        QueryCache cache = queryCache;
+        if(cache == null) {
+            try (ResourceSet resources = executeQuery(query, bound.getSql(), bound.getParameters(), 0)) {
+                resultSetHandler.handle(resources.getResultSet());
+            }
+            return;
+        }
+
+        try (ResourceSet resources = executeCached(query, bound, cache)) {
+            resultSetHandler.handle(resources.getResultSet());
+        }
     }
 
     /**
@@ -238,30 +458,444 @@ public class Database {
      * @see #execute(String)
      */
     public long run(@Language("SQL") String sql) throws SQLException {
-        final Connection connection = getConnection();
-        PreparedStatement statement = null;
-        long rowNum = -1;
+        return run(sql, Collections.emptyList());
+    }
 
-        if (connection != null) {
-            statement = connection.prepareStatement(sql);
-            rowNum = statement.executeUpdate();
+    /**
+     * Run a parameterized SQL statement that modifies the database. Since the statement could touch any table,
+     * the query cache, if any, is cleared
+     * @param sql Valid SQL code with <code>?</code> placeholders
+     * @param parameters The values to bind to the placeholders, in order
+     * @return The number of rows affected by the query
+     * @see #execute(String, List)
+     */
+    public long run(@Language("SQL") String sql, List<?> parameters) throws SQLException {
+        try {
+            return executeUpdate(null, sql, parameters);
+        } finally {
+            invalidate(null);
         }
+    }
+
+    /**
+     * Run a statement that modifies the database through the interceptor chain
+     * @param source The statement object the SQL was rendered from, or null for raw SQL
+     */
+    private long executeUpdate(Statement<?> source, String sql, List<?> parameters) throws SQLException {
+        return intercept(source, StatementInvocation.Kind.UPDATE, sql, parameters,
+                (interceptedSql, interceptedParameters) -> retryUpdate(source, interceptedSql, interceptedParameters));
+    }
 
-        if (statement != null) {
-            try { statement.close(); } catch (Exception ignored){}
+    /**
+     * Run a statement that modifies the database, retrying it according to the retry policy, if any
+     */
+    private long retryUpdate(Statement<?> source, String sql, List<?> parameters) throws SQLException {
+        RetryPolicy policy = retryPolicy;
+        if(policy == null) return executeUpdateOnce(source, sql, parameters);
+
+        return policy.execute(databaseType, () -> executeUpdateOnce(source, sql, parameters));
+    }
+
+    private long executeUpdateOnce(Statement<?> source, String sql, List<?> parameters) throws SQLException {
+        Execution execution = Execution.start(this, source, sql, parameters);
+        try (Connection connection = getConnection()) {
+            if(execution != null) execution.connected();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                if(execution != null) execution.prepared();
+                AsyncResult.register(statement);
+                try {
+                    setParameters(statement, parameters);
+                    long count = statement.executeUpdate();
+                    if(execution != null) execution.executed(count);
+                    return count;
+                } finally {
+                    AsyncResult.release();
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            if(execution != null) execution.failed();
+            throw e;
+        } finally {
+            if(execution != null) execution.finish();
         }
+    }
+
+    /**
+     * Lazily stream the rows of a select query, mapping each one as it is read. Rows are read from a forward-only,
+     * read-only cursor, fetched {@link Select#getFetchSize()} rows at a time. The connection used by the query
+     * stays leased until the stream is closed, so always close it, for example with try-with-resources. <br><br>
+     *
+     * Some drivers only stream results under extra conditions. PostgreSQL, for instance, only honors the fetch
+     * size when auto-commit is off. <br><br>
+     *
+     * A query whose IN list is too large to send as it is runs the same way as with {@link #execute(Query)}, so its
+     * rows are read into memory before the stream is returned
+     * @param select The select query
+     * @param mapper Maps each row to an object
+     * @param <R> The type of object each row is mapped to
+     * @return A stream of mapped rows. An {@link SQLException} thrown while it is consumed is rethrown as an
+     * {@link UncheckedSQLException}
+     */
+    public <R> Stream<R> stream(Select<?> select, RowMapper<R> mapper) throws SQLException {
+        BoundSql bound = select.bind();
+        InListExpansion expansion = InListExpansion.plan(this, select, bound, tempTableThreshold);
+        if(expansion != null) return stream(expansion.query(), mapper);
 
-        return rowNum;
+        return stream(executeQuery(select, bound.getSql(), bound.getParameters(), select.getFetchSize()), mapper);
     }
 
     /**
-     * Run a raw SQL query that modifies the database
+     * Lazily stream the rows of a parameterized SQL query, mapping each one as it is read
+     * @param sql Valid SQL code with <code>?</code> placeholders
+     * @param parameters The values to bind to the placeholders, in order
+     * @param fetchSize The number of rows to fetch at a time, or 0 for the driver default
+     * @param mapper Maps each row to an object
+     * @param <R> The type of object each row is mapped to
+     * @return A stream of mapped rows, which must be closed
+     * @see #stream(Select, RowMapper)
+     */
+    public <R> Stream<R> stream(@Language("SQL") String sql, List<?> parameters, int fetchSize,
+                                RowMapper<R> mapper) throws SQLException {
+        return stream(execute(sql, parameters, fetchSize), mapper);
+    }
+
+    private static <R> Stream<R> stream(ResourceSet resources, RowMapper<R> mapper) {
+        ResultSet resultSet = resources.getResultSet();
+
+        Spliterator<R> rows = new Spliterators.AbstractSpliterator<R>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super R> action) {
+                try {
+                    if(!resultSet.next()) return false;
+                    action.accept(mapper.map(resultSet));
+                    return true;
+                } catch (SQLException e) {
+                    throw new UncheckedSQLException(e);
+                }
+            }
+        };
+
+        return StreamSupport.stream(rows, false).onClose(resources::close);
+    }
+
+    /**
+     * Run a raw SQL query that modifies the database. Its values are bound as parameters rather than inlined
+     * into the SQL. Cached results of queries on the same table are invalidated. A statement whose IN list binds
+     * more parameters than {@link DatabaseType#getMaxParameters()} runs once for every chunk of the list that fits,
+     * in a single transaction
      * @param statement A statement object that formats to valid SQL code
      * @return The number of rows affected by the query
      * @see #execute(Query)
      */
     public long run(Statement<?> statement) throws SQLException {
-        return run(statement.toString());
+        BoundSql bound = statement.bind();
+        InListExpansion expansion = InListExpansion.plan(this, statement, bound, 0);
+        if(expansion != null) return expansion.update();
+
+        try {
+            return executeUpdate(statement, bound.getSql(), bound.getParameters());
+        } finally {
+            invalidate(statement.getTableName());
+        }
+    }
+
+    /**
+     * Remove the cached results of queries on a table from the query cache, if any
+     * @param tableName the name of the table, or null to clear the whole cache
+     */
+    protected void invalidate(String tableName) {
+        QueryCache cache = queryCache;
+        if(cache == null) return;
+
+        if(tableName == null) cache.clear();
+        else cache.invalidate(tableName);
+    }
+
+    /**
+     * Run an insert in batches of {@link Insert#getBatchSize()} rows, on a single connection. In
+     * {@link Insert.BatchMode#JDBC} mode, consecutive rows that format to the same SQL are sent together with
+     * {@link PreparedStatement#executeBatch()}. In {@link Insert.BatchMode#MULTI_ROW} mode, each batch is sent as
+     * one multi-row insert, capped at {@link DatabaseType#getMaxInsertRows(int)} rows. An {@link Upsert} is sent
+     * the same way, with each statement formatted as an upsert. <br><br>
+     *
+     * Every batch goes through the {@link StatementInterceptor} chain. Multi-row batches are retried according to
+     * the retry policy, but JDBC batches are not, since some drivers commit the rows of a batch one at a time
+     * @param insert The insert to run
+     * @return The number of rows inserted by each batch, or {@link java.sql.Statement#SUCCESS_NO_INFO} if the
+     * driver could not tell
+     */
+    public long[] runBatch(Insert<?> insert) throws SQLException {
+        List<String> columns = insert.getColumns();
+        List<Map<String, Object>> rows = insert.getRows();
+
+        int batchSize = insert.getBatchSize();
+        if(insert.getBatchMode() == Insert.BatchMode.MULTI_ROW)
+            batchSize = Math.min(batchSize, databaseType.getMaxInsertRows(columns.size()));
+
+        long[] counts = new long[(rows.size() + batchSize - 1) / batchSize];
+
+        try (Connection connection = getConnection()) {
+            for(int batch = 0; batch < counts.length; batch++){
+                List<Map<String, Object>> batchRows = rows.subList(batch * batchSize,
+                        Math.min(rows.size(), (batch + 1) * batchSize));
+
+                if(insert.getBatchMode() == Insert.BatchMode.MULTI_ROW) {
+                    List<Object> parameters = new ArrayList<>();
+                    String sql = formatRows(insert, columns, batchRows, parameters);
+                    counts[batch] = intercept(insert, StatementInvocation.Kind.UPDATE, sql, parameters,
+                            (batchSql, batchParameters) -> retryBatch(() ->
+                                    executeMultiRow(connection, insert, batchSql, batchParameters)));
+                } else {
+                    counts[batch] = runJdbcBatch(connection, insert, columns, batchRows);
+                }
+            }
+        } finally {
+            invalidate(insert.getTableName());
+        }
+
+        return counts;
+    }
+
+    /**
+     * Run a batch, retrying it according to the retry policy, if any. Only a batch sent as a single statement is
+     * retried, since the database applies it as a whole
+     */
+    private long retryBatch(RetryPolicy.Work<Long> work) throws SQLException {
+        RetryPolicy policy = retryPolicy;
+        if(policy == null) return work.run();
+
+        return policy.execute(databaseType, work);
+    }
+
+    private long executeMultiRow(Connection connection, Insert<?> insert, String sql,
+                                 List<?> parameters) throws SQLException {
+        Execution execution = Execution.start(this, insert, sql, parameters);
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            if(execution != null) execution.prepared();
+            setParameters(statement, parameters);
+            long count = statement.executeUpdate();
+            if(execution != null) execution.executed(count);
+            return count;
+        } catch (SQLException | RuntimeException e) {
+            if(execution != null) execution.failed();
+            throw e;
+        } finally {
+            if(execution != null) execution.finish();
+        }
+    }
+
+    /**
+     * Send rows with {@link PreparedStatement#executeBatch()}, one JDBC batch for each run of consecutive rows that
+     * format to the same SQL. Each JDBC batch goes through the interceptor chain as a
+     * {@link StatementInvocation.Kind#BATCH}
+     */
+    private long runJdbcBatch(Connection connection, Insert<?> insert, List<String> columns,
+                              List<Map<String, Object>> rows) throws SQLException {
+        long count = 0;
+        String currentSql = null;
+        List<List<Object>> parameterSets = new ArrayList<>();
+
+        for(Map<String, Object> row: rows){
+            List<Object> parameters = new ArrayList<>();
+            String sql = formatRows(insert, columns, Collections.singletonList(row), parameters);
+
+            // Nulls and literals are inlined, so rows can format to different SQL
+            if(!sql.equals(currentSql)) {
+                if(currentSql != null)
+                    count = addCount(count, sendJdbcBatch(connection, insert, currentSql, parameterSets));
+
+                parameterSets = new ArrayList<>();
+                currentSql = sql;
+            }
+
+            parameterSets.add(parameters);
+        }
+
+        if(currentSql != null)
+            count = addCount(count, sendJdbcBatch(connection, insert, currentSql, parameterSets));
+
+        return count;
+    }
+
+    private long sendJdbcBatch(Connection connection, Insert<?> insert, String sql,
+                               List<List<Object>> parameterSets) throws SQLException {
+        return intercept(insert, StatementInvocation.Kind.BATCH, sql, parameterSets,
+                (batchSql, batchParameters) -> executeBatch(connection, insert, batchSql, batchParameters));
+    }
+
+    /**
+     * Send a JDBC batch. Its parameters are not recorded, since there is a set of them for every row
+     * @param parameterSets A list of values for every row
+     */
+    private long executeBatch(Connection connection, Insert<?> insert, String sql,
+                              List<?> parameterSets) throws SQLException {
+        Execution execution = Execution.start(this, insert, sql, Collections.emptyList());
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            if(execution != null) execution.prepared();
+            try {
+                for(Object parameters: parameterSets){
+                    setParameters(statement, (List<?>) parameters);
+                    statement.addBatch();
+                }
+
+                long count = addCounts(0, statement.executeBatch());
+                if(execution != null) execution.executed(Math.max(0, count));
+                return count;
+            } catch (SQLException | RuntimeException e) {
+                try { statement.clearBatch(); } catch (Exception ignored){}
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            if(execution != null) execution.failed();
+            throw e;
+        } finally {
+            if(execution != null) execution.finish();
+        }
+    }
+
+    private static long addCounts(long count, int[] results) {
+        for(int result: results){
+            count = addCount(count, result);
+        }
+
+        return count;
+    }
+
+    private static long addCount(long count, long result) {
+        if(result == java.sql.Statement.SUCCESS_NO_INFO || count == java.sql.Statement.SUCCESS_NO_INFO)
+            return java.sql.Statement.SUCCESS_NO_INFO;
+
+        return count + result;
+    }
+
+    /**
+     * Format some of the rows of an insert, as an upsert if it is one
+     */
+    private String formatRows(Insert<?> insert, List<String> columns, List<Map<String, Object>> rows,
+                              List<Object> parameters) {
+        if(insert instanceof Upsert)
+            return databaseType.formatUpsert((Upsert<?>) insert, columns, rows, parameters);
+
+        return databaseType.formatInsert(insert, columns, rows, parameters);
+    }
+
+    /**
+     * Execute a query on the async executor, reading every row of its result into a list. Cancelling the returned
+     * future cancels the query if it is running
+     * @param query A query object that formats to valid SQL code
+     * @param mapper Maps each row to an object
+     * @param <R> The type of object each row is mapped to
+     * @return A future that completes with the mapped rows
+     * @see #getAsyncExecutor()
+     */
+    public <R> CompletableFuture<List<R>> executeAsync(Query<?> query, RowMapper<R> mapper) {
+        return AsyncResult.submit(getAsyncExecutor(), () -> readAll(execute(query), mapper));
+    }
+
+    /**
+     * Execute a parameterized SQL query on the async executor, reading every row of its result into a list.
+     * Cancelling the returned future cancels the query if it is running
+     * @param sql Valid SQL code with <code>?</code> placeholders
+     * @param parameters The values to bind to the placeholders, in order
+     * @param mapper Maps each row to an object
+     * @param <R> The type of object each row is mapped to
+     * @return A future that completes with the mapped rows
+     * @see #getAsyncExecutor()
+     */
+    public <R> CompletableFuture<List<R>> executeAsync(@Language("SQL") String sql, List<?> parameters,
+                                                      RowMapper<R> mapper) {
+        return AsyncResult.submit(getAsyncExecutor(), () -> readAll(execute(sql, parameters), mapper));
+    }
+
+    /**
+     * Start streaming the rows of a select query on the async executor. The future completes once the query has
+     * been executed, with a stream that reads its rows as it is consumed, on whichever thread consumes it.
+     * Cancelling the future cancels the query if it is still running
+     * @param select The select query
+     * @param mapper Maps each row to an object
+     * @param <R> The type of object each row is mapped to
+     * @return A future that completes with a stream of mapped rows, which must be closed
+     * @see #stream(Select, RowMapper)
+     */
+    public <R> CompletableFuture<Stream<R>> streamAsync(Select<?> select, RowMapper<R> mapper) {
+        return AsyncResult.submit(getAsyncExecutor(), () -> stream(select, mapper));
+    }
+
+    /**
+     * Read the rows of a select query on the async executor, handing each mapped row to an action on the thread that
+     * reads it. A single task leases the connection, runs the query and reads its rows, so a slow action holds up
+     * that task rather than another thread of the executor. Cancelling the returned future cancels the query, even
+     * while its rows are being read
+     * @param select The select query
+     * @param mapper Maps each row to an object
+     * @param action Receives each mapped row. An exception it throws stops the query
+     * @param <R> The type of object each row is mapped to
+     * @return A future that completes once every row has been handed to the action
+     * @see #stream(Select, RowMapper)
+     */
+    public <R> CompletableFuture<Void> forEachAsync(Select<?> select, RowMapper<R> mapper,
+                                                   Consumer<? super R> action) {
+        return AsyncResult.submit(getAsyncExecutor(), () -> {
+            Stream<R> rows = stream(select, mapper);
+            try {
+                rows.forEach(action);
+                return null;
+            } catch (UncheckedSQLException e) {
+                throw e.getCause();
+            } finally {
+                AsyncResult.release();
+                rows.close();
+            }
+        });
+    }
+
+    private static <R> List<R> readAll(ResourceSet resources, RowMapper<R> mapper) throws SQLException {
+        try {
+            List<R> rows = new ArrayList<>();
+            ResultSet resultSet = resources.getResultSet();
+            while (resultSet.next()){
+                rows.add(mapper.map(resultSet));
+            }
+
+            return rows;
+        } finally {
+            AsyncResult.release();
+            resources.close();
+        }
+    }
+
+    /**
+     * Run a statement that modifies the database on the async executor. Cancelling the returned future cancels
+     * the statement if it is running
+     * @param statement A statement object that formats to valid SQL code
+     * @return A future that completes with the number of rows affected
+     * @see #getAsyncExecutor()
+     */
+    public CompletableFuture<Long> runAsync(Statement<?> statement) {
+        return AsyncResult.submit(getAsyncExecutor(), () -> run(statement));
+    }
+
+    /**
+     * Run a parameterized SQL statement that modifies the database on the async executor. Cancelling the returned
+     * future cancels the statement if it is running
+     * @param sql Valid SQL code with <code>?</code> placeholders
+     * @param parameters The values to bind to the placeholders, in order
+     * @return A future that completes with the number of rows affected
+     * @see #getAsyncExecutor()
+     */
+    public CompletableFuture<Long> runAsync(@Language("SQL") String sql, List<?> parameters) {
+        return AsyncResult.submit(getAsyncExecutor(), () -> run(sql, parameters));
+    }
+
+    /**
+     * Bind values to the placeholders of a prepared statement
+     * @param statement The prepared statement
+     * @param parameters The values to bind, in order
+     */
+    protected void setParameters(PreparedStatement statement, List<?> parameters) throws SQLException {
+        for(int i = 0; i < parameters.size(); i++){
+            statement.setObject(i + 1, parameters.get(i));
+        }
     }
 
     /**
@@ -291,6 +925,16 @@ public class Database {
         return new Insert<>().setDatabase(this);
     }
 
+    /**
+     * Initiate a new upsert, which inserts rows or updates the ones that already exist
+     * @return The upsert instance
+     */
+    public Upsert<?> upsert(){
+        Upsert<?> upsert = new Upsert<>();
+        upsert.setDatabase(this);
+        return upsert;
+    }
+
     /**
      * Initiate a new delete query
      * @return The delete query instance
@@ -308,10 +952,52 @@ public class Database {
         return new Update<>(tableName).setDatabase(this);
     }
 
+    /**
+     * Close the connection pool of this database and remove it from the cache under every alias. Connections that
+     * are currently leased are closed as soon as they are returned
+     * @see ConnectionPool#close()
+     */
     @Override
-    protected void finalize() throws Throwable {
-        if(this.connection != null && !this.connection.isClosed()) {
-            this.connection.close();
+    public void close() {
+        manager.values().removeIf(database -> database == this);
+        if(cleanable != null) cleanable.clean();
+
+        ExecutorService executor;
+        synchronized (this) {
+            executor = ownedExecutor;
+            ownedExecutor = null;
+        }
+        if(executor != null) executor.shutdown();
+    }
+
+    /**
+     * Opens connections for the pool of a database. The database is only weakly referenced, so that the pool, and
+     * the cleanup action that closes it, do not keep the database reachable
+     */
+    private static final class DatabaseConnectionFactory implements ConnectionPool.ConnectionFactory {
+        private final WeakReference<Database> database;
+
+        DatabaseConnectionFactory(Database database) {
+            this.database = new WeakReference<>(database);
+        }
+
+        @Override
+        public Connection create() throws SQLException {
+            Database database = this.database.get();
+            if(database == null)
+                throw new SQLException("Database has been closed");
+
+            Object event = FlightRecorderSupport.RECORDER.beginConnect();
+            if(event == null) return database.createConnection();
+
+            boolean failed = true;
+            try {
+                Connection connection = database.createConnection();
+                failed = false;
+                return connection;
+            } finally {
+                FlightRecorderSupport.RECORDER.endConnect(event, database.schema, failed);
+            }
         }
     }
 
@@ -371,6 +1057,14 @@ public class Database {
         return this;
     }
 
+    /**
+     * Get the connection pool backing this database, e.g. to adjust its size or timeouts
+     * @return the connection pool
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
     public Properties getProperties() {
         return properties;
     }
@@ -391,5 +1085,191 @@ public class Database {
         return this;
     }
 
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Cache the results of queries run through {@link #execute(Query)}. Raw SQL queries and streamed results are
+     * never cached
+     * @param queryCache the query cache, or null to stop caching
+     * @return this database
+     */
+    public Database setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+        return this;
+    }
+
+    /**
+     * Add an interceptor to the end of the chain that wraps every statement run on this database and on the
+     * transactions started on it
+     * @param interceptor the interceptor
+     * @return this database
+     */
+    public Database addInterceptor(StatementInterceptor interceptor) {
+        if(interceptor == null)
+            throw new IllegalArgumentException("interceptor is required");
+
+        interceptors.add(interceptor);
+        return this;
+    }
+
+    /**
+     * Remove an interceptor from the chain
+     * @param interceptor the interceptor
+     * @return this database
+     */
+    public Database removeInterceptor(StatementInterceptor interceptor) {
+        interceptors.remove(interceptor);
+        return this;
+    }
+
+    /**
+     * Get the interceptors that wrap every statement run on this database, in the order they are called
+     * @return an unmodifiable view of the interceptors
+     */
+    public List<StatementInterceptor> getInterceptors() {
+        return Collections.unmodifiableList(interceptors);
+    }
+
+    /**
+     * Get the executor that async calls such as {@link #executeAsync(Query, RowMapper)} run on. Unless another one
+     * was set, this is a fixed pool of daemon threads, one for each connection the pool can open at the time it is
+     * first used, which are stopped after a minute without work. Calls beyond that are queued, rather than waiting
+     * for a connection on a thread of their own
+     * @return the async executor
+     */
+    public Executor getAsyncExecutor() {
+        Executor executor = asyncExecutor;
+        if(executor != null) return executor;
+
+        synchronized (this) {
+            if(asyncExecutor == null) {
+                int threads = pool.getMaxSize();
+                AtomicInteger count = new AtomicInteger();
+                ThreadPoolExecutor owned = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(), runnable -> {
+                            Thread thread = new Thread(runnable, "hoverdb-async-" + schema + "-" +
+                                    count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                owned.allowCoreThreadTimeOut(true);
+                asyncExecutor = ownedExecutor = owned;
+            }
+
+            return asyncExecutor;
+        }
+    }
+
+    /**
+     * Set the executor that async calls run on. An executor set here is not shut down when this database is closed
+     * @param asyncExecutor the async executor, or null to use the default one
+     * @return this database
+     */
+    public Database setAsyncExecutor(Executor asyncExecutor) {
+        replaceAsyncExecutor(asyncExecutor, null);
+        return this;
+    }
+
+    /**
+     * Run async calls on virtual threads, letting at most one of them run for each connection the pool can open.
+     * Calls beyond that wait their turn on their own virtual thread instead of timing out on the pool. The
+     * executor is shut down when this database is closed
+     * @return this database
+     * @throws UnsupportedOperationException if the running JVM does not have virtual threads
+     * @see VirtualThreadExecutor
+     */
+    public Database useVirtualThreads() {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor(pool.getMaxSize());
+        replaceAsyncExecutor(executor, executor);
+        return this;
+    }
+
+    private void replaceAsyncExecutor(Executor asyncExecutor, ExecutorService owned) {
+        ExecutorService previous;
+        synchronized (this) {
+            previous = ownedExecutor;
+            ownedExecutor = owned;
+            this.asyncExecutor = asyncExecutor;
+        }
+        if(previous != null) previous.shutdown();
+    }
+
+    /**
+     * Get the number of values from which the IN list of a query is loaded into a temporary table
+     * @return the threshold, or 0 if IN lists are only loaded into a temporary table when they cannot be split
+     */
+    public int getTempTableThreshold() {
+        return tempTableThreshold;
+    }
+
+    /**
+     * Load the IN lists of queries with at least a number of values into a temporary table, and match the query
+     * against it with a subquery, rather than binding every value. The table is created, filled, queried and
+     * dropped in a single transaction, joining the current one if there is one, and the rows of the query are read
+     * into memory. This is skipped if the values are not all whole numbers or all strings, or if the RDBMS cannot
+     * create temporary tables on the fly, as reported by
+     * {@link DatabaseType#formatCreateTempTable(String, String, boolean, int)}. <br><br>
+     *
+     * Regardless of this setting, a query that binds more parameters than {@link DatabaseType#getMaxParameters()}
+     * runs once for every chunk of its IN list that fits, or against a temporary table if its rows cannot be put
+     * together from chunks, such as a sorted or limited query
+     * @param tempTableThreshold the number of values, or 0 to turn this off, which is the default
+     * @return this database
+     */
+    public Database setTempTableThreshold(int tempTableThreshold) {
+        if(tempTableThreshold < 0)
+            throw new IllegalArgumentException("tempTableThreshold cannot be negative");
+
+        this.tempTableThreshold = tempTableThreshold;
+        return this;
+    }
+
+    public StatementMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Record the latency and row counts of every statement run on this database. Queries answered from the query
+     * cache are not recorded, since they never reach the database
+     * @param metrics the metrics to record into, or null to stop recording
+     * @return this database
+     */
+    public Database setMetrics(StatementMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * Log statements that take longer than the threshold of a slow query log, including the time spent handling
+     * the rows of their results
+     * @param slowQueryLog the slow query log, or null to stop logging
+     * @return this database
+     */
+    public Database setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+        return this;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Retry statements and transactions that fail because of a deadlock or a serialization failure. Batches are
+     * never retried, since the batches sent before the failure may already have been committed
+     * @param retryPolicy the retry policy, or null to stop retrying
+     * @return this database
+     */
+    public Database setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
     // </editor-fold>
 }
@@ -1,22 +1,115 @@
 package com.sultanofcardio.database.sql
 
+import java.sql.SQLException
+
 /**
- * Run all queries safely inside a transaction that will be rolled back if anything goes wrong
+ * Run all queries safely inside a transaction that will be rolled back if anything goes wrong. The transaction runs on
+ * a single connection leased from the pool of this database, which is returned once the transaction ends. <br><br>
+ *
+ * A transaction started while another is running on the same database and thread behaves according to
+ * [propagation]. By default it runs inside the outer transaction behind a savepoint, so that if it fails, only its
+ * own work is rolled back <br><br>
+ *
+ * A new transaction that fails because of a deadlock or a serialization failure is rolled back and run again from
+ * scratch, according to [retryPolicy]. Transactions that join another one or run behind a savepoint are never
+ * retried on their own, since the failure rolls back the outer transaction as well
  *
- * @param work context in which to run queries. Be sure to use the database context provided
+ * @param propagation how to behave inside another transaction
+ * @param retryPolicy how to retry a new transaction, or null to use [Database.getRetryPolicy]
+ * @param work context in which to run queries. Be sure to use the database context provided. It may be run more
+ * than once when the transaction is retried
  */
-fun <T> Database.transaction(work: Database.() -> T): T {
-    val clone = copy()
-    clone.getConnection().autoCommit = false
+@JvmOverloads
+fun <T> Database.transaction(propagation: Propagation = Propagation.NESTED, retryPolicy: RetryPolicy? = null,
+                             work: Database.() -> T): T {
+    val outer = TransactionDatabase.current(this)
+    val event = FlightRecorderSupport.RECORDER.beginTransaction()
+    var succeeded = false
+
+    try {
+        val t = if (outer != null) {
+            when (propagation) {
+                Propagation.REQUIRED -> outer.join(work)
+                Propagation.NESTED -> outer.nested(work)
+                Propagation.REQUIRES_NEW -> outer.database.retrying(retryPolicy, work)
+            }
+        } else {
+            retrying(retryPolicy, work)
+        }
+
+        succeeded = true
+        return t
+    } finally {
+        FlightRecorderSupport.RECORDER.endTransaction(event, schema, propagation, outer != null, succeeded)
+    }
+}
+
+private fun <T> Database.retrying(retryPolicy: RetryPolicy?, work: Database.() -> T): T {
+    val policy = retryPolicy ?: this.retryPolicy ?: return newTransaction(work)
+
+    var attempt = 1
+    while (true) {
+        try {
+            val t = newTransaction(work)
+            policy.succeeded(attempt)
+            return t
+        } catch (e: Throwable) {
+            if (!policy.shouldRetry(databaseType, e, attempt) || !policy.backoff(attempt)) throw e
+            attempt++
+        }
+    }
+}
+
+private fun <T> Database.newTransaction(work: Database.() -> T): T {
+    getConnection().use { connection ->
+        connection.autoCommit = false
+        val transaction = TransactionDatabase(this, connection)
+        transaction.begin()
+
+        try {
+            val t = work(transaction)
+            if (transaction.isRollbackOnly) {
+                throw SQLException("Transaction was rolled back because work that joined it failed")
+            }
+
+            transaction.commit()
+            return t
+        } catch (e: Throwable) {
+            try {
+                transaction.rollback()
+            } catch (rollbackError: Throwable) {
+                e.addSuppressed(rollbackError)
+            }
+            throw e
+        } finally {
+            transaction.end()
+        }
+    }
+}
+
+private fun <T> TransactionDatabase.join(work: Database.() -> T): T {
+    try {
+        return work(this)
+    } catch (e: Throwable) {
+        setRollbackOnly()
+        throw e
+    }
+}
+
+private fun <T> TransactionDatabase.nested(work: Database.() -> T): T {
+    val savepoint = setSavepoint()
 
     try {
-        val t = work(clone)
-        clone.connection.commit()
-        clone.connection.close()
+        val t = work(this)
+        releaseSavepoint(savepoint)
         return t
     } catch (e: Throwable) {
-        clone.connection.rollback()
-        clone.connection.close()
+        try {
+            rollback(savepoint)
+        } catch (rollbackError: Throwable) {
+            e.addSuppressed(rollbackError)
+            setRollbackOnly()
+        }
         throw e
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,165 @@
+package com.sultanofcardio.database.sql;
+
+import com.sultanofcardio.database.sql.statement.Statement;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The timings of a single execution of a statement, from leasing a connection until its result is closed. The
+ * time spent fetching rows is measured by wrapping the result set, so that the time spent handling them is left
+ * out. Once the execution finishes, it is recorded in the {@link StatementMetrics} of the database, in its
+ * {@link SlowQueryLog} if it took too long, and as a Flight Recorder event if one is being recorded
+ *
+ * @author sultanofcardio
+ */
+final class Execution {
+    private final StatementMetrics metrics;
+    private final SlowQueryLog slowQueryLog;
+    private final Object event;
+    private final Statement<?> statement;
+    private final String sql;
+    private final List<?> parameters;
+    private final Thread thread = Thread.currentThread();
+    private final long started = System.nanoTime();
+    private long connected, prepared, executed;
+    private long fetchNanos;
+    private long rowsReturned;
+    private long rowsAffected;
+    private boolean failed;
+    private boolean finished;
+
+    private Execution(StatementMetrics metrics, SlowQueryLog slowQueryLog, Object event, Statement<?> statement,
+                      String sql, List<?> parameters) {
+        this.metrics = metrics;
+        this.slowQueryLog = slowQueryLog;
+        this.event = event;
+        this.statement = statement;
+        this.sql = sql;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Start timing an execution, if the database records any
+     * @param database The database the statement runs on
+     * @param statement The statement object, or null for raw SQL
+     * @param sql The SQL being run
+     * @param parameters The values bound to the SQL
+     * @return the execution, or null if the database does not record executions
+     */
+    static Execution start(Database database, Statement<?> statement, String sql, List<?> parameters) {
+        StatementMetrics metrics = database.metrics;
+        SlowQueryLog slowQueryLog = database.slowQueryLog;
+        Object event = FlightRecorderSupport.RECORDER.beginStatement();
+        if(metrics == null && slowQueryLog == null && event == null) return null;
+
+        return new Execution(metrics, slowQueryLog, event, statement, sql, parameters);
+    }
+
+    /**
+     * Mark that a connection was leased
+     */
+    void connected() {
+        connected = System.nanoTime();
+    }
+
+    /**
+     * Mark that the statement was prepared
+     */
+    void prepared() {
+        prepared = System.nanoTime();
+    }
+
+    /**
+     * Mark that the statement was executed
+     * @param rowsAffected The number of rows it modified, or 0 for a query
+     */
+    void executed(long rowsAffected) {
+        executed = System.nanoTime();
+        this.rowsAffected = rowsAffected;
+    }
+
+    /**
+     * Wrap the result of a query, so that fetching its rows is timed and closing it finishes this execution
+     * @param resultSet The result of the query
+     * @return the wrapped result
+     */
+    ResultSet track(ResultSet resultSet) {
+        return (ResultSet) Proxy.newProxyInstance(Execution.class.getClassLoader(), new Class[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            return next(resultSet);
+                        case "close":
+                            try {
+                                resultSet.close();
+                            } finally {
+                                finish();
+                            }
+                            return null;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                    }
+
+                    try {
+                        return method.invoke(resultSet, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private boolean next(ResultSet resultSet) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            boolean hasRow = resultSet.next();
+            if(hasRow) rowsReturned++;
+            return hasRow;
+        } catch (Throwable e) {
+            failed = true;
+            throw e;
+        } finally {
+            fetchNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Finish this execution after it failed
+     */
+    void failed() {
+        failed = true;
+        finish();
+    }
+
+    /**
+     * Finish this execution and record it. Finishing it more than once has no effect
+     */
+    void finish() {
+        if(finished) return;
+        finished = true;
+
+        long finished = System.nanoTime();
+        long leased = connected != 0 ? connected : started;
+        long end = executed != 0 ? executed : finished;
+        Statement.Type type = statement != null ? statement.getType() : StatementMetrics.typeOf(sql);
+        if(metrics != null)
+            metrics.record(type, sql, end - leased + fetchNanos, rowsReturned, rowsAffected, failed);
+
+        FlightRecorderSupport.RECORDER.endStatement(event, sql, type, leased - started, rowsReturned + rowsAffected,
+                failed);
+
+        if(slowQueryLog != null && slowQueryLog.isSlow(finished - leased)) {
+            long prepareNanos = prepared != 0 ? prepared - leased : 0;
+            long executeNanos = executed != 0 ? executed - (prepared != 0 ? prepared : leased) : 0;
+
+            slowQueryLog.log(new SlowQuery(System.currentTimeMillis(), type, sql, new ArrayList<>(parameters),
+                    finished - leased, prepareNanos, executeNanos, fetchNanos, rowsReturned + rowsAffected, failed,
+                    thread.getName()));
+        }
+    }
+}
@@ -51,12 +51,8 @@ public final class FileDatabase extends Database {
             schema = fileName.substring(0, fileName.lastIndexOf("."));
         } else schema = fileName;
 
-        FileDatabase database = getInstance(alias);
-        if(database == null) database = new FileDatabase(schema, type);
-
+        FileDatabase database = cacheDatabase(alias, FileDatabase.class, () -> new FileDatabase(schema, type));
         database.setPath(path);
-        cacheDatabase(alias, database);
-
         return database;
     }
 
@@ -76,23 +72,20 @@ public final class FileDatabase extends Database {
     }
 
     @Override
-    public Connection getConnection(){
+    protected Connection createConnection() throws SQLException {
         try {
-            if(this.connection == null || this.connection.isClosed()) {
-                this.connection = null;
-                Class.forName(databaseType.getDriverName());
-                connection = DriverManager.getConnection(databaseType.getConnectionString(path));
-            }
-        } catch (ClassNotFoundException | SQLException e) {
+            Class.forName(databaseType.getDriverName());
+        } catch (ClassNotFoundException e) {
             e.printStackTrace();
+            throw new RuntimeException("Unable to instantiate connection driver " + databaseType.getDriverName());
         }
 
-        return connection;
+        return DriverManager.getConnection(databaseType.getConnectionString(path));
     }
 
     @Override
     public Database copy() {
-        return FileDatabase.connect(path, databaseType, String.valueOf(System.currentTimeMillis()));
+        return new FileDatabase(schema, databaseType).setPath(path);
     }
 
     /**
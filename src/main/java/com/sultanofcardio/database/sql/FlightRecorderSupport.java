@@ -0,0 +1,103 @@
+package com.sultanofcardio.database.sql;
+
+import com.sultanofcardio.database.sql.statement.Statement;
+
+/**
+ * Emits Java Flight Recorder events for statements, connection leases, new connections and transactions. <br><br>
+ *
+ * The events themselves are defined in {@link JfrEvents}, which is only loaded if the running JVM has the
+ * <code>jdk.jfr</code> API. On JVMs without it, such as Java 8 builds older than 8u262, every method of this class
+ * does nothing. When the JVM has the API but no recording is enabled for an event, starting it returns null, so
+ * that callers can skip timing it
+ *
+ * @author sultanofcardio
+ */
+class FlightRecorderSupport {
+
+    static final FlightRecorderSupport RECORDER = create();
+
+    private static FlightRecorderSupport create() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderSupport.class.getClassLoader());
+            return (FlightRecorderSupport) Class.forName(FlightRecorderSupport.class.getPackage().getName()
+                    + ".JfrEvents").newInstance();
+        } catch (Throwable e) {
+            return new FlightRecorderSupport();
+        }
+    }
+
+    /**
+     * Start a statement event
+     * @return the event, or null if it is not being recorded
+     */
+    Object beginStatement() {
+        return null;
+    }
+
+    /**
+     * Commit a statement event
+     * @param event The event returned by {@link #beginStatement()}, or null
+     * @param sql The SQL that was run
+     * @param type The type of the statement, or null if it could not be told
+     * @param connectionWaitNanos The time spent waiting for a connection
+     * @param rows The number of rows returned or modified
+     * @param failed Whether the statement failed
+     */
+    void endStatement(Object event, String sql, Statement.Type type, long connectionWaitNanos, long rows,
+                      boolean failed) {
+    }
+
+    /**
+     * Start a connection lease event
+     * @return the event, or null if it is not being recorded
+     */
+    Object beginLease() {
+        return null;
+    }
+
+    /**
+     * Commit a connection lease event
+     * @param event The event returned by {@link #beginLease()}, or null
+     * @param pool The pool the connection was leased from
+     * @param schema The schema of the database
+     * @param failed Whether no connection could be leased
+     */
+    void endLease(Object event, ConnectionPool pool, String schema, boolean failed) {
+    }
+
+    /**
+     * Start a new connection event
+     * @return the event, or null if it is not being recorded
+     */
+    Object beginConnect() {
+        return null;
+    }
+
+    /**
+     * Commit a new connection event
+     * @param event The event returned by {@link #beginConnect()}, or null
+     * @param schema The schema of the database
+     * @param failed Whether the connection could not be opened
+     */
+    void endConnect(Object event, String schema, boolean failed) {
+    }
+
+    /**
+     * Start a transaction event
+     * @return the event, or null if it is not being recorded
+     */
+    Object beginTransaction() {
+        return null;
+    }
+
+    /**
+     * Commit a transaction event
+     * @param event The event returned by {@link #beginTransaction()}, or null
+     * @param schema The schema of the database
+     * @param propagation How the transaction behaved inside another one
+     * @param nested Whether the transaction ran inside another one
+     * @param succeeded Whether the work of the transaction finished without an error
+     */
+    void endTransaction(Object event, String schema, Propagation propagation, boolean nested, boolean succeeded) {
+    }
+}
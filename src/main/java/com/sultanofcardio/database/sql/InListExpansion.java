@@ -0,0 +1,289 @@
+package com.sultanofcardio.database.sql;
+
+import com.sultanofcardio.database.sql.statement.Condition;
+import com.sultanofcardio.database.sql.statement.Insert;
+import com.sultanofcardio.database.sql.statement.Query;
+import com.sultanofcardio.database.sql.statement.Select;
+import com.sultanofcardio.database.sql.statement.Statement;
+import com.sultanofcardio.database.sql.types.DatabaseType;
+
+import javax.sql.rowset.CachedRowSet;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a statement whose IN list is too large to send as it is. The values of the list are either split into
+ * chunks, running the statement once per chunk, or loaded into a temporary table that the statement is matched
+ * against with a subquery. Either way, the work runs in a single transaction, joining the current one if there is
+ * one. <br><br>
+ *
+ * Only an IN condition added directly to the statement is expanded, since it is ANDed with every other condition,
+ * so that the rows matched by each chunk can simply be put together. The rows of a query are read into memory
+ * before they are returned, one chunk after the other. A query that sorts, limits, removes duplicates or calls
+ * functions in its columns cannot be put together from chunks, so it is only expanded with a temporary table
+ *
+ * @author sultanofcardio
+ * @see Database#setTempTableThreshold(int)
+ * @see DatabaseType#formatCreateTempTable(String, String, boolean, int)
+ */
+final class InListExpansion {
+
+    private static final String KEY_COLUMN = "hoverdb_key";
+    private static final AtomicLong tables = new AtomicLong();
+
+    private final Database database;
+    private final Statement<?> statement;
+    private final int index;
+    private final Condition.In in;
+    private final List<Object> keys;
+    private final boolean useTempTable;
+
+    private InListExpansion(Database database, Statement<?> statement, int index, Condition.In in,
+                            List<Object> keys, boolean useTempTable) {
+        this.database = database;
+        this.statement = statement;
+        this.index = index;
+        this.in = in;
+        this.keys = keys;
+        this.useTempTable = useTempTable;
+    }
+
+    /**
+     * Plan how to run a statement. Its largest IN list is expanded if the statement binds more parameters than the
+     * RDBMS accepts, or if it has at least <code>tempTableThreshold</code> values and can be loaded into a
+     * temporary table
+     * @param database The database the statement runs on
+     * @param statement The statement
+     * @param bound The statement, bound as it would run
+     * @param tempTableThreshold The number of values from which a query matches a temporary table, or 0 to only
+     *                           use one when the query cannot be split
+     * @return The expansion, or null if the statement should run as it is
+     */
+    static InListExpansion plan(Database database, Statement<?> statement, BoundSql bound, int tempTableThreshold) {
+        List<Condition> conditions = statement.getConditions();
+        int index = -1;
+        for(int i = 0; i < conditions.size(); i++){
+            Condition condition = conditions.get(i);
+            if(!(condition instanceof Condition.In) || ((Condition.In) condition).isNegated()) continue;
+
+            if(index < 0 || ((Condition.In) condition).getValues().size() >
+                    ((Condition.In) conditions.get(index)).getValues().size())
+                index = i;
+        }
+
+        if(index < 0) return null;
+
+        DatabaseType type = database.getDatabaseType();
+        Condition.In in = (Condition.In) conditions.get(index);
+        boolean tooLong = bound.getParameters().size() > type.getMaxParameters();
+        boolean large = tempTableThreshold > 0 && in.getValues().size() >= tempTableThreshold;
+        if(!tooLong && !large) return null;
+
+        // Each row has a single value in the column, so distinct values never match the same row twice
+        List<Object> keys = new ArrayList<>(new LinkedHashSet<>(in.getValues()));
+        keys.remove(null);
+
+        boolean tempTable = statement instanceof Query && createTempTable(type, "t", keys) != null;
+        if(tempTable && (large || !isSplittable(statement)))
+            return new InListExpansion(database, statement, index, in, keys, true);
+
+        if(tooLong && isSplittable(statement))
+            return new InListExpansion(database, statement, index, in, keys, false);
+
+        return null;
+    }
+
+    private static boolean isSplittable(Statement<?> statement) {
+        if(!(statement instanceof Select)) return !(statement instanceof Query);
+
+        Select<?> select = (Select<?>) statement;
+        if(select.getLimit() > 0 || select.getOffset() > 0 || select.isOrdered() || select.isDistinct() ||
+                !select.getGenericConditions().isEmpty())
+            return false;
+
+        String[] columns = select.getColumns();
+        if(columns != null) {
+            for(String column: columns){
+                if(column != null && column.indexOf('(') >= 0) return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Format the statement that creates the temporary table for a list of keys
+     * @return the statement, or null if the keys are not all whole numbers or all strings, or the RDBMS cannot
+     * create the table
+     */
+    private static String createTempTable(DatabaseType type, String table, List<Object> keys) {
+        boolean numeric = true, strings = true;
+        int length = 0;
+        for(Object key: keys){
+            numeric &= key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte;
+            strings &= key instanceof String;
+            if(key instanceof String) length = Math.max(length, ((String) key).length());
+        }
+
+        if(!numeric && !strings) return null;
+        return type.formatCreateTempTable(table, KEY_COLUMN, numeric, length);
+    }
+
+    /**
+     * Run the query
+     * @return its rows, read into memory
+     */
+    ResourceSet query() throws SQLException {
+        ResultSet rows = inTransaction(view -> {
+            if(useTempTable) return queryTempTable(view);
+
+            List<ResultSet> chunks = new ArrayList<>();
+            for(List<Object> chunk: chunks()){
+                chunks.add(readChunk(view, Condition.in(in.getColumn(), chunk)));
+            }
+
+            return concat(chunks);
+        });
+
+        return new ResourceSet(rows, null);
+    }
+
+    /**
+     * Run the statement once for every chunk of values
+     * @return The total number of rows affected
+     */
+    long update() throws SQLException {
+        return inTransaction(view -> {
+            long count = 0;
+            for(List<Object> chunk: chunks()){
+                count += run(view, Condition.in(in.getColumn(), chunk));
+            }
+
+            return count;
+        });
+    }
+
+    private ResultSet queryTempTable(Database view) throws SQLException {
+        DatabaseType type = view.getDatabaseType();
+        String table = type.getTempTableName("hoverdb_keys_" + tables.incrementAndGet());
+
+        view.run(createTempTable(type, table, keys));
+        try {
+            if(!keys.isEmpty()) {
+                Insert<?> insert = view.insert().into(table).batchMode(Insert.BatchMode.MULTI_ROW);
+                for(Object key: keys){
+                    insert.row(Collections.singletonMap(KEY_COLUMN, key));
+                }
+                view.runBatch(insert);
+            }
+
+            return readChunk(view, Condition.in(in.getColumn(), view.select(KEY_COLUMN).from(table)));
+        } finally {
+            String drop = type.formatDropTempTable(table);
+            if(drop != null) view.run(drop);
+        }
+    }
+
+    /**
+     * Split the values into chunks that leave room for the other parameters of the statement. Chunks are a power of
+     * two, or a multiple of the IN list limit of the RDBMS, so that padding the last one does not add parameters
+     */
+    private List<List<Object>> chunks() {
+        DatabaseType type = database.getDatabaseType();
+
+        Condition single = Condition.in(in.getColumn(), Collections.singletonList(0));
+        int others = statement.withCondition(index, single).bind().getParameters().size() - 1;
+
+        int room = type.getMaxParameters() - others;
+        if(room < 1)
+            throw new IllegalStateException("The other conditions of the statement use up every parameter");
+
+        int max = type.getMaxInListSize();
+        int size = room >= max ? room - room % max : Integer.highestOneBit(room);
+
+        List<List<Object>> chunks = new ArrayList<>();
+        for(int start = 0; start < keys.size(); start += size){
+            chunks.add(keys.subList(start, Math.min(keys.size(), start + size)));
+        }
+
+        if(chunks.isEmpty()) chunks.add(Collections.emptyList());
+        return chunks;
+    }
+
+    private ResultSet readChunk(Database view, Condition condition) throws SQLException {
+        try (ResourceSet resources = view.execute((Query<?>) statement.withCondition(index, condition))) {
+            CachedRowSet rows = QueryCache.getRowSetFactory().createCachedRowSet();
+            rows.populate(resources.getResultSet());
+            return rows;
+        }
+    }
+
+    private long run(Database view, Condition condition) throws SQLException {
+        return view.run(statement.withCondition(index, condition));
+    }
+
+    private <T> T inTransaction(Work<T> work) throws SQLException {
+        try {
+            return DatabaseKt.transaction(database, Propagation.REQUIRED, null, view -> {
+                try {
+                    return work.run(view);
+                } catch (SQLException e) {
+                    throw new UncheckedSQLException(e);
+                }
+            });
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Put the rows of several result sets together into a single forward-only result set
+     */
+    private static ResultSet concat(List<ResultSet> parts) {
+        if(parts.size() == 1) return parts.get(0);
+
+        int[] current = {0};
+        return (ResultSet) Proxy.newProxyInstance(InListExpansion.class.getClassLoader(), new Class[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            for(; current[0] < parts.size(); current[0]++){
+                                if(parts.get(current[0]).next()) return true;
+                            }
+                            current[0] = parts.size() - 1;
+                            return false;
+                        case "close":
+                            for(ResultSet part: parts) part.close();
+                            return null;
+                        case "getType":
+                            return ResultSet.TYPE_FORWARD_ONLY;
+                        case "previous": case "first": case "last": case "absolute": case "relative":
+                        case "beforeFirst": case "afterLast":
+                            throw new SQLFeatureNotSupportedException("The result set is forward only");
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                    }
+
+                    try {
+                        return method.invoke(parts.get(current[0]), args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    @FunctionalInterface
+    private interface Work<T> {
+        T run(Database view) throws SQLException;
+    }
+}
@@ -0,0 +1,188 @@
+package com.sultanofcardio.database.sql;
+
+import com.sultanofcardio.database.sql.statement.Statement;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events of hoverdb. Only loaded through {@link FlightRecorderSupport} on JVMs that have
+ * the <code>jdk.jfr</code> API
+ *
+ * @author sultanofcardio
+ */
+final class JfrEvents extends FlightRecorderSupport {
+
+    @Override
+    Object beginStatement() {
+        StatementEvent event = new StatementEvent();
+        if(!event.isEnabled()) return null;
+
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endStatement(Object event, String sql, Statement.Type type, long connectionWaitNanos, long rows,
+                      boolean failed) {
+        if(event == null) return;
+
+        StatementEvent statement = (StatementEvent) event;
+        statement.end();
+        if(!statement.shouldCommit()) return;
+
+        statement.fingerprint = StatementMetrics.fingerprint(sql);
+        statement.statementType = type != null ? type.name() : null;
+        statement.connectionWait = connectionWaitNanos;
+        statement.rows = rows;
+        statement.failed = failed;
+        statement.commit();
+    }
+
+    @Override
+    Object beginLease() {
+        ConnectionLeaseEvent event = new ConnectionLeaseEvent();
+        if(!event.isEnabled()) return null;
+
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endLease(Object event, ConnectionPool pool, String schema, boolean failed) {
+        if(event == null) return;
+
+        ConnectionLeaseEvent lease = (ConnectionLeaseEvent) event;
+        lease.end();
+        if(!lease.shouldCommit()) return;
+
+        lease.schema = schema;
+        lease.poolSize = pool.getSize();
+        lease.idle = pool.getIdleCount();
+        lease.failed = failed;
+        lease.commit();
+    }
+
+    @Override
+    Object beginConnect() {
+        ConnectEvent event = new ConnectEvent();
+        if(!event.isEnabled()) return null;
+
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endConnect(Object event, String schema, boolean failed) {
+        if(event == null) return;
+
+        ConnectEvent connect = (ConnectEvent) event;
+        connect.end();
+        if(!connect.shouldCommit()) return;
+
+        connect.schema = schema;
+        connect.failed = failed;
+        connect.commit();
+    }
+
+    @Override
+    Object beginTransaction() {
+        TransactionEvent event = new TransactionEvent();
+        if(!event.isEnabled()) return null;
+
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endTransaction(Object event, String schema, Propagation propagation, boolean nested, boolean succeeded) {
+        if(event == null) return;
+
+        TransactionEvent transaction = (TransactionEvent) event;
+        transaction.end();
+        if(!transaction.shouldCommit()) return;
+
+        transaction.schema = schema;
+        transaction.propagation = propagation.name();
+        transaction.nested = nested;
+        transaction.succeeded = succeeded;
+        transaction.commit();
+    }
+
+    @Name("com.sultanofcardio.hoverdb.Statement")
+    @Label("Statement")
+    @Category({"hoverdb"})
+    @Description("A statement run by a Database, from leasing a connection until its result is closed")
+    static final class StatementEvent extends Event {
+        @Label("Fingerprint")
+        @Description("The SQL of the statement with its literals replaced by placeholders")
+        String fingerprint;
+
+        @Label("Statement Type")
+        String statementType;
+
+        @Label("Connection Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long connectionWait;
+
+        @Label("Rows")
+        @Description("The number of rows returned or modified")
+        long rows;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("com.sultanofcardio.hoverdb.ConnectionLease")
+    @Label("Connection Lease")
+    @Category({"hoverdb"})
+    @Description("Leasing a connection from the pool of a Database, including waiting for one to be returned")
+    static final class ConnectionLeaseEvent extends Event {
+        @Label("Schema")
+        String schema;
+
+        @Label("Pool Size")
+        int poolSize;
+
+        @Label("Idle Connections")
+        int idle;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("com.sultanofcardio.hoverdb.Connect")
+    @Label("Connect")
+    @Category({"hoverdb"})
+    @Description("Opening a new physical connection for the pool of a Database")
+    static final class ConnectEvent extends Event {
+        @Label("Schema")
+        String schema;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("com.sultanofcardio.hoverdb.Transaction")
+    @Label("Transaction")
+    @Category({"hoverdb"})
+    @Description("A transaction run through the transaction helper, including retries")
+    static final class TransactionEvent extends Event {
+        @Label("Schema")
+        String schema;
+
+        @Label("Propagation")
+        String propagation;
+
+        @Label("Nested")
+        @Description("Whether the transaction ran inside another one")
+        boolean nested;
+
+        @Label("Succeeded")
+        @Description("Whether the work of the transaction finished without an error")
+        boolean succeeded;
+    }
+}
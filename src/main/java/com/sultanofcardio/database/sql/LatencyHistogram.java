@@ -0,0 +1,151 @@
+package com.sultanofcardio.database.sql;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds. <br><br>
+ *
+ * Every power of two is split into 8 linear buckets, so a recorded latency is off by at most 12.5% when read back,
+ * while the whole histogram takes a fixed 336 counters. Latencies of over about 4.8 hours are counted in the last
+ * bucket. Recording a latency only increments atomic counters, so it never blocks
+ *
+ * @author sultanofcardio
+ */
+@SuppressWarnings("WeakerAccess")
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_BITS = 44;
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+    private static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record a latency
+     * @param nanos The latency in nanoseconds. Negative latencies are counted as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(Math.min(value, MAX_VALUE)));
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Take a copy of the recorded latencies. Latencies recorded while the copy is being taken may be left out
+     * @return the copy
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+
+        return new Snapshot(copy, count, total.sum(), max.get());
+    }
+
+    /**
+     * Remove every recorded latency
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++){
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.reset();
+    }
+
+    private static int indexOf(long value) {
+        if(value < SUB_BUCKETS) return (int) value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int index) {
+        if(index < SUB_BUCKETS) return index;
+
+        int shift = index / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of a {@link LatencyHistogram}
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * Get the number of latencies recorded
+         * @return the count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the sum of the latencies recorded
+         * @return total latency in nanoseconds
+         */
+        public long getTotalNanos() {
+            return total;
+        }
+
+        /**
+         * Get the highest latency recorded
+         * @return max latency in nanoseconds
+         */
+        public long getMaxNanos() {
+            return max;
+        }
+
+        /**
+         * Get the average latency
+         * @return mean latency in nanoseconds, or 0 if none were recorded
+         */
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * Get the latency that a given fraction of the recorded latencies are lower than or equal to
+         * @param percentile The fraction, between 0 and 1. For example, 0.99 for the 99th percentile
+         * @return the latency in nanoseconds, or 0 if none were recorded
+         */
+        public long getPercentile(double percentile) {
+            if(percentile < 0 || percentile > 1)
+                throw new IllegalArgumentException("percentile must be between 0 and 1");
+
+            if(count == 0) return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(percentile * count));
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++){
+                seen += counts[i];
+                if(seen >= rank) return Math.min(upperBoundOf(i), max);
+            }
+
+            return max;
+        }
+    }
+}
@@ -3,7 +3,6 @@ package com.sultanofcardio.database.sql
 import com.sultanofcardio.database.sql.types.DatabaseType
 import java.sql.Connection
 import java.sql.DriverManager
-import java.sql.SQLException
 import java.util.*
 
 /**
@@ -20,25 +19,22 @@ class MemoryDatabase internal constructor(schema: String?, type: DatabaseType?)
 
     init {
         properties = Properties()
+        // An in-memory database is dropped once its last connection closes, so never let the pool empty out
+        pool.setMinSize(1)
     }
 
     override fun copy(): Database {
         return MemoryDatabase(schema, databaseType)
     }
 
-    override fun getConnection(): Connection {
+    override fun createConnection(): Connection {
         try {
-            if (connection == null || connection.isClosed) {
-                connection = null
-                Class.forName(databaseType.driverName)
-                connection = DriverManager.getConnection(databaseType.getConnectionString(schema))
-            }
+            Class.forName(databaseType.driverName)
         } catch (e: ClassNotFoundException) {
             e.printStackTrace()
-        } catch (e: SQLException) {
-            e.printStackTrace()
+            throw RuntimeException("Unable to instantiate connection driver " + databaseType.driverName)
         }
-        return connection
+        return DriverManager.getConnection(databaseType.getConnectionString(schema))
     }
 
     companion object {
@@ -52,10 +48,7 @@ class MemoryDatabase internal constructor(schema: String?, type: DatabaseType?)
         fun connect(schema: String?, type: DatabaseType?, alias: String?): MemoryDatabase {
             require(!(schema == null || schema.isEmpty())) { "schema is required" }
             require(!(alias == null || alias.isEmpty())) { "alias is required" }
-            var database = getInstance(alias)
-            if (database == null) database = MemoryDatabase(schema, type)
-            cacheDatabase(alias, database)
-            return database
+            return cacheDatabase(alias, MemoryDatabase::class.java) { MemoryDatabase(schema, type) }
         }
 
         /**
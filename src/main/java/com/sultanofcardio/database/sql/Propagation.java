@@ -0,0 +1,25 @@
+package com.sultanofcardio.database.sql;
+
+/**
+ * How a transaction behaves when it is started inside another transaction on the same database and thread
+ *
+ * @author sultanofcardio
+ */
+public enum Propagation {
+    /**
+     * Join the outer transaction, if any. If the work fails, the outer transaction can only be rolled back
+     */
+    REQUIRED,
+
+    /**
+     * Always run in a new transaction on a separate connection, which commits or rolls back on its own. The outer
+     * transaction keeps its connection meanwhile, so the pool needs room for both
+     */
+    REQUIRES_NEW,
+
+    /**
+     * Run inside the outer transaction, if any, behind a savepoint. If the work fails, only its own changes are
+     * rolled back and the outer transaction can carry on
+     */
+    NESTED
+}
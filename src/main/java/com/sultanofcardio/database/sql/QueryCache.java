@@ -0,0 +1,266 @@
+package com.sultanofcardio.database.sql;
+
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An opt-in cache of query results, keyed by the rendered SQL of a query along with its bound parameters. <br><br>
+ *
+ * Results are read into an immutable snapshot of their rows, and every hit gets its own read-only cursor over it,
+ * so that closing or moving through one leaves the cached result as it is. The cache holds at most
+ * {@link #getMaxSize()} results, evicting the least recently used, and a result expires {@link #getTimeToLive()}
+ * milliseconds after it was cached. <br><br>
+ *
+ * Statements run through {@link Database#run(com.sultanofcardio.database.sql.statement.Statement)} invalidate
+ * every cached result for the same table name, while raw SQL run through {@link Database#run(String)} clears
+ * the whole cache, since there is no telling which tables it touched. Tables are matched by the table name given
+ * to each statement, so a query that joins several tables is only invalidated through the name it was given
+ *
+ * @author sultanofcardio
+ * @see Database#setQueryCache(QueryCache)
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue"})
+public class QueryCache {
+
+    private static volatile RowSetFactory rowSetFactory;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<BoundSql, Entry> entries = new LinkedHashMap<BoundSql, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BoundSql, Entry> eldest) {
+            if(size() <= maxSize) return false;
+
+            evictions.increment();
+            return true;
+        }
+    };
+    private long version;
+
+    private volatile int maxSize = 1000;
+    private volatile long timeToLive = 60_000;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Get a fresh cursor over the cached result of a query
+     * @param query The rendered query
+     * @return The cached result, or null if there is none
+     */
+    public ResultSet get(BoundSql query) throws SQLException {
+        CachedResult rows = null;
+        lock.lock();
+        try {
+            Entry entry = entries.get(query);
+            if(entry != null) {
+                if(entry.isExpired()) {
+                    entries.remove(query);
+                    evictions.increment();
+                } else {
+                    rows = entry.rows;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if(rows == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return rows.cursor();
+    }
+
+    /**
+     * Get the current version of this cache, which changes every time results are invalidated. Read it before
+     * running a query whose result will be passed to {@link #put(String, BoundSql, ResultSet, long)}
+     * @return the version
+     */
+    public long getVersion() {
+        lock.lock();
+        try {
+            return version;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read a query result into the cache. The result is only kept if nothing was invalidated since the query was
+     * run, otherwise it could hold rows that have since changed
+     * @param tableName The table the query reads from
+     * @param query The rendered query
+     * @param resultSet The result of the query, which is read to the end
+     * @param version The version of this cache from before the query was run
+     * @return A cursor over the result
+     * @see #getVersion()
+     */
+    public ResultSet put(String tableName, BoundSql query, ResultSet resultSet, long version) throws SQLException {
+        CachedResult rows = CachedResult.read(resultSet);
+
+        long expiresAt = timeToLive > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeToLive) : 0;
+
+        lock.lock();
+        try {
+            if(this.version == version && maxSize > 0)
+                entries.put(query, new Entry(normalize(tableName), rows, expiresAt));
+        } finally {
+            lock.unlock();
+        }
+
+        return rows.cursor();
+    }
+
+    /**
+     * Remove every cached result read from a table
+     * @param tableName The name of the table
+     */
+    public void invalidate(String tableName) {
+        String table = normalize(tableName);
+        lock.lock();
+        try {
+            version++;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()){
+                if(iterator.next().tableName.equals(table)) iterator.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove every cached result
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            version++;
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of results currently cached
+     * @return the number of results
+     */
+    public int getSize() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of queries that were answered from the cache
+     * @return cache hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of queries that had to be run against the database
+     * @return cache misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of results removed because the cache was full or they expired. Invalidated results are not
+     * counted
+     * @return cache evictions
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the fraction of queries that were answered from the cache
+     * @return hit ratio between 0 and 1, or 0 if no queries have been run
+     */
+    public double getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the maximum number of results kept in the cache
+     * @param maxSize maximum number of results, or 0 to cache nothing
+     * @return this cache
+     */
+    public QueryCache setMaxSize(int maxSize) {
+        if(maxSize < 0)
+            throw new IllegalArgumentException("maxSize must not be negative");
+
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Set how long a result is kept after it is cached
+     * @param timeToLive time to live in milliseconds, or 0 to keep results until they are evicted or invalidated
+     * @return this cache
+     */
+    public QueryCache setTimeToLive(long timeToLive) {
+        if(timeToLive < 0)
+            throw new IllegalArgumentException("timeToLive must not be negative");
+
+        this.timeToLive = timeToLive;
+        return this;
+    }
+
+    private static String normalize(String tableName) {
+        return tableName == null ? "" : tableName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    static RowSetFactory getRowSetFactory() throws SQLException {
+        RowSetFactory factory = rowSetFactory;
+        if(factory == null) rowSetFactory = factory = RowSetProvider.newFactory();
+        return factory;
+    }
+
+    /**
+     * A cached result
+     */
+    private static class Entry {
+        private final String tableName;
+        private final CachedResult rows;
+        private final long expiresAt;
+
+        Entry(String tableName, CachedResult rows, long expiresAt) {
+            this.tableName = tableName;
+            this.rows = rows;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return expiresAt != 0 && System.nanoTime() - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.sultanofcardio.database.sql;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs cleanup actions once the objects they are registered for become phantom reachable, in the manner of
+ * <code>java.lang.ref.Cleaner</code>, which is not available on Java 8. <br><br>
+ *
+ * A cleanup action must not refer to the object it is registered for, or that object will never become
+ * unreachable. Actions run on a single daemon thread, at most once, either when {@link Cleanable#clean()} is
+ * called or after the object has been garbage collected
+ *
+ * @author sultanofcardio
+ */
+final class ResourceCleaner {
+
+    private static final Logger logger = Logger.getLogger(ResourceCleaner.class.getName());
+    private static final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    private static final Set<CleanableReference> references = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    static {
+        Thread thread = new Thread(ResourceCleaner::drain, "hoverdb-cleaner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private ResourceCleaner() {
+    }
+
+    /**
+     * A registered cleanup action
+     */
+    interface Cleanable {
+        /**
+         * Run the cleanup action now, if it has not already run
+         */
+        void clean();
+    }
+
+    /**
+     * Register a cleanup action to run once an object becomes phantom reachable
+     * @param referent The object to watch
+     * @param action The cleanup action, which must not refer to the object
+     * @return A handle that runs the action early
+     */
+    static Cleanable register(Object referent, Runnable action) {
+        CleanableReference reference = new CleanableReference(referent, action);
+        references.add(reference);
+        return reference;
+    }
+
+    private static void drain() {
+        while (true) {
+            try {
+                ((CleanableReference) queue.remove()).clean();
+            } catch (InterruptedException ignored) {
+                // Only a daemon thread, keep draining until the JVM exits
+            } catch (Throwable t) {
+                logger.log(Level.WARNING, "Cleanup action threw an exception", t);
+            }
+        }
+    }
+
+    private static final class CleanableReference extends PhantomReference<Object> implements Cleanable {
+        private final Runnable action;
+        private final AtomicBoolean cleaned = new AtomicBoolean();
+
+        CleanableReference(Object referent, Runnable action) {
+            super(referent, queue);
+            this.action = action;
+        }
+
+        @Override
+        public void clean() {
+            if(cleaned.compareAndSet(false, true)) {
+                references.remove(this);
+                clear();
+                action.run();
+            }
+        }
+    }
+}
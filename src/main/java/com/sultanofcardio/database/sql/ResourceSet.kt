@@ -1,11 +1,21 @@
 package com.sultanofcardio.database.sql
 
+import java.sql.Connection
 import java.sql.ResultSet
 import java.sql.Statement
 
-data class ResourceSet(val resultSet: ResultSet?, val statement: Statement?): AutoCloseable {
+/**
+ * Holder for the resources of an executed query. Closing it closes the result set and statement, and returns the
+ * leased connection, if any, to its pool
+ */
+data class ResourceSet @JvmOverloads constructor(val resultSet: ResultSet?, val statement: Statement?,
+                                                 val connection: Connection? = null): AutoCloseable {
     override fun close(){
-        resultSet?.close()
-        statement?.close()
+        try {
+            resultSet?.close()
+            statement?.close()
+        } finally {
+            connection?.close()
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,236 @@
+package com.sultanofcardio.database.sql;
+
+import com.sultanofcardio.database.sql.types.DatabaseType;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Retries work that failed because the database gave up on it to resolve a conflict with other work, such as a
+ * deadlock or a serialization failure. Which errors are worth retrying is decided by
+ * {@link DatabaseType#isRetryable(SQLException)}, so that each dialect can recognize its own error codes. <br><br>
+ *
+ * Work is attempted at most {@link #getMaxAttempts()} times. Before each retry the current thread sleeps for an
+ * exponentially growing backoff, starting at {@link #getInitialBackoff()} milliseconds and multiplied by
+ * {@link #getMultiplier()} after every attempt, up to {@link #getMaxBackoff()} milliseconds. A random jitter of up
+ * to half the backoff is taken off each sleep, so that the work that conflicted does not collide again. <br><br>
+ *
+ * A policy set on a {@link Database} retries single statements run outside a transaction, and whole transactions
+ * started through <code>transaction {}</code>. Statements run inside a transaction are never retried on their
+ * own, since the failure rolls back everything the transaction did before them
+ *
+ * @author sultanofcardio
+ * @see Database#setRetryPolicy(RetryPolicy)
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue"})
+public class RetryPolicy {
+
+    private volatile int maxAttempts = 3;
+    private volatile long initialBackoff = 50;
+    private volatile long maxBackoff = 2_000;
+    private volatile double multiplier = 2;
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder recoveries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * Run work, retrying it as long as it fails with an error that is retryable for a database type
+     * @param type The type of the database the work runs on
+     * @param work The work to run. It is run again from scratch on every attempt
+     * @param <T> The result of the work
+     * @return The result of the first attempt that succeeds
+     * @throws SQLException The error of the last attempt, if none succeed
+     */
+    public <T> T execute(DatabaseType type, Work<T> work) throws SQLException {
+        for(int attempt = 1; ; attempt++) {
+            try {
+                T result = work.run();
+                succeeded(attempt);
+                return result;
+            } catch (SQLException e) {
+                if(!shouldRetry(type, e, attempt) || !backoff(attempt)) throw e;
+            }
+        }
+    }
+
+    /**
+     * Decide whether work that failed should be attempted again, and count the retry if so
+     * @param type The type of the database the work runs on
+     * @param error The error the work failed with
+     * @param attempt The number of the attempt that failed, starting at 1
+     * @return true if the error is retryable and attempts remain
+     */
+    public boolean shouldRetry(DatabaseType type, Throwable error, int attempt) {
+        if(!isRetryable(type, error)) return false;
+
+        if(attempt >= maxAttempts) {
+            exhausted.increment();
+            return false;
+        }
+
+        retries.increment();
+        return true;
+    }
+
+    /**
+     * Record that work succeeded, counting it as recovered if it took more than one attempt
+     * @param attempt The number of the attempt that succeeded, starting at 1
+     */
+    public void succeeded(int attempt) {
+        if(attempt > 1) recoveries.increment();
+    }
+
+    /**
+     * Sleep before the next attempt
+     * @param attempt The number of the attempt that failed, starting at 1
+     * @return false if the thread was interrupted while sleeping, in which case no more attempts should be made
+     */
+    public boolean backoff(int attempt) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(getBackoff(attempt));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Get how long to sleep before the next attempt, including jitter
+     * @param attempt The number of the attempt that failed, starting at 1
+     * @return backoff in milliseconds
+     */
+    public long getBackoff(int attempt) {
+        double backoff = initialBackoff * Math.pow(multiplier, attempt - 1);
+        long capped = (long) Math.min(backoff, maxBackoff);
+        if(capped <= 1) return capped;
+
+        return capped - ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+    }
+
+    /**
+     * Check whether an error, or any error chained to it, is retryable for a database type
+     * @param type The type of the database
+     * @param error The error
+     * @return true if the error is retryable
+     */
+    public static boolean isRetryable(DatabaseType type, Throwable error) {
+        for(int depth = 0; error != null && depth < 16; depth++) {
+            if(error instanceof SQLException) {
+                SQLException sqlError = (SQLException) error;
+                if(type.isRetryable(sqlError)) return true;
+
+                SQLException next = sqlError.getNextException();
+                if(next != null && next != error && isRetryable(type, next)) return true;
+            }
+
+            if(error.getCause() == error) break;
+            error = error.getCause();
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the number of times work was retried
+     * @return retries
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Get the number of times work succeeded after being retried
+     * @return recoveries
+     */
+    public long getRecoveries() {
+        return recoveries.sum();
+    }
+
+    /**
+     * Get the number of times work failed with a retryable error after running out of attempts
+     * @return exhausted retries
+     */
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Set how many times work is attempted in total
+     * @param maxAttempts attempts, including the first one
+     * @return this policy
+     */
+    public RetryPolicy setMaxAttempts(int maxAttempts) {
+        if(maxAttempts < 1)
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    /**
+     * Set how long to sleep before the first retry
+     * @param initialBackoff backoff in milliseconds
+     * @return this policy
+     */
+    public RetryPolicy setInitialBackoff(long initialBackoff) {
+        if(initialBackoff < 0)
+            throw new IllegalArgumentException("initialBackoff must not be negative");
+
+        this.initialBackoff = initialBackoff;
+        return this;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * Set the longest sleep between two attempts
+     * @param maxBackoff backoff in milliseconds
+     * @return this policy
+     */
+    public RetryPolicy setMaxBackoff(long maxBackoff) {
+        if(maxBackoff < 0)
+            throw new IllegalArgumentException("maxBackoff must not be negative");
+
+        this.maxBackoff = maxBackoff;
+        return this;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * Set how much the backoff grows after every attempt
+     * @param multiplier backoff multiplier
+     * @return this policy
+     */
+    public RetryPolicy setMultiplier(double multiplier) {
+        if(multiplier < 1)
+            throw new IllegalArgumentException("multiplier must be at least 1");
+
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * Work that can be retried
+     * @param <T> The result of the work
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T run() throws SQLException;
+    }
+}
@@ -0,0 +1,12 @@
+package com.sultanofcardio.database.sql;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set to an object
+ * @param <R> The type of object each row is mapped to
+ */
+public interface RowMapper<R> {
+    R map(ResultSet resultSet) throws SQLException;
+}
@@ -0,0 +1,125 @@
+package com.sultanofcardio.database.sql;
+
+import com.sultanofcardio.database.sql.statement.Statement;
+
+import java.util.List;
+
+/**
+ * An entry of the {@link SlowQueryLog}: a statement that took longer than the threshold of the log, along with
+ * where its time went
+ *
+ * @author sultanofcardio
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SlowQuery {
+    private final long timestamp;
+    private final Statement.Type type;
+    private final String sql;
+    private final List<?> parameters;
+    private final long totalNanos;
+    private final long prepareNanos;
+    private final long executeNanos;
+    private final long fetchNanos;
+    private final long rows;
+    private final boolean failed;
+    private final String threadName;
+
+    SlowQuery(long timestamp, Statement.Type type, String sql, List<?> parameters, long totalNanos,
+              long prepareNanos, long executeNanos, long fetchNanos, long rows, boolean failed, String threadName) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.sql = sql;
+        this.parameters = parameters;
+        this.totalNanos = totalNanos;
+        this.prepareNanos = prepareNanos;
+        this.executeNanos = executeNanos;
+        this.fetchNanos = fetchNanos;
+        this.rows = rows;
+        this.failed = failed;
+        this.threadName = threadName;
+    }
+
+    /**
+     * Get when the statement finished
+     * @return time in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get the type of the statement
+     * @return the statement type, or null if it could not be told
+     */
+    public Statement.Type getType() {
+        return type;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Get the values that were bound to the placeholders of the statement
+     * @return the bind parameters, in order
+     */
+    public List<?> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Get the time from leasing a connection until the result of the statement was closed, including the time
+     * spent handling its rows
+     * @return total time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getPrepareNanos() {
+        return prepareNanos;
+    }
+
+    public long getExecuteNanos() {
+        return executeNanos;
+    }
+
+    /**
+     * Get the time spent fetching rows from the result of a query
+     * @return fetch time in nanoseconds
+     */
+    public long getFetchNanos() {
+        return fetchNanos;
+    }
+
+    /**
+     * Get the number of rows returned by a query, or modified by any other statement
+     * @return the row count
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Check whether the statement failed
+     * @return true if it failed
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Get the name of the thread that ran the statement
+     * @return the thread name
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s query took %.3fms (prepare %.3fms, execute %.3fms, fetch %.3fms) for %d rows " +
+                        "on thread %s: %s %s", failed ? "Failed" : "Slow", totalNanos / 1e6, prepareNanos / 1e6,
+                executeNanos / 1e6, fetchNanos / 1e6, rows, threadName, sql, parameters);
+    }
+}
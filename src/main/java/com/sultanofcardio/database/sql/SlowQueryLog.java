@@ -0,0 +1,165 @@
+package com.sultanofcardio.database.sql;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An opt-in log of statements that take longer than {@link #getThreshold()} milliseconds, measured from leasing a
+ * connection until the result of the statement is closed. Each {@link SlowQuery} carries the SQL and bind
+ * parameters of the statement, the time spent preparing, executing and fetching it, its row count and the thread
+ * that ran it. <br><br>
+ *
+ * Entries are handed to the handler of the log on a background thread, so logging never blocks the statements
+ * being run. If entries come in faster than the handler can take them, entries beyond {@link #getCapacity()} are
+ * dropped and counted in {@link #getDropped()}. By default, entries are logged as warnings through
+ * {@link java.util.logging}
+ *
+ * @author sultanofcardio
+ * @see Database#setSlowQueryLog(SlowQueryLog)
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue"})
+public class SlowQueryLog implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(SlowQueryLog.class.getName());
+
+    private final BlockingQueue<SlowQuery> queue;
+    private final int capacity;
+    private final LongAdder logged = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long thresholdNanos = TimeUnit.SECONDS.toNanos(1);
+    private volatile Consumer<SlowQuery> handler = entry -> logger.warning(entry.toString());
+    private volatile Thread worker;
+    private volatile boolean closed;
+
+    /**
+     * Create a slow query log that holds at most 1024 entries waiting to be handled
+     */
+    public SlowQueryLog() {
+        this(1024);
+    }
+
+    /**
+     * Create a slow query log
+     * @param capacity The maximum number of entries waiting to be handled
+     */
+    public SlowQueryLog(int capacity) {
+        if(capacity < 1)
+            throw new IllegalArgumentException("capacity must be at least 1");
+
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Check whether a statement took long enough to be logged
+     * @param nanos The time the statement took
+     * @return true if it should be logged
+     */
+    boolean isSlow(long nanos) {
+        return nanos >= thresholdNanos;
+    }
+
+    /**
+     * Queue an entry to be handled on the background thread of this log, without waiting
+     * @param entry The entry
+     */
+    void log(SlowQuery entry) {
+        if(closed || !queue.offer(entry)) {
+            dropped.increment();
+            return;
+        }
+
+        logged.increment();
+        if(worker == null) start();
+    }
+
+    private synchronized void start() {
+        if(worker != null) return;
+
+        Thread thread = new Thread(this::drain, "hoverdb-slow-query-log");
+        thread.setDaemon(true);
+        thread.start();
+        worker = thread;
+    }
+
+    private void drain() {
+        while (!closed || !queue.isEmpty()) {
+            try {
+                SlowQuery entry = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(entry != null) handler.accept(entry);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable t) {
+                logger.log(Level.WARNING, "Slow query handler threw an exception", t);
+            }
+        }
+    }
+
+    /**
+     * Stop logging. Entries already queued are still handled
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Get the number of entries queued to be handled
+     * @return logged entries
+     */
+    public long getLogged() {
+        return logged.sum();
+    }
+
+    /**
+     * Get the number of entries dropped because the queue was full or the log was closed
+     * @return dropped entries
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get how long a statement has to take to be logged
+     * @return threshold in milliseconds
+     */
+    public long getThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /**
+     * Set how long a statement has to take to be logged
+     * @param threshold threshold in milliseconds, or 0 to log every statement
+     * @return this log
+     */
+    public SlowQueryLog setThreshold(long threshold) {
+        if(threshold < 0)
+            throw new IllegalArgumentException("threshold must not be negative");
+
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(threshold);
+        return this;
+    }
+
+    /**
+     * Set what to do with each entry. The handler is called on the background thread of this log, one entry at a
+     * time
+     * @param handler the entry handler
+     * @return this log
+     */
+    public SlowQueryLog setHandler(Consumer<SlowQuery> handler) {
+        if(handler == null)
+            throw new IllegalArgumentException("handler is required");
+
+        this.handler = handler;
+        return this;
+    }
+}
@@ -0,0 +1,42 @@
+package com.sultanofcardio.database.sql;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps the statements run by a {@link Database}. Interceptors registered with
+ * {@link Database#addInterceptor(StatementInterceptor)} form a chain around every query executed and every
+ * statement run, in the order they were added. Each interceptor decides whether and how to continue the chain by
+ * calling {@link StatementInvocation#proceed()}, so it can time, trace or sample statements, rewrite their SQL and
+ * parameters, or answer them without reaching the database at all. <br><br>
+ *
+ * Interceptors run once per call, outside of any {@link RetryPolicy}, and before the statement leases a connection.
+ * Queries answered from the {@link QueryCache} go through the chain too, and the cache is only consulted once it
+ * proceeds. {@link Database#runBatch} sends each batch through the chain on the connection it already leased: a
+ * multi-row batch as an {@link StatementInvocation.Kind#UPDATE}, and a JDBC batch as a
+ * {@link StatementInvocation.Kind#BATCH} with a list of values for every row
+ *
+ * <pre>{@code
+ * database.addInterceptor(new StatementInterceptor() {
+ *     public <R> R intercept(StatementInvocation<R> invocation) throws SQLException {
+ *         try {
+ *             return invocation.proceed();
+ *         } finally {
+ *             tracer.record(invocation.getSql(), invocation.getElapsedNanos());
+ *         }
+ *     }
+ * });
+ * }</pre>
+ *
+ * @author sultanofcardio
+ */
+public interface StatementInterceptor {
+
+    /**
+     * Intercept a statement
+     * @param invocation The statement being run. Call {@link StatementInvocation#proceed()} to continue the chain
+     * @param <R> The result of the statement: a {@link ResourceSet} for queries, or the number of rows affected
+     *           for other statements and batches
+     * @return The result of the statement
+     */
+    <R> R intercept(StatementInvocation<R> invocation) throws SQLException;
+}
@@ -0,0 +1,165 @@
+package com.sultanofcardio.database.sql;
+
+import com.sultanofcardio.database.sql.statement.Statement;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * A statement making its way through the {@link StatementInterceptor} chain of a {@link Database}
+ *
+ * @param <R> The result of the statement: a {@link ResourceSet} for queries, or the number of rows affected for
+ *           other statements and batches
+ * @author sultanofcardio
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue"})
+public final class StatementInvocation<R> {
+
+    /**
+     * What a statement returns
+     */
+    public enum Kind {
+        /**
+         * A query that returns a {@link ResourceSet}
+         */
+        QUERY,
+
+        /**
+         * A statement that returns the number of rows it affected
+         */
+        UPDATE,
+
+        /**
+         * A JDBC batch sent by {@link Database#runBatch}, which returns the number of rows it affected. Its
+         * parameters hold a list of values for every row
+         */
+        BATCH
+    }
+
+    private final Database database;
+    private final Statement<?> statement;
+    private final Kind kind;
+    private final StatementInterceptor[] interceptors;
+    private final Target<R> target;
+    private final long startNanos = System.nanoTime();
+    private String sql;
+    private List<?> parameters;
+    private int index;
+
+    StatementInvocation(Database database, Statement<?> statement, Kind kind, String sql, List<?> parameters,
+                        StatementInterceptor[] interceptors, Target<R> target) {
+        this.database = database;
+        this.statement = statement;
+        this.kind = kind;
+        this.sql = sql;
+        this.parameters = parameters;
+        this.interceptors = interceptors;
+        this.target = target;
+    }
+
+    /**
+     * Continue the chain, calling the next interceptor, or running the statement once every interceptor has been
+     * called. It may be called more than once, for example to run a statement again
+     * @return The result of the statement
+     */
+    public R proceed() throws SQLException {
+        if(index == interceptors.length)
+            return target.run(sql, parameters);
+
+        StatementInterceptor next = interceptors[index++];
+        try {
+            return next.intercept(this);
+        } finally {
+            index--;
+        }
+    }
+
+    /**
+     * Get the database the statement runs on. Inside a transaction, this is a view of the database bound to the
+     * connection of the transaction
+     * @return the database
+     */
+    public Database getDatabase() {
+        return database;
+    }
+
+    /**
+     * Get the statement object the SQL was rendered from
+     * @return the statement, or null for raw SQL
+     */
+    public Statement<?> getStatement() {
+        return statement;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Replace the SQL that will be run once the chain proceeds
+     * @param sql Valid SQL code with <code>?</code> placeholders
+     * @return this invocation
+     */
+    public StatementInvocation<R> setSql(String sql) {
+        if(sql == null || sql.isEmpty())
+            throw new IllegalArgumentException("sql is required");
+
+        this.sql = sql;
+        return this;
+    }
+
+    /**
+     * Get the values that will be bound to the placeholders of the SQL
+     * @return the bind parameters, in order, or a list of them for every row of a {@link Kind#BATCH}
+     */
+    public List<?> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Replace the values that will be bound to the placeholders of the SQL once the chain proceeds
+     * @param parameters the bind parameters, in order, or a list of them for every row of a {@link Kind#BATCH}
+     * @return this invocation
+     */
+    public StatementInvocation<R> setParameters(List<?> parameters) {
+        if(parameters == null)
+            throw new IllegalArgumentException("parameters are required");
+
+        this.parameters = parameters;
+        return this;
+    }
+
+    /**
+     * Get when the statement entered the interceptor chain
+     * @return a {@link System#nanoTime()} timestamp
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Get the time since the statement entered the interceptor chain. Once {@link #proceed()} has returned, this
+     * covers running the statement, but not reading the rows of a query
+     * @return elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    @Override
+    public String toString() {
+        return sql;
+    }
+
+    /**
+     * Runs the statement at the end of the chain
+     */
+    @FunctionalInterface
+    interface Target<R> {
+        R run(String sql, List<?> parameters) throws SQLException;
+    }
+}
@@ -0,0 +1,259 @@
+package com.sultanofcardio.database.sql;
+
+import com.sultanofcardio.database.sql.statement.Statement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Opt-in latency histograms and row counters for the statements run by a {@link Database}, kept per statement
+ * fingerprint and per {@link Statement.Type}. <br><br>
+ *
+ * A fingerprint is the SQL of a statement with its literals replaced by <code>?</code>, lists of placeholders
+ * collapsed and whitespace normalized, so that statements that only differ by their values are counted together.
+ * Statements built with the query builders already bind their values as parameters, so they each have a single
+ * fingerprint. At most {@link #getMaxStatements()} fingerprints are tracked; statements beyond that are counted
+ * under {@link #OTHER}. <br><br>
+ *
+ * Recording only updates lock-free counters, and snapshots can be taken at any time without stopping the
+ * statements being recorded
+ *
+ * @author sultanofcardio
+ * @see Database#setMetrics(StatementMetrics)
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue"})
+public class StatementMetrics {
+
+    /**
+     * The fingerprint statements are counted under once {@link #getMaxStatements()} is reached
+     */
+    public static final String OTHER = "<other>";
+
+    private static final int MAX_CACHED_FINGERPRINTS = 10_000;
+    private static final ConcurrentMap<String, String> fingerprints = new ConcurrentHashMap<>();
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+    private final ConcurrentMap<String, StatementStats> statements = new ConcurrentHashMap<>();
+    private final Map<Statement.Type, StatementStats> types = new EnumMap<>(Statement.Type.class);
+    private volatile int maxStatements = 1000;
+
+    public StatementMetrics() {
+        for(Statement.Type type: Statement.Type.values()){
+            types.put(type, new StatementStats(type.name(), type));
+        }
+    }
+
+    /**
+     * Record an execution of a statement
+     * @param type The type of the statement, or null if it could not be told
+     * @param sql The SQL that was run
+     * @param nanos The time spent preparing and executing the statement and fetching its rows
+     * @param rowsReturned The number of rows fetched
+     * @param rowsAffected The number of rows modified
+     * @param failed Whether the execution failed
+     */
+    public void record(Statement.Type type, String sql, long nanos, long rowsReturned, long rowsAffected,
+                       boolean failed) {
+        getStats(fingerprint(sql), type).record(nanos, rowsReturned, rowsAffected, failed);
+        if(type != null) types.get(type).record(nanos, rowsReturned, rowsAffected, failed);
+    }
+
+    private StatementStats getStats(String fingerprint, Statement.Type type) {
+        StatementStats stats = statements.get(fingerprint);
+        if(stats != null) return stats;
+
+        if(statements.size() >= maxStatements)
+            return statements.computeIfAbsent(OTHER, name -> new StatementStats(name, null));
+
+        return statements.computeIfAbsent(fingerprint, name -> new StatementStats(name, type));
+    }
+
+    /**
+     * Get the stats of every statement fingerprint, starting with those that took the most time in total
+     * @return the stats of each fingerprint
+     */
+    public List<StatementStats.Snapshot> getStatements() {
+        List<StatementStats.Snapshot> snapshots = new ArrayList<>();
+        for(StatementStats stats: statements.values()){
+            snapshots.add(stats.snapshot());
+        }
+
+        snapshots.sort(Comparator.comparingLong(
+                (StatementStats.Snapshot snapshot) -> snapshot.getLatency().getTotalNanos()).reversed());
+        return snapshots;
+    }
+
+    /**
+     * Get the stats of a statement
+     * @param sql The SQL of the statement, or its fingerprint
+     * @return the stats, or null if the statement has not been run
+     */
+    public StatementStats.Snapshot getStatement(String sql) {
+        StatementStats stats = statements.get(fingerprint(sql));
+        return stats == null ? null : stats.snapshot();
+    }
+
+    /**
+     * Get the stats of every statement type
+     * @return the stats of each type
+     */
+    public Map<Statement.Type, StatementStats.Snapshot> getTypes() {
+        Map<Statement.Type, StatementStats.Snapshot> snapshots = new EnumMap<>(Statement.Type.class);
+        for(Map.Entry<Statement.Type, StatementStats> entry: types.entrySet()){
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * Get the stats of a statement type
+     * @param type The statement type
+     * @return the stats
+     */
+    public StatementStats.Snapshot getType(Statement.Type type) {
+        return types.get(type).snapshot();
+    }
+
+    /**
+     * Remove every recorded execution
+     */
+    public void reset() {
+        statements.clear();
+        for(StatementStats stats: types.values()){
+            stats.reset();
+        }
+    }
+
+    public int getMaxStatements() {
+        return maxStatements;
+    }
+
+    /**
+     * Set how many statement fingerprints are tracked separately
+     * @param maxStatements the number of fingerprints
+     * @return these metrics
+     */
+    public StatementMetrics setMaxStatements(int maxStatements) {
+        if(maxStatements < 1)
+            throw new IllegalArgumentException("maxStatements must be at least 1");
+
+        this.maxStatements = maxStatements;
+        return this;
+    }
+
+    /**
+     * Get the fingerprint of a statement, which is its SQL with string and numeric literals replaced by
+     * <code>?</code>, parenthesized lists of placeholders collapsed to <code>(?)</code> and runs of whitespace
+     * replaced by a single space
+     * @param sql Valid SQL code
+     * @return the fingerprint
+     */
+    public static String fingerprint(String sql) {
+        String fingerprint = fingerprints.get(sql);
+        if(fingerprint != null) return fingerprint;
+
+        fingerprint = normalize(sql);
+        if(fingerprints.size() < MAX_CACHED_FINGERPRINTS) fingerprints.putIfAbsent(sql, fingerprint);
+        return fingerprint;
+    }
+
+    private static String normalize(String sql) {
+        StringBuilder result = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        while (i < length){
+            char c = sql.charAt(i);
+            if(c == '\'') {
+                // Skip to the closing quote, stepping over escaped quotes
+                i++;
+                while (i < length) {
+                    if(sql.charAt(i) == '\'') {
+                        if(i + 1 < length && sql.charAt(i + 1) == '\'') i++;
+                        else break;
+                    }
+                    i++;
+                }
+                result.append('?');
+                i++;
+            } else if(c == '"' || c == '`') {
+                int end = sql.indexOf(c, i + 1);
+                end = end < 0 ? length : end + 1;
+                result.append(sql, i, end);
+                i = end;
+            } else if(Character.isDigit(c) && !isIdentifierPart(result)) {
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+                result.append('?');
+            } else if(Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(sql.charAt(i))) i++;
+                if(result.length() > 0 && i < length) result.append(' ');
+            } else {
+                result.append(c);
+                i++;
+            }
+        }
+
+        return PLACEHOLDER_LIST.matcher(result).replaceAll("(?)");
+    }
+
+    private static boolean isIdentifierPart(StringBuilder result) {
+        if(result.length() == 0) return false;
+
+        char previous = result.charAt(result.length() - 1);
+        return Character.isLetterOrDigit(previous) || previous == '_' || previous == '$';
+    }
+
+    /**
+     * Tell the type of a raw SQL statement from its first keyword
+     * @param sql Valid SQL code
+     * @return the statement type, or null if it could not be told
+     */
+    public static Statement.Type typeOf(String sql) {
+        int start = 0;
+        while (start < sql.length() && (Character.isWhitespace(sql.charAt(start)) || sql.charAt(start) == '(')) {
+            start++;
+        }
+
+        int end = start;
+        while (end < sql.length() && Character.isLetter(sql.charAt(end))) end++;
+
+        switch (sql.substring(start, end).toUpperCase(Locale.ROOT)) {
+            case "SELECT":
+            case "WITH":
+            case "INSERT":
+            case "UPDATE":
+            case "DELETE":
+            case "MERGE":
+            case "UPSERT":
+            case "REPLACE":
+                return Statement.Type.DML;
+            case "CREATE":
+            case "ALTER":
+            case "DROP":
+            case "TRUNCATE":
+            case "RENAME":
+            case "COMMENT":
+                return Statement.Type.DDL;
+            case "GRANT":
+            case "REVOKE":
+                return Statement.Type.DCL;
+            case "COMMIT":
+            case "ROLLBACK":
+            case "SAVEPOINT":
+            case "BEGIN":
+            case "START":
+            case "RELEASE":
+                return Statement.Type.TCS;
+            default:
+                return null;
+        }
+    }
+}
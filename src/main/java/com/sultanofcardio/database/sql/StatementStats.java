@@ -0,0 +1,124 @@
+package com.sultanofcardio.database.sql;
+
+import com.sultanofcardio.database.sql.statement.Statement;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latencies and row counts of the executions of a statement, or of every statement of a
+ * {@link Statement.Type}. Latencies cover preparing and executing a statement and fetching its rows, but not the
+ * time spent waiting for a connection or handling the rows
+ *
+ * @author sultanofcardio
+ * @see StatementMetrics
+ */
+@SuppressWarnings("WeakerAccess")
+public class StatementStats {
+    private final String name;
+    private final Statement.Type type;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rowsReturned = new LongAdder();
+    private final LongAdder rowsAffected = new LongAdder();
+
+    StatementStats(String name, Statement.Type type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    void record(long nanos, long rowsReturned, long rowsAffected, boolean failed) {
+        latency.record(nanos);
+        if(failed) errors.increment();
+        if(rowsReturned > 0) this.rowsReturned.add(rowsReturned);
+        if(rowsAffected > 0) this.rowsAffected.add(rowsAffected);
+    }
+
+    void reset() {
+        latency.reset();
+        errors.reset();
+        rowsReturned.reset();
+        rowsAffected.reset();
+    }
+
+    /**
+     * Take a copy of these stats
+     * @return the copy
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(name, type, latency.snapshot(), errors.sum(), rowsReturned.sum(), rowsAffected.sum());
+    }
+
+    /**
+     * An immutable copy of {@link StatementStats}
+     */
+    public static final class Snapshot {
+        private final String name;
+        private final Statement.Type type;
+        private final LatencyHistogram.Snapshot latency;
+        private final long errors;
+        private final long rowsReturned;
+        private final long rowsAffected;
+
+        private Snapshot(String name, Statement.Type type, LatencyHistogram.Snapshot latency, long errors,
+                         long rowsReturned, long rowsAffected) {
+            this.name = name;
+            this.type = type;
+            this.latency = latency;
+            this.errors = errors;
+            this.rowsReturned = rowsReturned;
+            this.rowsAffected = rowsAffected;
+        }
+
+        /**
+         * Get the fingerprint of the statement, or the name of the statement type
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the type of the statement
+         * @return the statement type, or null if it could not be told
+         */
+        public Statement.Type getType() {
+            return type;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        /**
+         * Get the number of times the statement was executed, including failures
+         * @return executions
+         */
+        public long getCount() {
+            return latency.getCount();
+        }
+
+        /**
+         * Get the number of executions that failed
+         * @return errors
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getRowsReturned() {
+            return rowsReturned;
+        }
+
+        public long getRowsAffected() {
+            return rowsAffected;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s{count=%d, errors=%d, total=%.3fms, mean=%.3fms, p50=%.3fms, p99=%.3fms, " +
+                            "max=%.3fms, rowsReturned=%d, rowsAffected=%d}", name, getCount(), errors,
+                    latency.getTotalNanos() / 1e6, latency.getMeanNanos() / 1e6, latency.getPercentile(0.5) / 1e6,
+                    latency.getPercentile(0.99) / 1e6, latency.getMaxNanos() / 1e6, rowsReturned, rowsAffected);
+        }
+    }
+}
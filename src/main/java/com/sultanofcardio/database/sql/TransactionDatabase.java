@@ -0,0 +1,215 @@
+package com.sultanofcardio.database.sql;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * A view of a {@link Database} that runs every statement on a single connection leased from its pool, so that they
+ * all take part in the same transaction. Closing the connections handed out by {@link #getConnection()} does
+ * nothing; the connection is returned to the pool when the transaction ends. <br><br>
+ *
+ * Query results are never cached inside a transaction, since they may include uncommitted changes. The tables
+ * written to are invalidated in the query cache of the database again once the transaction ends. <br><br>
+ *
+ * The transaction running on each thread is tracked per connection pool, so that transactions started inside it can
+ * join it or set a savepoint on it, according to their {@link Propagation}. For the same reason, async calls made
+ * inside a transaction run on its thread
+ *
+ * @author sultanofcardio
+ * @see Database#getPool()
+ */
+final class TransactionDatabase extends Database {
+    private static final ThreadLocal<Map<ConnectionPool, TransactionDatabase>> current =
+            ThreadLocal.withInitial(HashMap::new);
+
+    private final Database database;
+    private final Connection connection;
+    private final Connection pinned;
+    private final Set<String> writtenTables = new HashSet<>();
+    private boolean clearCache;
+    private boolean rollbackOnly;
+    private TransactionDatabase outer;
+
+    /**
+     * Start a view of a database bound to a leased connection
+     * @param database The database the transaction runs on
+     * @param connection A connection leased from the pool of the database, with auto-commit already turned off
+     */
+    TransactionDatabase(Database database, Connection connection) {
+        super(database);
+        this.database = database;
+        this.connection = connection;
+        this.pinned = (Connection) Proxy.newProxyInstance(TransactionDatabase.class.getClassLoader(),
+                new Class[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            return null;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                    }
+
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /**
+     * Get the transaction running on the current thread for a database, if any
+     * @param database The database, or a transaction on it
+     * @return The transaction, or null if there is none
+     */
+    static TransactionDatabase current(Database database) {
+        if(database instanceof TransactionDatabase) return (TransactionDatabase) database;
+        return current.get().get(database.pool);
+    }
+
+    /**
+     * Make this the transaction running on the current thread, until it ends
+     */
+    void begin() {
+        outer = current.get().put(pool, this);
+    }
+
+    /**
+     * Get the connection of this transaction. Closing it does nothing
+     * @return The connection of this transaction
+     */
+    @Override
+    public Connection getConnection() {
+        return pinned;
+    }
+
+    /**
+     * Get the database this transaction runs on
+     * @return The database
+     */
+    Database getDatabase() {
+        return database;
+    }
+
+    @Override
+    public Database copy() {
+        return database.copy();
+    }
+
+    /**
+     * The connection of a transaction is bound to the thread that started it, so async calls made inside it run
+     * right away on that thread
+     * @return an executor that runs calls on the calling thread
+     */
+    @Override
+    public Executor getAsyncExecutor() {
+        return Runnable::run;
+    }
+
+    /**
+     * Remove the results of queries on a table from the query cache of the database, and once more after the
+     * transaction ends, when its changes become visible to everyone
+     * @param tableName the name of the table, or null to clear the whole cache
+     */
+    @Override
+    protected void invalidate(String tableName) {
+        if(tableName == null) clearCache = true;
+        else writtenTables.add(tableName);
+
+        database.invalidate(tableName);
+    }
+
+    /**
+     * Restore auto-commit and invalidate the tables written to by this transaction, once it has been committed or
+     * rolled back
+     */
+    void end() {
+        Map<ConnectionPool, TransactionDatabase> transactions = current.get();
+        if(outer != null) transactions.put(pool, outer);
+        else if(transactions.remove(pool) != null && transactions.isEmpty()) current.remove();
+
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException ignored) {
+            // The pool rolls back and restores the connection when it is returned
+        }
+
+        if(clearCache) {
+            database.invalidate(null);
+        } else {
+            for(String tableName: writtenTables){
+                database.invalidate(tableName);
+            }
+        }
+    }
+
+    /**
+     * A transaction does not own its connection or pool, so it cannot be closed
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Commit the transaction
+     */
+    void commit() throws SQLException {
+        connection.commit();
+    }
+
+    /**
+     * Roll back the transaction
+     */
+    void rollback() throws SQLException {
+        connection.rollback();
+    }
+
+    /**
+     * Set a savepoint that work done from now on can be rolled back to
+     * @return The savepoint
+     */
+    Savepoint setSavepoint() throws SQLException {
+        return connection.setSavepoint();
+    }
+
+    /**
+     * Roll back the work done since a savepoint was set, keeping the rest of the transaction
+     * @param savepoint The savepoint
+     */
+    void rollback(Savepoint savepoint) throws SQLException {
+        connection.rollback(savepoint);
+    }
+
+    /**
+     * Release a savepoint that is no longer needed. Drivers that cannot release savepoints free them when the
+     * transaction ends instead
+     * @param savepoint The savepoint
+     */
+    void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        try {
+            connection.releaseSavepoint(savepoint);
+        } catch (SQLFeatureNotSupportedException ignored) {
+        }
+    }
+
+    /**
+     * Mark this transaction so that it can only be rolled back, because work that joined it has failed
+     */
+    void setRollbackOnly() {
+        rollbackOnly = true;
+    }
+
+    boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+}
@@ -0,0 +1,21 @@
+package com.sultanofcardio.database.sql;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps an {@link SQLException} thrown where checked exceptions cannot be, such as while a result stream is being
+ * consumed
+ *
+ * @author sultanofcardio
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
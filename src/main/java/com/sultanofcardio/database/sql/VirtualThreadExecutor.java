@@ -0,0 +1,133 @@
+package com.sultanofcardio.database.sql;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor that runs each task on its own virtual thread, while letting at most {@link #getMaxConcurrency()} of
+ * them run at once. Tasks beyond that wait for a permit on their virtual thread, in the order they were submitted,
+ * which costs no platform thread and never times out the way waiting for a pooled connection does. <br><br>
+ *
+ * Virtual threads need Java 21 or later. The executor is created through reflection so that this library still
+ * runs on Java 8; use {@link #isSupported()} to check for them before creating one
+ *
+ * <pre>{@code
+ * database.setAsyncExecutor(new VirtualThreadExecutor(database.getPool().getMaxSize()));
+ * }</pre>
+ *
+ * @author sultanofcardio
+ * @see Database#useVirtualThreads()
+ */
+@SuppressWarnings("WeakerAccess")
+public class VirtualThreadExecutor extends AbstractExecutorService {
+
+    private static final Method factory = factory();
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    private static Method factory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether the running JVM has virtual threads
+     * @return true if a {@link VirtualThreadExecutor} can be created
+     */
+    public static boolean isSupported() {
+        return factory != null;
+    }
+
+    /**
+     * Create an executor that runs tasks on virtual threads
+     * @param maxConcurrency The number of tasks that can run at once. To keep tasks from waiting on the connection
+     *                       pool instead, this should not be more than {@link ConnectionPool#getMaxSize()}
+     * @throws UnsupportedOperationException if the running JVM does not have virtual threads
+     */
+    public VirtualThreadExecutor(int maxConcurrency) {
+        if(maxConcurrency < 1)
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        if(factory == null)
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+
+        try {
+            this.executor = (ExecutorService) factory.invoke(null);
+        } catch (InvocationTargetException e) {
+            // Java 19 and 20 only have virtual threads as a preview feature
+            throw new UnsupportedOperationException("Virtual threads are not enabled", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("Virtual threads are not accessible", e);
+        }
+
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Get the number of tasks running right now
+     * @return at most {@link #getMaxConcurrency()}
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * Get an estimate of the number of tasks waiting for a permit to run
+     * @return the number of waiting tasks
+     */
+    public int getQueuedCount() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
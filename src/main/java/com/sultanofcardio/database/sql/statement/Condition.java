@@ -0,0 +1,436 @@
+package com.sultanofcardio.database.sql.statement;
+
+import com.sultanofcardio.database.sql.types.DatabaseType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A typed condition of a WHERE clause. Unlike raw SQL conditions, the values of a condition are bound as
+ * parameters, so statements that only differ by the values they filter on render to the same SQL and can share
+ * an execution plan. Conditions are immutable, and are combined into a tree with {@link #and(Condition)},
+ * {@link #or(Condition)} and {@link #not(Condition)}
+ *
+ * <pre>{@code
+ * database.select()
+ *         .from("orders")
+ *         .where(Condition.between("created", from, to)
+ *                 .and(Condition.in("status", "NEW", "PAID").or(Condition.isNull("status"))))
+ *         .execute();
+ * }</pre>
+ *
+ * Each node of the tree is one of the nested classes of this class, which {@link DatabaseType} renders for its
+ * dialect
+ *
+ * @author sultanofcardio
+ * @see Statement#where(Condition)
+ * @see DatabaseType#appendCondition(Condition, StringBuilder, List)
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class Condition {
+
+    Condition() {
+    }
+
+    /**
+     * A column is equal to a value, or is null if the value is null
+     */
+    public static Condition eq(String column, Object value) {
+        return new Comparison(column, Comparison.Operator.EQ, value);
+    }
+
+    /**
+     * A column is not equal to a value, or is not null if the value is null
+     */
+    public static Condition ne(String column, Object value) {
+        return new Comparison(column, Comparison.Operator.NE, value);
+    }
+
+    /**
+     * A column is greater than a value
+     */
+    public static Condition gt(String column, Object value) {
+        return new Comparison(column, Comparison.Operator.GT, value);
+    }
+
+    /**
+     * A column is greater than or equal to a value
+     */
+    public static Condition ge(String column, Object value) {
+        return new Comparison(column, Comparison.Operator.GE, value);
+    }
+
+    /**
+     * A column is less than a value
+     */
+    public static Condition lt(String column, Object value) {
+        return new Comparison(column, Comparison.Operator.LT, value);
+    }
+
+    /**
+     * A column is less than or equal to a value
+     */
+    public static Condition le(String column, Object value) {
+        return new Comparison(column, Comparison.Operator.LE, value);
+    }
+
+    /**
+     * A column is equal to one of a collection of values. An empty collection matches no rows
+     */
+    public static Condition in(String column, Collection<?> values) {
+        return new In(column, values, false);
+    }
+
+    /**
+     * A column is equal to one of a number of values. No values match no rows
+     */
+    public static Condition in(String column, Object... values) {
+        return new In(column, Arrays.asList(values), false);
+    }
+
+    /**
+     * A column is equal to one of the values returned by a subquery, which must select a single column. The values
+     * of the subquery are bound along with those of the statement it is part of
+     */
+    public static Condition in(String column, Select<?> subquery) {
+        return new InSelect(column, subquery);
+    }
+
+    /**
+     * A column is not equal to any of a collection of values. An empty collection matches every row
+     */
+    public static Condition notIn(String column, Collection<?> values) {
+        return new In(column, values, true);
+    }
+
+    /**
+     * A column is between two values, both included
+     */
+    public static Condition between(String column, Object low, Object high) {
+        return new Between(column, low, high);
+    }
+
+    /**
+     * A column matches a LIKE pattern, where <code>%</code> matches any number of characters and <code>_</code>
+     * matches a single character
+     */
+    public static Condition like(String column, String pattern) {
+        return new Like(column, pattern, false);
+    }
+
+    /**
+     * A column does not match a LIKE pattern
+     */
+    public static Condition notLike(String column, String pattern) {
+        return new Like(column, pattern, true);
+    }
+
+    /**
+     * A column is null
+     */
+    public static Condition isNull(String column) {
+        return new IsNull(column, false);
+    }
+
+    /**
+     * A column is not null
+     */
+    public static Condition isNotNull(String column) {
+        return new IsNull(column, true);
+    }
+
+    /**
+     * Every one of a number of conditions is true
+     */
+    public static Condition all(Condition... conditions) {
+        return new Junction(false, Arrays.asList(conditions));
+    }
+
+    /**
+     * At least one of a number of conditions is true
+     */
+    public static Condition any(Condition... conditions) {
+        return new Junction(true, Arrays.asList(conditions));
+    }
+
+    /**
+     * A condition is false
+     */
+    public static Condition not(Condition condition) {
+        return new Not(condition);
+    }
+
+    /**
+     * Combine this condition with another one, so that both must be true
+     * @param other The other condition
+     * @return a new condition
+     */
+    public Condition and(Condition other) {
+        return join(false, other);
+    }
+
+    /**
+     * Combine this condition with another one, so that at least one of them must be true
+     * @param other The other condition
+     * @return a new condition
+     */
+    public Condition or(Condition other) {
+        return join(true, other);
+    }
+
+    /**
+     * Join this condition with another one. Chained calls extend a single junction rather than nesting them
+     */
+    private Condition join(boolean or, Condition other) {
+        if(this instanceof Junction && ((Junction) this).or == or) {
+            List<Condition> conditions = new ArrayList<>(((Junction) this).conditions);
+            conditions.add(other);
+            return new Junction(or, conditions);
+        }
+
+        return new Junction(or, Arrays.asList(this, other));
+    }
+
+    private static String column(String column) {
+        if(column == null || column.isEmpty())
+            throw new IllegalArgumentException("column is required");
+
+        return Statement.escape(column);
+    }
+
+    /**
+     * Compares a column with a value
+     */
+    public static final class Comparison extends Condition {
+
+        public enum Operator {
+            EQ("="), NE("<>"), GT(">"), GE(">="), LT("<"), LE("<=");
+
+            private final String sql;
+
+            Operator(String sql) {
+                this.sql = sql;
+            }
+
+            public String getSql() {
+                return sql;
+            }
+        }
+
+        private final String column;
+        private final Operator operator;
+        private final Object value;
+
+        Comparison(String column, Operator operator, Object value) {
+            if(value == null && operator != Operator.EQ && operator != Operator.NE)
+                throw new IllegalArgumentException("Cannot compare " + column + " " + operator.sql + " null");
+
+            this.column = column(column);
+            this.operator = operator;
+            this.value = value;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public Operator getOperator() {
+            return operator;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Checks whether a column is equal to one of a list of values
+     */
+    public static final class In extends Condition {
+        private final String column;
+        private final List<?> values;
+        private final boolean negated;
+
+        In(String column, Collection<?> values, boolean negated) {
+            if(values == null)
+                throw new IllegalArgumentException("values are required");
+
+            this.column = column(column);
+            this.values = Collections.unmodifiableList(new ArrayList<>(values));
+            this.negated = negated;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public List<?> getValues() {
+            return values;
+        }
+
+        /**
+         * Check if this is a NOT IN condition
+         * @return whether the column must not be equal to any of the values
+         */
+        public boolean isNegated() {
+            return negated;
+        }
+    }
+
+    /**
+     * Checks whether a column is equal to one of the values returned by a subquery
+     */
+    public static final class InSelect extends Condition {
+        private final String column;
+        private final Select<?> subquery;
+
+        InSelect(String column, Select<?> subquery) {
+            if(subquery == null)
+                throw new IllegalArgumentException("subquery is required");
+
+            this.column = column(column);
+            this.subquery = subquery;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public Select<?> getSubquery() {
+            return subquery;
+        }
+    }
+
+    /**
+     * Checks whether a column is between two values, both included
+     */
+    public static final class Between extends Condition {
+        private final String column;
+        private final Object low, high;
+
+        Between(String column, Object low, Object high) {
+            if(low == null || high == null)
+                throw new IllegalArgumentException("Both bounds of " + column + " are required");
+
+            this.column = column(column);
+            this.low = low;
+            this.high = high;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public Object getLow() {
+            return low;
+        }
+
+        public Object getHigh() {
+            return high;
+        }
+    }
+
+    /**
+     * Matches a column against a LIKE pattern
+     */
+    public static final class Like extends Condition {
+        private final String column;
+        private final String pattern;
+        private final boolean negated;
+
+        Like(String column, String pattern, boolean negated) {
+            if(pattern == null)
+                throw new IllegalArgumentException("pattern is required");
+
+            this.column = column(column);
+            this.pattern = pattern;
+            this.negated = negated;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public boolean isNegated() {
+            return negated;
+        }
+    }
+
+    /**
+     * Checks whether a column is null
+     */
+    public static final class IsNull extends Condition {
+        private final String column;
+        private final boolean negated;
+
+        IsNull(String column, boolean negated) {
+            this.column = column(column);
+            this.negated = negated;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        /**
+         * Check if this is an IS NOT NULL condition
+         * @return whether the column must not be null
+         */
+        public boolean isNegated() {
+            return negated;
+        }
+    }
+
+    /**
+     * Joins a number of conditions with AND or OR
+     */
+    public static final class Junction extends Condition {
+        private final boolean or;
+        private final List<Condition> conditions;
+
+        Junction(boolean or, List<Condition> conditions) {
+            if(conditions.isEmpty() || conditions.contains(null))
+                throw new IllegalArgumentException("Must supply at least one condition, and no null conditions");
+
+            this.or = or;
+            this.conditions = Collections.unmodifiableList(new ArrayList<>(conditions));
+        }
+
+        /**
+         * Check whether the conditions are joined by OR
+         * @return true for OR, false for AND
+         */
+        public boolean isOr() {
+            return or;
+        }
+
+        public List<Condition> getConditions() {
+            return conditions;
+        }
+    }
+
+    /**
+     * Negates a condition
+     */
+    public static final class Not extends Condition {
+        private final Condition condition;
+
+        Not(Condition condition) {
+            if(condition == null)
+                throw new IllegalArgumentException("condition is required");
+
+            this.condition = condition;
+        }
+
+        public Condition getCondition() {
+            return condition;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.sultanofcardio.database.sql.statement;
 
 import com.sultanofcardio.database.sql.types.DatabaseType;
 
+import java.util.List;
+
 /**
  * Class representing an instance of an SQL delete query
  * @param <T> Optional type parameter of your subclass
@@ -23,4 +25,12 @@ public class Delete<T extends Delete<?>> extends Statement<Delete<T>> {
     protected String format() {
         return database.getDatabaseType().formatDelete(this);
     }
+
+    /**
+     * @see DatabaseType#formatDelete(Delete, List)
+     */
+    @Override
+    protected String format(List<Object> parameters) {
+        return database.getDatabaseType().formatDelete(this, parameters);
+    }
 }
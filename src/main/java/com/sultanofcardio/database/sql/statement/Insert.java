@@ -1,18 +1,43 @@
 package com.sultanofcardio.database.sql.statement;
 
+import com.sultanofcardio.database.sql.Database;
 import com.sultanofcardio.database.sql.types.DatabaseType;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.SQLException;
+import java.util.*;
 
 /**
- * Class representing an instance of an SQL insert query
+ * Class representing an instance of an SQL insert query. <br><br>
+ *
+ * An insert may hold many rows, added using {@link #row(Map)}. Running it with {@link #run()} inserts every row
+ * with a single statement, while {@link #runBatch()} splits the rows into batches of {@link #getBatchSize()}
+ * rows, sent according to the {@link BatchMode}
  * @param <T> Optional type parameter of your subclass
  */
 @SuppressWarnings({"unchecked", "WeakerAccess"})
 public class Insert<T extends Insert<?>> extends Statement<Insert<T>> {
     protected Map<String, Object> columnValues;
+    protected List<Map<String, Object>> rows;
+    protected int batchSize = 1000;
+    protected BatchMode batchMode = BatchMode.JDBC;
+
+    /**
+     * How the rows of an insert are sent to the database by {@link #runBatch()}
+     */
+    public enum BatchMode {
+        /**
+         * Each batch is sent using JDBC <code>addBatch</code>/<code>executeBatch</code>, with one prepared
+         * single-row insert shared by every row
+         */
+        JDBC,
+
+        /**
+         * Each batch is sent as a single statement with a multi-row <code>VALUES</code> list, or
+         * <code>INSERT ALL</code> on Oracle. Batches are capped at the number of bind parameters the database
+         * accepts in one statement
+         */
+        MULTI_ROW
+    }
 
     /**
      * Create a new instance of an insert query.
@@ -20,6 +45,7 @@ public class Insert<T extends Insert<?>> extends Statement<Insert<T>> {
     public Insert() {
         super(Type.DML);
         this.columnValues = new HashMap<>();
+        this.rows = new ArrayList<>();
     }
 
     /**
@@ -74,6 +100,107 @@ public class Insert<T extends Insert<?>> extends Statement<Insert<T>> {
         return (T) this;
     }
 
+    /**
+     * Add a row of column names and values to this insert. The values set using {@link #value(String, Object)}, if
+     * any, make up the first row. Columns missing from a row are inserted as null
+     * @param values pairs of column names and values
+     * @return this insert statement
+     */
+    public T row(Map<String, ?> values){
+        Map<String, Object> row = new HashMap<>();
+        for(String key: values.keySet()){
+            row.put(escape(key), values.get(key));
+        }
+
+        rows.add(row);
+        return (T) this;
+    }
+
+    /**
+     * Add several rows of column names and values to this insert
+     * @param rows the rows to insert
+     * @return this insert statement
+     * @see #row(Map)
+     */
+    public T rows(Collection<? extends Map<String, ?>> rows){
+        for(Map<String, ?> row: rows){
+            row(row);
+        }
+
+        return (T) this;
+    }
+
+    /**
+     * Get every row in this insert, starting with the values set using {@link #value(String, Object)} if there
+     * are any. This view cannot be modified
+     * @return a list of rows
+     */
+    public List<Map<String, Object>> getRows() {
+        if(columnValues.isEmpty())
+            return Collections.unmodifiableList(rows);
+
+        List<Map<String, Object>> allRows = new ArrayList<>(rows.size() + 1);
+        allRows.add(getColumnValues());
+        allRows.addAll(rows);
+        return Collections.unmodifiableList(allRows);
+    }
+
+    /**
+     * Get the names of every column inserted into by any row, in the order they are first seen
+     * @return a list of column names
+     */
+    public List<String> getColumns() {
+        if(rows.isEmpty())
+            return new ArrayList<>(columnValues.keySet());
+
+        Set<String> columns = new LinkedHashSet<>(columnValues.keySet());
+        for(Map<String, Object> row: rows){
+            columns.addAll(row.keySet());
+        }
+
+        return new ArrayList<>(columns);
+    }
+
+    /**
+     * Set the number of rows sent to the database at a time by {@link #runBatch()}
+     * @param batchSize number of rows per batch
+     * @return this insert statement
+     */
+    public T batchSize(int batchSize){
+        if(batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be at least 1");
+
+        this.batchSize = batchSize;
+        return (T) this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set how the rows are sent to the database by {@link #runBatch()}
+     * @param batchMode the batch mode
+     * @return this insert statement
+     */
+    public T batchMode(BatchMode batchMode){
+        this.batchMode = batchMode;
+        return (T) this;
+    }
+
+    public BatchMode getBatchMode() {
+        return batchMode;
+    }
+
+    /**
+     * Run this insert on its internal database in batches
+     * @return the number of rows inserted by each batch
+     * @see Database#runBatch(Insert)
+     */
+    public long[] runBatch() throws SQLException {
+        return database.runBatch(this);
+    }
+
     /**
      * @see DatabaseType#formatInsert(Insert)
      */
@@ -81,4 +208,12 @@ public class Insert<T extends Insert<?>> extends Statement<Insert<T>> {
     protected String format() {
         return database.getDatabaseType().formatInsert(this);
     }
+
+    /**
+     * @see DatabaseType#formatInsert(Insert, List)
+     */
+    @Override
+    protected String format(List<Object> parameters) {
+        return database.getDatabaseType().formatInsert(this, parameters);
+    }
 }
@@ -0,0 +1,146 @@
+package com.sultanofcardio.database.sql.statement;
+
+import com.sultanofcardio.database.sql.ResourceSet;
+import com.sultanofcardio.database.sql.RowMapper;
+import com.sultanofcardio.database.sql.UncheckedSQLException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks through the rows of a select query one page at a time with keyset pagination. Each page is read with
+ * {@link Select#seekAfter(List, List)} from the key columns of the last row of the page before it, so reading a page
+ * takes the same time no matter how deep into the table it is. <br><br>
+ *
+ * Pages are read lazily, one query per page, and the connection used to read a page is returned before the page is
+ * handed out. Rows inserted or deleted while the table is being walked are seen or skipped depending on where they
+ * fall relative to the current page, but no row is ever returned twice
+ *
+ * <pre>{@code
+ * for (List<User> page : database.select().from("users").paginate(Arrays.asList("id"), 500, User::new)) {
+ *     page.forEach(this::process);
+ * }
+ * }</pre>
+ *
+ * @param <R> The type of object each row is mapped to
+ * @author sultanofcardio
+ * @see Select#paginate(List, int, RowMapper)
+ */
+@SuppressWarnings("WeakerAccess")
+public class Paginator<R> implements Iterator<List<R>>, Iterable<List<R>> {
+
+    private final Select<?> select;
+    private final List<String> columns;
+    private final String[] labels;
+    private final int pageSize;
+    private final RowMapper<R> mapper;
+    private List<?> lastValues = Collections.emptyList();
+    private List<R> next;
+    private boolean done;
+    private long pages;
+
+    /**
+     * Create a paginator over the rows of a select query
+     * @param select The select query. It is modified to read each page
+     * @param columns The key columns, which together uniquely identify a row, most significant first. Each one is
+     *                read from the results by its name, without any table qualifier
+     * @param pageSize The number of rows in each page
+     * @param mapper Maps each row to an object
+     */
+    public Paginator(Select<?> select, List<String> columns, int pageSize, RowMapper<R> mapper) {
+        if(pageSize < 1)
+            throw new IllegalArgumentException("pageSize must be at least 1");
+        if(columns == null || columns.isEmpty())
+            throw new IllegalArgumentException("Must supply at least one key column");
+
+        this.select = select;
+        this.columns = new ArrayList<>(columns);
+        this.pageSize = pageSize;
+        this.mapper = mapper;
+
+        labels = new String[columns.size()];
+        for(int i = 0; i < labels.length; i++) {
+            String column = columns.get(i);
+            labels[i] = column.substring(column.lastIndexOf('.') + 1);
+        }
+    }
+
+    /**
+     * Check whether there is another page, reading it if it has not been read yet
+     * @return whether there is another page
+     * @throws UncheckedSQLException if the page could not be read
+     */
+    @Override
+    public boolean hasNext() {
+        if(next == null && !done) {
+            try {
+                next = read();
+            } catch (SQLException e) {
+                throw new UncheckedSQLException(e);
+            }
+        }
+
+        return next != null;
+    }
+
+    /**
+     * Get the next page
+     * @return the rows of the next page, of which there are at most {@link #getPageSize()}
+     * @throws NoSuchElementException if every page has been read
+     * @throws UncheckedSQLException if the page could not be read
+     */
+    @Override
+    public List<R> next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+
+        List<R> page = next;
+        next = null;
+        return page;
+    }
+
+    @Override
+    public Iterator<List<R>> iterator() {
+        return this;
+    }
+
+    private List<R> read() throws SQLException {
+        select.seekAfter(columns, lastValues).limit(pageSize);
+
+        List<R> page = new ArrayList<>(pageSize);
+        List<Object> values = null;
+        try (ResourceSet resources = select.execute()) {
+            ResultSet resultSet = resources.getResultSet();
+            while (resultSet.next()) {
+                page.add(mapper.map(resultSet));
+
+                values = new ArrayList<>(labels.length);
+                for(String label: labels) values.add(resultSet.getObject(label));
+            }
+        }
+
+        if(page.size() < pageSize) done = true;
+        if(page.isEmpty()) return null;
+
+        lastValues = values;
+        pages++;
+        return Collections.unmodifiableList(page);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Get the number of pages read so far
+     * @return the number of pages
+     */
+    public long getPages() {
+        return pages;
+    }
+}
@@ -3,10 +3,13 @@ package com.sultanofcardio.database.sql.statement;
 import com.sultanofcardio.database.sql.Database;
 import com.sultanofcardio.database.sql.ResourceSet;
 import com.sultanofcardio.database.sql.ResultSetHandler;
+import com.sultanofcardio.database.sql.RowMapper;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Abstract representation of a query in a RDBMS.
@@ -43,4 +46,15 @@ public abstract class Query<T extends Query<?>> extends Statement<T> {
     public void execute(ResultSetHandler handler) throws SQLException {
         database.execute(this, handler);
     }
+
+    /**
+     * Execute this query on its internal database without blocking, reading every row of its result
+     * @param mapper Maps each row to an object
+     * @param <R> The type of object each row is mapped to
+     * @return A future that completes with the mapped rows, and cancels the query if it is cancelled
+     * @see Database#executeAsync(Query, RowMapper)
+     */
+    public <R> CompletableFuture<List<R>> executeAsync(RowMapper<R> mapper) {
+        return database.executeAsync(this, mapper);
+    }
 }
@@ -1,12 +1,16 @@
 package com.sultanofcardio.database.sql.statement;
 
+import com.sultanofcardio.database.sql.Database;
+import com.sultanofcardio.database.sql.RowMapper;
 import com.sultanofcardio.database.sql.types.DatabaseType;
 import org.intellij.lang.annotations.Language;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Class representing an instance of an SQL select query
@@ -16,8 +20,13 @@ import java.util.List;
 public class Select<T extends Select<?>> extends Query<T> {
     protected String[] columns;
     protected int limit;
+    protected long offset;
     protected List<String> orderBy;
     protected boolean distinct = false;
+    protected int fetchSize = 0;
+    protected List<String> seekColumns = Collections.emptyList();
+    protected List<?> seekValues = Collections.emptyList();
+    protected boolean seekDescending = false;
 
     /**
      * Create a new SELECT query
@@ -66,6 +75,22 @@ public class Select<T extends Select<?>> extends Query<T> {
         return (T) this;
     }
 
+    /**
+     * Skip a number of rows before returning any. Combined with {@link #limit(int)}, this reads one page of the
+     * results, which the database renders natively so that it can stop sorting once it has enough rows. Rows are
+     * only skipped in a predictable order if the query has an order by clause. For deep pages,
+     * {@link #seekAfter(List, List)} is faster, since the skipped rows are still read
+     * @param numRows The number of rows to skip
+     * @return An instance of this query
+     */
+    public T offset(long numRows){
+        if(numRows < 0)
+            throw new IllegalArgumentException("offset must not be negative");
+
+        this.offset = numRows;
+        return (T) this;
+    }
+
     /**
      * Add an order by clause
      * @param orderBy SQL order by clause
@@ -76,6 +101,91 @@ public class Select<T extends Select<?>> extends Query<T> {
         return (T) this;
     }
 
+    /**
+     * Only return the rows that come after a given row, in ascending order of a set of key columns. This is keyset
+     * pagination: unlike skipping rows with an offset, the database can seek straight to the first row of a page
+     * through an index on the key columns, so every page takes the same time to read, however deep it is. <br><br>
+     *
+     * The rows are ordered by the key columns before any other order by clause. Together, the key columns must
+     * uniquely identify a row, and none of them may be null
+     * @param columns The key columns, most significant first
+     * @param values The values of the key columns in the last row of the previous page, in the same order. Pass
+     *               null or an empty list to start from the first row
+     * @return An instance of this query
+     * @see DatabaseType#appendSeekCondition(Select, StringBuilder, List)
+     * @see Paginator
+     */
+    public T seekAfter(List<String> columns, List<?> values){
+        return seekAfter(columns, values, false);
+    }
+
+    /**
+     * Only return the rows that come after a given row, in ascending or descending order of a set of key columns
+     * @param columns The key columns, most significant first
+     * @param values The values of the key columns in the last row of the previous page, in the same order. Pass
+     *               null or an empty list to start from the first row
+     * @param descending Whether the rows are ordered in descending order of the key columns
+     * @return An instance of this query
+     * @see #seekAfter(List, List)
+     */
+    public T seekAfter(List<String> columns, List<?> values, boolean descending){
+        if(columns == null || columns.isEmpty())
+            throw new IllegalArgumentException("Must supply at least one key column");
+        if(values == null) values = Collections.emptyList();
+        if(!values.isEmpty() && values.size() != columns.size())
+            throw new IllegalArgumentException("Must supply a value for each key column");
+        if(values.contains(null))
+            throw new IllegalArgumentException("Key column values must not be null");
+
+        List<String> escaped = new ArrayList<>(columns.size());
+        for(String column: columns) escaped.add(escape(column));
+
+        this.seekColumns = Collections.unmodifiableList(escaped);
+        this.seekValues = Collections.unmodifiableList(new ArrayList<>(values));
+        this.seekDescending = descending;
+        return (T) this;
+    }
+
+    /**
+     * Walk through every row of this query one page at a time, using keyset pagination on a set of key columns.
+     * This query is modified to read each page, so it should not be used for anything else meanwhile
+     * @param columns The key columns, which together uniquely identify a row, most significant first
+     * @param pageSize The number of rows in each page
+     * @param mapper Maps each row to an object
+     * @param <R> The type of object each row is mapped to
+     * @return An iterator over the pages of this query
+     * @see #seekAfter(List, List)
+     */
+    public <R> Paginator<R> paginate(List<String> columns, int pageSize, RowMapper<R> mapper){
+        return new Paginator<>(this, columns, pageSize, mapper);
+    }
+
+    /**
+     * Set the number of rows fetched from the database at a time when this query's results are read. Large results
+     * that are streamed should use a fetch size that keeps only a window of rows in memory
+     * @param fetchSize The number of rows, or 0 for the driver default
+     * @return An instance of this query
+     * @see #stream(RowMapper)
+     */
+    public T fetchSize(int fetchSize){
+        if(fetchSize < 0)
+            throw new IllegalArgumentException("fetchSize must not be negative");
+
+        this.fetchSize = fetchSize;
+        return (T) this;
+    }
+
+    /**
+     * Lazily stream the results of this query on its internal database. The stream must be closed
+     * @param mapper Maps each row to an object
+     * @param <R> The type of object each row is mapped to
+     * @return A stream of mapped rows
+     * @see Database#stream(Select, RowMapper)
+     */
+    public <R> Stream<R> stream(RowMapper<R> mapper) throws SQLException {
+        return database.stream(this, mapper);
+    }
+
     /**
      * Get a view of the list of the columns being selected by this query. An empty array
      * is equivalent to selecting all columns. This view cannot be modified
@@ -93,6 +203,50 @@ public class Select<T extends Select<?>> extends Query<T> {
         return limit;
     }
 
+    /**
+     * Get the number of rows skipped before any are returned
+     * @return offset, or 0 to skip no rows
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Check whether the rows of this query are ordered, either by an order by clause or by its key columns
+     * @return whether the query renders an ORDER BY clause
+     */
+    public boolean isOrdered() {
+        return !orderBy.isEmpty() || !seekColumns.isEmpty();
+    }
+
+    /**
+     * Get the number of rows fetched from the database at a time
+     * @return fetch size, or 0 for the driver default
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Get the key columns set by {@link #seekAfter(List, List)}
+     * @return the key columns, or an empty list if this query does not seek
+     */
+    public List<String> getSeekColumns() {
+        return seekColumns;
+    }
+
+    /**
+     * Get the values of the key columns that returned rows must come after
+     * @return the values of the key columns, or an empty list to start from the first row
+     */
+    public List<?> getSeekValues() {
+        return seekValues;
+    }
+
+    public boolean isSeekDescending() {
+        return seekDescending;
+    }
+
     /**
      * Get the list of order by clauses
      * @return the list of order by clauses
@@ -116,4 +270,12 @@ public class Select<T extends Select<?>> extends Query<T> {
     protected String format() {
         return database.getDatabaseType().formatSelect(this);
     }
+
+    /**
+     * @see DatabaseType#formatSelect(Select, List)
+     */
+    @Override
+    protected String format(List<Object> parameters) {
+        return database.getDatabaseType().formatSelect(this, parameters);
+    }
 }
@@ -1,5 +1,6 @@
 package com.sultanofcardio.database.sql.statement;
 
+import com.sultanofcardio.database.sql.BoundSql;
 import com.sultanofcardio.database.sql.Database;
 import com.sultanofcardio.database.sql.Literal;
 import com.sultanofcardio.database.sql.types.DatabaseType;
@@ -9,17 +10,19 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Abstract representation of a statement in a RDBMS.
  * @author sultanofcardio
  */
 @SuppressWarnings({"Duplicates", "unchecked", "WeakerAccess", "UnusedReturnValue"})
-public abstract class Statement<T extends Statement<?>> {
+public abstract class Statement<T extends Statement<?>> implements Cloneable {
     protected Type type;
     protected String tableName;
     protected Map<String, Object> whereConditions;
     protected List<String> stringWhereConditions, genericConditions;
+    protected List<Condition> conditions;
     protected Database database;
 
     public enum Type {
@@ -49,6 +52,7 @@ public abstract class Statement<T extends Statement<?>> {
         whereConditions = new HashMap<>();
         stringWhereConditions = new ArrayList<>();
         genericConditions = new ArrayList<>();
+        conditions = new ArrayList<>();
     }
 
     public T from(String tableName){
@@ -60,6 +64,19 @@ public abstract class Statement<T extends Statement<?>> {
         return (T) this;
     }
 
+    /**
+     * Add an IN condition on a column. Its values are bound as parameters. Lists too long for a single statement
+     * are split when the statement runs
+     * @param column The column
+     * @param values The values the column may be equal to. An empty collection matches no rows
+     * @return An instance of this query
+     * @see Condition#in(String, Collection)
+     * @see com.sultanofcardio.database.sql.Database#setTempTableThreshold(int)
+     */
+    public T where(String column, Collection<?> values){
+        return where(Condition.in(column, values));
+    }
+
     public T where(Map<String, Object> whereConditions){
 
         for(String key: whereConditions.keySet()){
@@ -79,16 +96,38 @@ public abstract class Statement<T extends Statement<?>> {
         return (T) this;
     }
 
+    /**
+     * Add a typed condition, whose values are bound as parameters
+     * @param condition The condition
+     * @return An instance of this query
+     * @see Condition
+     */
+    public T where(Condition condition){
+        if(condition == null)
+            throw new IllegalArgumentException("condition is required");
+
+        conditions.add(condition);
+        return (T) this;
+    }
+
     public T and(String column, Object value){
         whereConditions.put(escape(column), value);
         return (T) this;
     }
 
+    public T and(String column, Collection<?> values){
+        return where(column, values);
+    }
+
     public T and(@Language("SQL")String condition){
         stringWhereConditions.add(condition);
         return (T) this;
     }
 
+    public T and(Condition condition){
+        return where(condition);
+    }
+
     /**
      * Add a generic SQL condition to this query. Don't use this for <strong>WHERE</strong>
      * or <strong>LIMIT</strong>, use one of the convenience where methods or {@link Select#limit(int)} instead
@@ -125,6 +164,31 @@ public abstract class Statement<T extends Statement<?>> {
         return genericConditions;
     }
 
+    public List<Condition> getConditions() {
+        return conditions;
+    }
+
+    /**
+     * Create a copy of this statement with one of its typed conditions replaced, leaving this statement as it is.
+     * The copy has its own list of typed conditions, and shares everything else with this statement
+     * @param index The position of the condition in {@link #getConditions()}
+     * @param condition The condition to put in its place
+     * @return the copy
+     */
+    public T withCondition(int index, Condition condition) {
+        if(condition == null)
+            throw new IllegalArgumentException("Condition must not be null");
+
+        try {
+            Statement<?> copy = (Statement<?>) super.clone();
+            copy.conditions = new ArrayList<>(conditions);
+            copy.conditions.set(index, condition);
+            return (T) copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public Database getDatabase() {
         return database;
     }
@@ -139,6 +203,38 @@ public abstract class Statement<T extends Statement<?>> {
      */
     protected abstract String format();
 
+    /**
+     * Format this Statement object as valid SQL, using placeholders in place of values where possible
+     * @param parameters Collects the values to be bound to the placeholders, in order
+     * @return valid SQL code
+     */
+    protected String format(List<Object> parameters) {
+        return format();
+    }
+
+    /**
+     * Render this statement with placeholders in place of its values, along with the values to bind to them.
+     * Statements of the same shape render to the same SQL, so the database can reuse their execution plans. IN lists
+     * are padded to a few sizes to that end, unless the padding is what takes the statement past
+     * {@link DatabaseType#getMaxParameters()}
+     * @return the SQL code and its parameters
+     */
+    public BoundSql bind() {
+        List<Object> parameters = new ArrayList<>();
+        String sql = format(parameters);
+
+        if(parameters.size() > database.getDatabaseType().getMaxParameters()) {
+            List<Object> unpadded = DatabaseType.unpaddedParameters();
+            String unpaddedSql = format(unpadded);
+            if(unpadded.size() < parameters.size()) {
+                sql = unpaddedSql;
+                parameters = unpadded;
+            }
+        }
+
+        return new BoundSql(sql, parameters);
+    }
+
     protected T setTableName(String tableName){
         this.tableName = escape(tableName);
         return (T) this;
@@ -158,7 +254,7 @@ public abstract class Statement<T extends Statement<?>> {
         if(value != null && Date.class.isAssignableFrom(value.getClass()))
             sValue = formatDate((Date)value);
 
-        return sValue.replace("'", "''");
+        return sValue.indexOf('\'') < 0 ? sValue : sValue.replace("'", "''");
     }
 
     public String toString(){
@@ -182,4 +278,13 @@ public abstract class Statement<T extends Statement<?>> {
     public long run() throws SQLException {
         return database.run(this);
     }
+
+    /**
+     * Run this statement on its internal database without blocking
+     * @return A future that completes with the result of this statement, and cancels it if it is cancelled
+     * @see Database#runAsync(Statement)
+     */
+    public CompletableFuture<Long> runAsync() {
+        return database.runAsync(this);
+    }
 }
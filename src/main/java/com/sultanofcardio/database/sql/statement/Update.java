@@ -104,4 +104,12 @@ public class Update<T extends Update<?>> extends Statement<Update<T>> {
     protected String format() {
         return database.getDatabaseType().formatUpdate(this);
     }
+
+    /**
+     * @see DatabaseType#formatUpdate(Update, List)
+     */
+    @Override
+    protected String format(List<Object> parameters) {
+        return database.getDatabaseType().formatUpdate(this, parameters);
+    }
 }
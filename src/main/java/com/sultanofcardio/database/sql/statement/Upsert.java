@@ -0,0 +1,122 @@
+package com.sultanofcardio.database.sql.statement;
+
+import com.sultanofcardio.database.sql.types.DatabaseType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class representing an instance of an SQL upsert, which inserts rows and updates the rows that already exist with
+ * the same key, in a single statement. Each RDBMS renders it natively: <code>ON CONFLICT</code> on PostgreSQL and
+ * SQLite, <code>ON DUPLICATE KEY UPDATE</code> on MySQL, and <code>MERGE</code> on Oracle, SQL Server and H2. <br><br>
+ *
+ * Rows are added the same way as with an {@link Insert}, and {@link #runBatch()} in
+ * {@link Insert.BatchMode#MULTI_ROW} mode sends each batch as a single statement. A key must not appear twice in
+ * the same statement, since most databases refuse to update a row twice in one statement. <br><br>
+ *
+ * MySQL matches existing rows on any primary key or unique index the new row conflicts with, rather than on the
+ * key columns, and counts each updated row as 2 rows affected
+ *
+ * <pre>{@code
+ * database.upsert()
+ *         .into("users")
+ *         .onConflict("id")
+ *         .rows(users)
+ *         .batchMode(Insert.BatchMode.MULTI_ROW)
+ *         .runBatch();
+ * }</pre>
+ *
+ * @param <T> Optional type parameter of your subclass
+ * @author sultanofcardio
+ * @see DatabaseType#formatUpsert(Upsert)
+ */
+@SuppressWarnings({"unchecked", "WeakerAccess"})
+public class Upsert<T extends Upsert<?>> extends Insert<T> {
+    protected List<String> keyColumns;
+    protected List<String> updateColumns;
+
+    /**
+     * Create a new instance of an upsert.
+     */
+    public Upsert() {
+        this.keyColumns = new ArrayList<>();
+    }
+
+    /**
+     * Specify the columns that identify a row, which must have a primary key or unique constraint on them. Every
+     * row must have a value for each of them
+     * @param keyColumns The key columns
+     * @return this upsert
+     */
+    public T onConflict(String... keyColumns){
+        if(keyColumns.length == 0)
+            throw new IllegalArgumentException("Must supply at least one key column");
+
+        this.keyColumns.clear();
+        for(String column: keyColumns){
+            this.keyColumns.add(escape(column));
+        }
+
+        return (T) this;
+    }
+
+    /**
+     * Specify the columns updated when a row already exists. By default, every column that is not a key column is
+     * updated
+     * @param columns The columns to update
+     * @return this upsert
+     */
+    public T update(String... columns){
+        List<String> updateColumns = new ArrayList<>(columns.length);
+        for(String column: columns){
+            updateColumns.add(escape(column));
+        }
+
+        this.updateColumns = updateColumns;
+        return (T) this;
+    }
+
+    /**
+     * Leave the rows that already exist as they are, and only insert the new ones
+     * @return this upsert
+     */
+    public T doNothing(){
+        this.updateColumns = Collections.emptyList();
+        return (T) this;
+    }
+
+    public List<String> getKeyColumns() {
+        return Collections.unmodifiableList(keyColumns);
+    }
+
+    /**
+     * Get the columns updated when a row already exists
+     * @return the columns set with {@link #update(String...)}, or every column that is not a key column. Empty if
+     * existing rows are left as they are
+     */
+    public List<String> getUpdateColumns() {
+        if(updateColumns != null)
+            return Collections.unmodifiableList(updateColumns);
+
+        List<String> columns = getColumns();
+        columns.removeAll(keyColumns);
+        return columns;
+    }
+
+    /**
+     * @see DatabaseType#formatUpsert(Upsert)
+     */
+    @Override
+    protected String format() {
+        return database.getDatabaseType().formatUpsert(this);
+    }
+
+    /**
+     * @see DatabaseType#formatUpsert(Upsert, List)
+     */
+    @Override
+    protected String format(List<Object> parameters) {
+        return database.getDatabaseType().formatUpsert(this, parameters);
+    }
+}
@@ -1,19 +1,33 @@
 package com.sultanofcardio.database.sql.types;
 
+import com.sultanofcardio.database.sql.Literal;
 import com.sultanofcardio.database.sql.statement.*;
 
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import static com.sultanofcardio.database.sql.statement.Statement.escape;
-
 /**
  * Abstract representation of a particular RDBMS implementation. Extend this class to provide your own implementation
+ * <br><br>
+ *
+ * Statements are formatted by a single renderer shared by every dialect, which appends straight into one re-used
+ * {@link StringBuilder}. Dialects only need to override the hooks where their syntax differs, such as
+ * {@link #appendLimit(Select, StringBuilder)}
  */
 @SuppressWarnings("WeakerAccess")
 public abstract class DatabaseType {
 
+    private static final int INITIAL_BUILDER_CAPACITY = 256;
+    private static final int MAX_BUILDER_CAPACITY = 16 * 1024;
+    private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<>();
+
     protected String name, connectionString, driverName;
 
     /**
@@ -51,41 +65,88 @@ public abstract class DatabaseType {
      */
     public abstract String getConnectionString(String... args);
 
-    protected void appendConditions(Map<String, Object> conditions, StringBuilder result) {
-        Iterator<String> keyIterator = conditions.keySet().iterator();
-        while (keyIterator.hasNext()){
-            String condition =  keyIterator.next();
-            Object value = conditions.get(condition);
-
-            String formatString = "%s = ";
-
-            if(value == null)
-                formatString += "%s";
-            else if((String.class.isAssignableFrom(value.getClass()) ||
-                    java.util.Date.class.isAssignableFrom(value.getClass()))){
-                formatString += "'%s'";
-            } else {
-                formatString += "%s";
-            }
+    /**
+     * Append a raw SQL string, escaping any {@literal '} characters. Equivalent to appending
+     * {@link Statement#escape(Object)} without the intermediate string
+     * @param value The string to be escaped
+     * @param result The SQL being built
+     */
+    protected static void appendEscaped(String value, StringBuilder result) {
+        int start = 0;
+        for(int i = value.indexOf('\''); i >= 0; i = value.indexOf('\'', start)) {
+            result.append(value, start, i + 1).append('\'');
+            start = i + 1;
+        }
+        result.append(value, start, value.length());
+    }
 
-            if(keyIterator.hasNext()){
-                result.append(String.format(String.format("%s AND ", formatString), condition, escape(value)));
+    /**
+     * Append a single value to a statement. If a parameter list is supplied, the value is added to it and a
+     * <code>?</code> placeholder is appended in its place. Otherwise the value is inlined as an escaped literal,
+     * quoted if it is a string or a date. Null values and {@link Literal}s are always inlined. <br><br>
+     *
+     * Dates are bound as a {@link Timestamp}, unless they already are one of the <code>java.sql</code> date types,
+     * so that the driver sends them typed rather than as strings the database may refuse to compare with a date
+     * column. Inlined dates are formatted as described by {@link Statement#formatDate(Date)}
+     * @param value The value to append
+     * @param result The SQL being built
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     */
+    protected void appendValue(Object value, StringBuilder result, List<Object> parameters) {
+        if(value == null) {
+            result.append("null");
+        } else if(value instanceof Literal) {
+            result.append(value.toString());
+        } else if(value instanceof Date) {
+            if(parameters != null) {
+                parameters.add(toSqlDate((Date) value));
+                result.append('?');
             } else {
-                result.append(String.format(String.format("%s ", formatString), condition, escape(value)));
+                result.append('\'');
+                appendEscaped(Statement.formatDate((Date) value), result);
+                result.append('\'');
             }
+        } else if(parameters != null) {
+            parameters.add(value);
+            result.append('?');
+        } else if(value instanceof String) {
+            result.append('\'');
+            appendEscaped((String) value, result);
+            result.append('\'');
+        } else {
+            appendEscaped(value.toString(), result);
         }
     }
 
-    protected void appendConditions(List<String> conditions, StringBuilder result) {
-        Iterator<String> valueIterator = conditions.iterator();
-        while (valueIterator.hasNext()){
-            String condition =  valueIterator.next();
+    private static Date toSqlDate(Date date) {
+        if(date instanceof Timestamp || date instanceof java.sql.Date || date instanceof Time) return date;
+        return new Timestamp(date.getTime());
+    }
 
-            if(valueIterator.hasNext()){
-                result.append(String.format("%s AND ", condition));
-            } else {
-                result.append(String.format("%s ", condition));
-            }
+    protected void appendConditions(Map<String, Object> conditions, StringBuilder result) {
+        appendConditions(conditions, result, null);
+    }
+
+    /**
+     * Append column-value equality conditions, joined by AND
+     * @param conditions pairs of column names and values
+     * @param result The SQL being built
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     * @see #appendValue(Object, StringBuilder, List)
+     */
+    protected void appendConditions(Map<String, Object> conditions, StringBuilder result, List<Object> parameters) {
+        Iterator<Map.Entry<String, Object>> iterator = conditions.entrySet().iterator();
+        while (iterator.hasNext()){
+            Map.Entry<String, Object> condition = iterator.next();
+            result.append(condition.getKey()).append(" = ");
+            appendValue(condition.getValue(), result, parameters);
+            result.append(iterator.hasNext() ? " AND " : " ");
+        }
+    }
+
+    protected void appendConditions(List<String> conditions, StringBuilder result) {
+        for(int i = 0; i < conditions.size(); i++){
+            result.append(conditions.get(i)).append(i != conditions.size() - 1 ? " AND " : " ");
         }
     }
 
@@ -97,47 +158,836 @@ public abstract class DatabaseType {
         }
 
         for(int i = 0; i< genericConditions.size(); i++){
-            String condition = genericConditions.get(i);
-
             if(i != 0){
                 result.append("AND ");
             }
 
-            if(i != genericConditions.size() - 1) {
-                result.append(String.format("%s AND ", condition));
+            result.append(genericConditions.get(i)).append(i != genericConditions.size() - 1 ? " AND " : " ");
+        }
+    }
+
+    /**
+     * Append the WHERE clause of a statement, made up of its column-value conditions and its raw SQL conditions
+     * @param statement The statement being formatted
+     * @param result The SQL being built
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     * @return whether or not a WHERE clause was appended
+     */
+    protected boolean appendWhere(Statement<?> statement, StringBuilder result, List<Object> parameters) {
+        boolean whereAppended = false;
+
+        Map<String, Object> whereConditions = statement.getWhereConditions();
+        if(whereConditions != null && !whereConditions.isEmpty()){
+            result.append("WHERE ");
+            whereAppended = true;
+            appendConditions(whereConditions, result, parameters);
+        }
+
+        List<String> stringWhereConditions = statement.getStringWhereConditions();
+        if(stringWhereConditions != null && !stringWhereConditions.isEmpty()){
+            if(!whereAppended) {
+                result.append("WHERE ");
+                whereAppended = true;
+            } else result.append("AND ");
+
+            appendConditions(stringWhereConditions, result);
+        }
+
+        List<Condition> conditions = statement.getConditions();
+        if(conditions != null && !conditions.isEmpty()){
+            if(!whereAppended) {
+                result.append("WHERE ");
+                whereAppended = true;
+            } else result.append("AND ");
+
+            for(int i = 0; i < conditions.size(); i++){
+                appendCondition(conditions.get(i), result, parameters);
+                result.append(i != conditions.size() - 1 ? " AND " : " ");
+            }
+        }
+
+        return whereAppended;
+    }
+
+    /**
+     * Append a typed condition, binding its values as parameters. Conditions joined by AND or OR are wrapped in
+     * parentheses, so that a condition tree is rendered with the same precedence it was built with
+     * @param condition The condition
+     * @param result The SQL being built
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     * @see Condition
+     */
+    protected void appendCondition(Condition condition, StringBuilder result, List<Object> parameters) {
+        if(condition instanceof Condition.Comparison) {
+            Condition.Comparison comparison = (Condition.Comparison) condition;
+            result.append(comparison.getColumn());
+            if(comparison.getValue() == null) {
+                result.append(comparison.getOperator() == Condition.Comparison.Operator.EQ ?
+                        " IS NULL" : " IS NOT NULL");
             } else {
-                result.append(String.format("%s ", condition));
+                result.append(' ').append(comparison.getOperator().getSql()).append(' ');
+                appendValue(comparison.getValue(), result, parameters);
+            }
+        } else if(condition instanceof Condition.In) {
+            appendIn((Condition.In) condition, result, parameters);
+        } else if(condition instanceof Condition.InSelect) {
+            Condition.InSelect in = (Condition.InSelect) condition;
+            String subquery = formatSelect(in.getSubquery(), parameters);
+            int end = subquery.length();
+            while(end > 0 && subquery.charAt(end - 1) == ' ') end--;
+
+            result.append(in.getColumn()).append(" IN (").append(subquery, 0, end).append(')');
+        } else if(condition instanceof Condition.Between) {
+            Condition.Between between = (Condition.Between) condition;
+            result.append(between.getColumn()).append(" BETWEEN ");
+            appendValue(between.getLow(), result, parameters);
+            result.append(" AND ");
+            appendValue(between.getHigh(), result, parameters);
+        } else if(condition instanceof Condition.Like) {
+            Condition.Like like = (Condition.Like) condition;
+            result.append(like.getColumn()).append(like.isNegated() ? " NOT LIKE " : " LIKE ");
+            appendValue(like.getPattern(), result, parameters);
+        } else if(condition instanceof Condition.IsNull) {
+            Condition.IsNull isNull = (Condition.IsNull) condition;
+            result.append(isNull.getColumn()).append(isNull.isNegated() ? " IS NOT NULL" : " IS NULL");
+        } else if(condition instanceof Condition.Junction) {
+            Condition.Junction junction = (Condition.Junction) condition;
+            List<Condition> conditions = junction.getConditions();
+            result.append('(');
+            for(int i = 0; i < conditions.size(); i++){
+                if(i != 0) result.append(junction.isOr() ? " OR " : " AND ");
+                appendCondition(conditions.get(i), result, parameters);
             }
+            result.append(')');
+        } else if(condition instanceof Condition.Not) {
+            result.append("NOT (");
+            appendCondition(((Condition.Not) condition).getCondition(), result, parameters);
+            result.append(')');
+        } else {
+            throw new IllegalArgumentException("Unsupported condition " + condition.getClass().getName());
         }
     }
 
     /**
-     * Format a valid select query for your RDBMS
+     * Append an IN condition. An empty list of values is rendered as a condition that is always false, or always
+     * true for NOT IN, since SQL does not allow empty IN lists
+     * @param in The condition
+     * @param result The SQL being built
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     */
+    protected void appendIn(Condition.In in, StringBuilder result, List<Object> parameters) {
+        List<?> values = in.getValues();
+        if(values.isEmpty()) {
+            result.append(in.isNegated() ? "1 = 1" : "1 = 0");
+            return;
+        }
+
+        int max = getMaxInListSize();
+        if(values.size() <= max) {
+            appendInList(in, values, result, parameters);
+            return;
+        }
+
+        // Lists longer than the RDBMS accepts are split into several lists on the same column
+        result.append('(');
+        for(int start = 0; start < values.size(); start += max){
+            if(start > 0) result.append(in.isNegated() ? " AND " : " OR ");
+            appendInList(in, values.subList(start, Math.min(values.size(), start + max)), result, parameters);
+        }
+        result.append(')');
+    }
+
+    /**
+     * Append a single IN list. When values are bound as parameters, the number of placeholders is rounded up to
+     * {@link #getInListBucket(int)} by repeating the last value, so that lists of similar sizes render to the same
+     * SQL and share a prepared statement. Padding never takes the statement past {@link #getMaxParameters()} on its
+     * own, and lists are not padded at all when the values are collected in {@link #unpaddedParameters()}
+     */
+    private void appendInList(Condition.In in, List<?> values, StringBuilder result, List<Object> parameters) {
+        int placeholders = values.size();
+        if(parameters != null && !(parameters instanceof UnpaddedParameters)) {
+            int room = getMaxParameters() - parameters.size();
+            placeholders = Math.max(placeholders, Math.min(getInListBucket(placeholders), room));
+        }
+
+        result.append(in.getColumn()).append(in.isNegated() ? " NOT IN (" : " IN (");
+        for(int i = 0; i < placeholders; i++){
+            appendValue(values.get(Math.min(i, values.size() - 1)), result, parameters);
+            result.append(i != placeholders - 1 ? ", " : ")");
+        }
+    }
+
+    /**
+     * Get the number of placeholders rendered for a bound IN list of a number of values. By default, this is the
+     * next power of two, capped at {@link #getMaxInListSize()} and {@link #getMaxParameters()}, so that a statement
+     * filtering on anywhere between 1 and 1000 values only ever renders to 11 different SQL strings
+     * @param size the number of values, at least 1
+     * @return the number of placeholders, at least <code>size</code>
+     */
+    public int getInListBucket(int size) {
+        int bucket = Integer.highestOneBit(size);
+        if(bucket < size && bucket < (1 << 30)) bucket <<= 1;
+
+        return Math.max(size, Math.min(bucket, Math.min(getMaxInListSize(), getMaxParameters())));
+    }
+
+    /**
+     * Create a list that collects the values bound to placeholders without padding IN lists to
+     * {@link #getInListBucket(int)}. A statement whose padded lists take it past {@link #getMaxParameters()}, for
+     * example because of the conditions that follow them, is rendered again with one
+     * @return an empty parameter list
+     * @see Statement#bind()
+     */
+    public static List<Object> unpaddedParameters() {
+        return new UnpaddedParameters();
+    }
+
+    private static final class UnpaddedParameters extends ArrayList<Object> {
+    }
+
+    /**
+     * Get the maximum number of values this RDBMS accepts in a single IN list. Longer lists are split into several
+     * lists joined with OR
+     * @return the value limit
+     */
+    public int getMaxInListSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Get the name of a temporary table as it must be written in statements, e.g. with the <code>#</code> prefix
+     * SQL Server uses for tables local to a connection
+     * @param name the name of the table
+     * @return the name to use in statements
+     */
+    public String getTempTableName(String name) {
+        return name;
+    }
+
+    /**
+     * Format a statement that creates a temporary table with a single key column, which only the connection that
+     * creates it can see. Large IN lists are loaded into such a table and matched with a subquery, rather than
+     * binding every value
+     * @param table the name of the table, as returned by {@link #getTempTableName(String)}
+     * @param column the name of the key column
+     * @param numeric whether the keys are whole numbers. Otherwise they are strings
+     * @param length the length of the longest string key
+     * @return The formatted statement, or null if this RDBMS cannot create temporary tables on the fly
+     * @see com.sultanofcardio.database.sql.Database#setTempTableThreshold(int)
+     */
+    public String formatCreateTempTable(String table, String column, boolean numeric, int length) {
+        return "CREATE TEMPORARY TABLE " + table + " (" + column + " " + getTempKeyType(numeric, length) + ")";
+    }
+
+    /**
+     * Get the column type of the key column of a temporary table
+     * @param numeric whether the keys are whole numbers. Otherwise they are strings
+     * @param length the length of the longest string key
+     * @return the column type
+     */
+    protected String getTempKeyType(boolean numeric, int length) {
+        return numeric ? "BIGINT" : "VARCHAR(" + Math.max(1, length) + ")";
+    }
+
+    /**
+     * Format a statement that drops a temporary table
+     * @param table the name of the table, as returned by {@link #getTempTableName(String)}
+     * @return The formatted statement, or null if the table is dropped when the transaction that created it commits
+     */
+    public String formatDropTempTable(String table) {
+        return "DROP TABLE " + table;
+    }
+
+    /**
+     * Hook for dialects that limit the rows of a select right after the SELECT keyword, e.g. SQL Server's
+     * <code>TOP n</code>. Does nothing by default
+     * @param select the select query
+     * @param result The SQL being built
+     */
+    protected void appendTop(Select<?> select, StringBuilder result) {
+    }
+
+    /**
+     * Hook for dialects that limit the rows of a select with a condition, e.g. Oracle's <code>ROWNUM &lt;= n</code>.
+     * Called after all other conditions have been appended. Does nothing by default
+     * @param select the select query
+     * @param result The SQL being built
+     * @param whereAppended whether or not a WHERE clause has already been started
+     */
+    protected void appendRowLimitCondition(Select<?> select, StringBuilder result, boolean whereAppended) {
+    }
+
+    /**
+     * Hook for dialects that limit the rows of a select at the end of the query. Appends <code>LIMIT n</code>
+     * and <code>OFFSET m</code> by default
+     * @param select the select query
+     * @param result The SQL being built
+     */
+    protected void appendLimit(Select<?> select, StringBuilder result) {
+        if(select.getLimit() != -1){
+            result.append(" LIMIT ").append(select.getLimit()).append(' ');
+        }
+
+        if(select.getOffset() > 0){
+            appendSpace(result);
+            result.append("OFFSET ").append(select.getOffset()).append(' ');
+        }
+    }
+
+    /**
+     * Append a space, unless the SQL being built already ends with one
+     * @param result The SQL being built
+     */
+    protected static void appendSpace(StringBuilder result) {
+        if(result.length() > 0 && result.charAt(result.length() - 1) != ' ')
+            result.append(' ');
+    }
+
+    /**
+     * Append the condition that limits a select to the rows after its seek values, in the order of its key columns.
+     * By default this is a row value comparison such as <code>(a, b) &gt; (?, ?)</code>, which the database can
+     * answer with a single range scan of an index on the key columns
+     * @param select the select query, which has seek values
+     * @param result The SQL being built
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     * @see Select#seekAfter(List, List)
+     * @see #appendExpandedSeekCondition(Select, StringBuilder, List)
+     */
+    protected void appendSeekCondition(Select<?> select, StringBuilder result, List<Object> parameters) {
+        List<String> columns = select.getSeekColumns();
+        List<?> values = select.getSeekValues();
+        String operator = select.isSeekDescending() ? " < " : " > ";
+
+        if(columns.size() == 1) {
+            result.append(columns.get(0)).append(operator);
+            appendValue(values.get(0), result, parameters);
+            return;
+        }
+
+        result.append('(');
+        for(int i = 0; i < columns.size(); i++) {
+            result.append(columns.get(i)).append(i != columns.size() - 1 ? ", " : ")");
+        }
+
+        result.append(operator).append('(');
+        for(int i = 0; i < values.size(); i++) {
+            appendValue(values.get(i), result, parameters);
+            result.append(i != values.size() - 1 ? ", " : ")");
+        }
+    }
+
+    /**
+     * Append a seek condition for dialects without row value comparisons, or whose optimizer cannot use an index
+     * for them. The comparison is expanded into <code>a &gt;= ? AND (a &gt; ? OR (a = ? AND b &gt; ?))</code>,
+     * where the leading range on the first key column lets the database start an index scan at the right row
+     * @param select the select query, which has seek values
+     * @param result The SQL being built
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     */
+    protected void appendExpandedSeekCondition(Select<?> select, StringBuilder result, List<Object> parameters) {
+        List<String> columns = select.getSeekColumns();
+        List<?> values = select.getSeekValues();
+        String operator = select.isSeekDescending() ? " < " : " > ";
+
+        if(columns.size() == 1) {
+            result.append(columns.get(0)).append(operator);
+            appendValue(values.get(0), result, parameters);
+            return;
+        }
+
+        result.append(columns.get(0)).append(select.isSeekDescending() ? " <= " : " >= ");
+        appendValue(values.get(0), result, parameters);
+        result.append(" AND (");
+
+        for(int i = 0; i < columns.size(); i++) {
+            if(i != 0) result.append(" OR ");
+            if(i != 0) result.append('(');
+
+            for(int j = 0; j < i; j++) {
+                result.append(columns.get(j)).append(" = ");
+                appendValue(values.get(j), result, parameters);
+                result.append(" AND ");
+            }
+
+            result.append(columns.get(i)).append(operator);
+            appendValue(values.get(i), result, parameters);
+            if(i != 0) result.append(')');
+        }
+
+        result.append(')');
+    }
+
+    /**
+     * Format a valid select query for your RDBMS, with every value inlined
      * @param select the select query
      * @return The formatted query
      */
-    public abstract String formatSelect(Select<?> select);
+    public String formatSelect(Select<?> select) {
+        return formatSelect(select, null);
+    }
 
     /**
-     * Format a valid update query for your RDBMS
+     * Format a valid select query for your RDBMS, using placeholders for values where possible.
+     * Dialects customize row limiting through {@link #appendTop(Select, StringBuilder)},
+     * {@link #appendRowLimitCondition(Select, StringBuilder, boolean)} and {@link #appendLimit(Select, StringBuilder)}
+     * @param select the select query
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     * @return The formatted query
+     */
+    public String formatSelect(Select<?> select, List<Object> parameters) {
+        StringBuilder result = acquireBuilder();
+        try {
+            result.append(select.isDistinct() ? "SELECT DISTINCT " : "SELECT ");
+            appendTop(select, result);
+
+            String[] columns = select.getColumns();
+            if(columns != null && columns.length > 0) {
+                for (int i = 0; i < columns.length; i++) {
+                    appendEscaped(String.valueOf(columns[i]), result);
+                    result.append(i != columns.length - 1 ? ", " : " ");
+                }
+            } else {
+                result.append("* ");
+            }
+
+            String tableName = select.getTableName();
+
+            if(tableName == null || tableName.isEmpty())
+                throw new IllegalStateException("Table name not specified");
+
+            result.append("FROM ").append(tableName).append(' ');
+
+            boolean whereAppended = appendWhere(select, result, parameters);
+            appendGenericConditions(select, result, !whereAppended);
+
+            if(!select.getSeekValues().isEmpty()) {
+                result.append(whereAppended || !select.getGenericConditions().isEmpty() ? "AND " : "WHERE ");
+                whereAppended = true;
+                appendSeekCondition(select, result, parameters);
+                result.append(' ');
+            }
+
+            appendRowLimitCondition(select, result, whereAppended);
+
+            List<String> seekColumns = select.getSeekColumns();
+            List<String> orderBy = select.getOrderBy();
+
+            if(!seekColumns.isEmpty() || (orderBy != null && orderBy.size() > 0)){
+                result.append("ORDER BY ");
+                for(int i = 0; i < seekColumns.size(); i++) {
+                    result.append(seekColumns.get(i));
+                    if(select.isSeekDescending()) result.append(" DESC");
+
+                    if(i != seekColumns.size() - 1 || (orderBy != null && orderBy.size() > 0))
+                        result.append(", ");
+                }
+
+                for(int i=0; orderBy != null && i < orderBy.size(); i++) {
+                    result.append(orderBy.get(i));
+
+                    if(i != orderBy.size() - 1)
+                        result.append(", ");
+                }
+            }
+
+            appendLimit(select, result);
+            return trim(result);
+        } finally {
+            releaseBuilder(result);
+        }
+    }
+
+    /**
+     * Format a valid update query for your RDBMS, with every value inlined
      * @param update the update query
      * @return The formatted query
      */
-    public abstract String formatUpdate(Update<?> update);
+    public String formatUpdate(Update<?> update) {
+        return formatUpdate(update, null);
+    }
+
+    /**
+     * Format a valid update query for your RDBMS, using placeholders for values where possible
+     * @param update the update query
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     * @return The formatted query
+     */
+    public String formatUpdate(Update<?> update, List<Object> parameters) {
+        String tableName = update.getTableName();
+
+        if(tableName == null || tableName.isEmpty())
+            throw new IllegalStateException("Table name not specified");
+
+        Map<String, Object> setConditions = update.getSetConditions();
+        List<String> stringSetConditions = update.getStringSetConditions();
+
+        if(setConditions.isEmpty() && stringSetConditions.isEmpty())
+            throw new IllegalStateException("No column values found to modify");
+
+        StringBuilder result = acquireBuilder();
+        try {
+            result.append("UPDATE ").append(tableName).append(" SET ");
+
+            Iterator<Map.Entry<String, Object>> iterator = setConditions.entrySet().iterator();
+            while (iterator.hasNext()){
+                Map.Entry<String, Object> setCondition = iterator.next();
+                result.append(setCondition.getKey()).append(" = ");
+                appendValue(setCondition.getValue(), result, parameters);
+                result.append(iterator.hasNext() ? ", " : " ");
+            }
+
+            if(stringSetConditions.size() > 0 && !setConditions.isEmpty()){
+                result.append(", ");
+            }
+
+            for(int i=0; i<stringSetConditions.size(); i++){
+                result.append(stringSetConditions.get(i)).append(i != stringSetConditions.size() - 1 ? ", " : " ");
+            }
+
+            boolean whereAppended = appendWhere(update, result, parameters);
+            appendGenericConditions(update, result, whereAppended);
+
+            return trim(result);
+        } finally {
+            releaseBuilder(result);
+        }
+    }
+
+    /**
+     * Format a valid insert query for your RDBMS, with every value inlined
+     * @param insert the insert query
+     * @return The formatted query
+     */
+    public String formatInsert(Insert<?> insert) {
+        return formatInsert(insert, null);
+    }
+
+    /**
+     * Format a valid insert query for your RDBMS, using placeholders for values where possible
+     * @param insert the insert query
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     * @return The formatted query
+     */
+    public String formatInsert(Insert<?> insert, List<Object> parameters) {
+        return formatInsert(insert, insert.getColumns(), insert.getRows(), parameters);
+    }
 
     /**
-     * Format a valid insert query for your RDBMS
+     * Format a valid insert query for your RDBMS that inserts the given rows. Columns missing from a row are
+     * inserted as null
      * @param insert the insert query
+     * @param columns the columns to insert into
+     * @param rows the rows to insert
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     * @return The formatted query
+     */
+    public String formatInsert(Insert<?> insert, List<String> columns, List<Map<String, Object>> rows,
+                               List<Object> parameters) {
+        String tableName = insert.getTableName();
+
+        if(tableName == null || tableName.isEmpty())
+            throw new IllegalStateException("Table name not specified");
+
+        if(columns.isEmpty() || rows.isEmpty())
+            throw new IllegalStateException("No values found to be inserted");
+
+        StringBuilder result = acquireBuilder();
+        try {
+            appendInsertRows(tableName, columns, rows, result, parameters);
+            return trim(result);
+        } finally {
+            releaseBuilder(result);
+        }
+    }
+
+    /**
+     * Append the body of an insert, which by default is a single <code>INSERT INTO</code> with one
+     * <code>VALUES</code> list per row
+     * @param tableName the table to insert into
+     * @param columns the columns to insert into
+     * @param rows the rows to insert
+     * @param result The SQL being built
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     */
+    protected void appendInsertRows(String tableName, List<String> columns, List<Map<String, Object>> rows,
+                                    StringBuilder result, List<Object> parameters) {
+        appendInsertColumns(tableName, columns, result);
+        result.append("VALUES");
+
+        for(int i = 0; i < rows.size(); i++){
+            if(i > 0) result.append(", ");
+            appendInsertValues(columns, rows.get(i), result, parameters);
+        }
+    }
+
+    protected void appendInsertColumns(String tableName, List<String> columns, StringBuilder result) {
+        result.append("INSERT INTO ").append(tableName).append('(');
+        for(int i = 0; i < columns.size(); i++){
+            result.append(columns.get(i)).append(i != columns.size() - 1 ? ", " : ") ");
+        }
+    }
+
+    protected void appendInsertValues(List<String> columns, Map<String, Object> row, StringBuilder result,
+                                      List<Object> parameters) {
+        result.append('(');
+        for(int i = 0; i < columns.size(); i++){
+            appendValue(row.get(columns.get(i)), result, parameters);
+            result.append(i != columns.size() - 1 ? ", " : ")");
+        }
+    }
+
+    /**
+     * Format a valid upsert for your RDBMS, with every value inlined
+     * @param upsert the upsert
+     * @return The formatted statement
+     */
+    public String formatUpsert(Upsert<?> upsert) {
+        return formatUpsert(upsert, null);
+    }
+
+    /**
+     * Format a valid upsert for your RDBMS, using placeholders for values where possible
+     * @param upsert the upsert
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     * @return The formatted statement
+     */
+    public String formatUpsert(Upsert<?> upsert, List<Object> parameters) {
+        return formatUpsert(upsert, upsert.getColumns(), upsert.getRows(), parameters);
+    }
+
+    /**
+     * Format a valid upsert for your RDBMS that inserts or updates the given rows. Columns missing from a row are
+     * written as null. Dialects customize the statement through
+     * {@link #appendUpsert(Upsert, String, List, List, StringBuilder, List)}
+     * @param upsert the upsert
+     * @param columns the columns to write
+     * @param rows the rows to write
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     * @return The formatted statement
+     */
+    public String formatUpsert(Upsert<?> upsert, List<String> columns, List<Map<String, Object>> rows,
+                               List<Object> parameters) {
+        String tableName = upsert.getTableName();
+
+        if(tableName == null || tableName.isEmpty())
+            throw new IllegalStateException("Table name not specified");
+
+        if(columns.isEmpty() || rows.isEmpty())
+            throw new IllegalStateException("No values found to be inserted");
+
+        if(upsert.getKeyColumns().isEmpty() || !columns.containsAll(upsert.getKeyColumns()))
+            throw new IllegalStateException("Key columns not specified, or not inserted into");
+
+        StringBuilder result = acquireBuilder();
+        try {
+            appendUpsert(upsert, tableName, columns, rows, result, parameters);
+            return trim(result);
+        } finally {
+            releaseBuilder(result);
+        }
+    }
+
+    /**
+     * Append the body of an upsert, which by default is a multi-row insert followed by
+     * <code>ON CONFLICT (key) DO UPDATE SET column = EXCLUDED.column</code>, or <code>DO NOTHING</code> if no
+     * columns are updated
+     * @param upsert the upsert
+     * @param tableName the table to write to
+     * @param columns the columns to write
+     * @param rows the rows to write
+     * @param result The SQL being built
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     */
+    protected void appendUpsert(Upsert<?> upsert, String tableName, List<String> columns,
+                                List<Map<String, Object>> rows, StringBuilder result, List<Object> parameters) {
+        appendInsertRows(tableName, columns, rows, result, parameters);
+
+        List<String> keyColumns = upsert.getKeyColumns();
+        result.append(" ON CONFLICT (");
+        for(int i = 0; i < keyColumns.size(); i++){
+            result.append(keyColumns.get(i)).append(i != keyColumns.size() - 1 ? ", " : ") ");
+        }
+
+        List<String> updateColumns = upsert.getUpdateColumns();
+        if(updateColumns.isEmpty()) {
+            result.append("DO NOTHING");
+            return;
+        }
+
+        result.append("DO UPDATE SET ");
+        for(int i = 0; i < updateColumns.size(); i++){
+            String column = updateColumns.get(i);
+            result.append(column).append(" = EXCLUDED.").append(column);
+            if(i != updateColumns.size() - 1) result.append(", ");
+        }
+    }
+
+    /**
+     * Append an upsert as a standard <code>MERGE</code> statement, for dialects that have no upsert syntax of
+     * their own. The rows are matched against the table on the key columns, through the source rows appended by
+     * {@link #appendMergeSource(List, List, StringBuilder, List)}
+     * @param upsert the upsert
+     * @param tableName the table to write to
+     * @param columns the columns to write
+     * @param rows the rows to write
+     * @param result The SQL being built
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     */
+    protected void appendMerge(Upsert<?> upsert, String tableName, List<String> columns,
+                               List<Map<String, Object>> rows, StringBuilder result, List<Object> parameters) {
+        result.append("MERGE INTO ").append(tableName).append(" hoverdb_target USING ");
+        appendMergeSource(columns, rows, result, parameters);
+
+        List<String> keyColumns = upsert.getKeyColumns();
+        result.append(" ON (");
+        for(int i = 0; i < keyColumns.size(); i++){
+            if(i > 0) result.append(" AND ");
+            String column = keyColumns.get(i);
+            result.append("hoverdb_target.").append(column).append(" = hoverdb_source.").append(column);
+        }
+        result.append(") ");
+
+        List<String> updateColumns = upsert.getUpdateColumns();
+        if(!updateColumns.isEmpty()) {
+            result.append("WHEN MATCHED THEN UPDATE SET ");
+            for(int i = 0; i < updateColumns.size(); i++){
+                String column = updateColumns.get(i);
+                result.append(column).append(" = hoverdb_source.").append(column);
+                result.append(i != updateColumns.size() - 1 ? ", " : " ");
+            }
+        }
+
+        result.append("WHEN NOT MATCHED THEN INSERT (");
+        for(int i = 0; i < columns.size(); i++){
+            result.append(columns.get(i)).append(i != columns.size() - 1 ? ", " : ") VALUES (");
+        }
+        for(int i = 0; i < columns.size(); i++){
+            result.append("hoverdb_source.").append(columns.get(i)).append(i != columns.size() - 1 ? ", " : ")");
+        }
+    }
+
+    /**
+     * Append the source rows of a <code>MERGE</code> statement, named <code>hoverdb_source</code>. By default,
+     * this is a <code>VALUES</code> list with a column list
+     * @param columns the columns to write
+     * @param rows the rows to write
+     * @param result The SQL being built
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     */
+    protected void appendMergeSource(List<String> columns, List<Map<String, Object>> rows, StringBuilder result,
+                                     List<Object> parameters) {
+        result.append("(VALUES ");
+        for(int i = 0; i < rows.size(); i++){
+            if(i > 0) result.append(", ");
+            appendInsertValues(columns, rows.get(i), result, parameters);
+        }
+
+        result.append(") hoverdb_source (");
+        for(int i = 0; i < columns.size(); i++){
+            result.append(columns.get(i)).append(i != columns.size() - 1 ? ", " : ")");
+        }
+    }
+
+    /**
+     * Check whether an error means the database gave up on a statement or transaction to resolve a conflict with
+     * other work, so that running it again may succeed. By default, this is the case for
+     * {@link SQLTransactionRollbackException} and every SQLState in class <code>40</code>, such as serialization
+     * failures (<code>40001</code>) and PostgreSQL deadlocks (<code>40P01</code>). Override this to recognize the
+     * vendor error codes of your RDBMS
+     * @param exception the error, without the errors chained to it
+     * @return true if the work that failed can be retried
+     * @see com.sultanofcardio.database.sql.RetryPolicy
+     */
+    public boolean isRetryable(SQLException exception) {
+        if(exception instanceof SQLTransactionRollbackException) return true;
+
+        String sqlState = exception.getSQLState();
+        return sqlState != null && sqlState.startsWith("40");
+    }
+
+    /**
+     * Get the maximum number of bind parameters this RDBMS accepts in a single statement
+     * @return the parameter limit
+     */
+    public int getMaxParameters() {
+        return 32767;
+    }
+
+    /**
+     * Get the maximum number of rows that can be sent in a single multi-row insert
+     * @param columns the number of columns in each row
+     * @return the row limit
+     */
+    public int getMaxInsertRows(int columns) {
+        return Math.max(1, getMaxParameters() / Math.max(1, columns));
+    }
+
+    /**
+     * Format a valid delete query for your RDBMS, with every value inlined
+     * @param delete the delete query
      * @return The formatted query
      */
-    public abstract String formatInsert(Insert<?> insert);
+    public String formatDelete(Delete<?> delete) {
+        return formatDelete(delete, null);
+    }
 
     /**
-     * Format a valid delete query for your RDBMS
+     * Format a valid delete query for your RDBMS, using placeholders for values where possible
      * @param delete the delete query
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
      * @return The formatted query
      */
-    public abstract String formatDelete(Delete<?> delete);
+    public String formatDelete(Delete<?> delete, List<Object> parameters) {
+        String tableName = delete.getTableName();
+
+        if(tableName == null || tableName.isEmpty())
+            throw new IllegalStateException("Table name not specified");
+
+        StringBuilder result = acquireBuilder();
+        try {
+            result.append("DELETE FROM ").append(tableName).append(' ');
+
+            boolean whereAppended = appendWhere(delete, result, parameters);
+            appendGenericConditions(delete, result, !whereAppended);
+
+            return trim(result);
+        } finally {
+            releaseBuilder(result);
+        }
+    }
+
+    /**
+     * Get a cleared builder to format a statement into. Each thread re-uses a single builder, unless a statement
+     * is formatted while another one is still being formatted on the same thread
+     * @return an empty string builder
+     */
+    protected static StringBuilder acquireBuilder() {
+        StringBuilder builder = BUILDER.get();
+        if(builder == null) return new StringBuilder(INITIAL_BUILDER_CAPACITY);
+
+        BUILDER.set(null);
+        builder.setLength(0);
+        return builder;
+    }
+
+    /**
+     * Hand a builder obtained from {@link #acquireBuilder()} back for re-use
+     * @param builder the builder
+     */
+    protected static void releaseBuilder(StringBuilder builder) {
+        // Don't hold on to the memory of unusually large statements
+        if(builder.capacity() <= MAX_BUILDER_CAPACITY) BUILDER.set(builder);
+    }
+
+    /**
+     * Equivalent to <code>builder.toString().trim()</code>, without the intermediate string
+     */
+    private static String trim(StringBuilder builder) {
+        int start = 0, end = builder.length();
+        while (start < end && builder.charAt(start) <= ' ') start++;
+        while (end > start && builder.charAt(end - 1) <= ' ') end--;
+        return builder.substring(start, end);
+    }
 
     @Override
     public boolean equals(Object obj) {
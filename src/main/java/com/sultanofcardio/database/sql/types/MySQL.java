@@ -1,17 +1,15 @@
 package com.sultanofcardio.database.sql.types;
 
-import com.sultanofcardio.database.sql.statement.*;
+import com.sultanofcardio.database.sql.statement.Select;
+import com.sultanofcardio.database.sql.statement.Upsert;
 
-import java.util.Iterator;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
 
-import static com.sultanofcardio.database.sql.statement.Statement.escape;
-
 /**
  * Support for database connections to MySQL database servers
  */
-@SuppressWarnings("Duplicates")
 public final class MySQL extends DatabaseType {
 
     MySQL() {
@@ -33,235 +31,75 @@ public final class MySQL extends DatabaseType {
     }
 
     /**
-     * Format a Select object as a valid raw SQL string for the MySQL database
-     * @param select the select query
-     * @return valid MySQL code
+     * MySQL versions before 5.7 cannot use an index for row value comparisons, so seek conditions are expanded
+     * @see #appendExpandedSeekCondition(Select, StringBuilder, List)
      */
     @Override
-    public String formatSelect(Select<?> select) {
-        StringBuilder result = new StringBuilder(select.isDistinct() ? "SELECT DISTINCT " : "SELECT ");
-        String[] columns = select.getColumns();
-        if(columns != null && columns.length > 0) {
-            for (int i = 0; i < columns.length; i++) {
-                String column = columns[i];
-                if (i != columns.length - 1)
-                    result.append(String.format("%s, ", escape(column)));
-                else
-                    result.append(String.format("%s ", escape(column)));
-            }
-        } else {
-            result.append("* ");
-        }
-
-        String tableName = select.getTableName();
-
-        if(tableName == null || tableName.isEmpty())
-            throw new IllegalStateException("Table name not specified");
-
-        result.append(String.format("FROM %s ", tableName));
-
-        Map<String, Object> whereConditions = select.getWhereConditions();
-
-        boolean whereAppended = false;
-
-        if(whereConditions != null && !whereConditions.isEmpty()){
-            result.append("WHERE ");
-            whereAppended = true;
-            appendConditions(whereConditions, result);
-        }
-
-        List<String> stringWhereConditions = select.getStringWhereConditions();
-
-        if(stringWhereConditions != null && !stringWhereConditions.isEmpty()){
-            if(!whereAppended) {
-                result.append("WHERE ");
-                whereAppended = true;
-            } else result.append("AND ");
-
-            appendConditions(stringWhereConditions, result);
-        }
-
-        appendGenericConditions(select, result, !whereAppended);
-
-        List<String> orderBy = select.getOrderBy();
-
-        if(orderBy != null && orderBy.size() > 0){
-            result.append("ORDER BY ");
-            for(int i=0; i < orderBy.size(); i++) {
-                String orderByCondition = orderBy.get(i);
-                result.append(orderByCondition);
-
-                if(i != orderBy.size() - 1)
-                    result.append(", ");
-
-            }
-        }
-
-        if(select.getLimit() != -1){
-            result.append(String.format(" LIMIT %s ", select.getLimit()));
-        }
-
-        return result.toString().trim();
+    protected void appendSeekCondition(Select<?> select, StringBuilder result, List<Object> parameters) {
+        appendExpandedSeekCondition(select, result, parameters);
     }
 
     /**
-     * Format an Update object as a valid raw SQL string for the MySQL database
-     * @param update the update query
-     * @return valid MySQL code
+     * MySQL only accepts an OFFSET after a LIMIT, so an offset without a limit uses the largest row count MySQL has
+     * @param select the select query
+     * @param result The SQL being built
      */
     @Override
-    public String formatUpdate(Update<?> update) {
-        String tableName = update.getTableName();
-
-        if(tableName == null || tableName.isEmpty())
-            throw new IllegalStateException("Table name not specified");
-
-        StringBuilder result = new StringBuilder(String.format("UPDATE %s SET ", tableName));
-
-        Map<String, Object> setConditions = update.getSetConditions();
-
-        Iterator<String> columnNameIterator = setConditions.keySet().iterator();
-
-        if(setConditions.isEmpty() && update.getStringSetConditions().isEmpty())
-            throw new IllegalStateException("No column values found to modify");
-
-        while (columnNameIterator.hasNext()){
-            String columnName = columnNameIterator.next();
-            Object value = setConditions.get(columnName);
-
-            String formatString = (value != null && (String.class.isAssignableFrom(value.getClass()) ||
-                    java.util.Date.class.isAssignableFrom(value.getClass()))) ? "%s = '%s'" : "%s = %s";
-
-            if(columnNameIterator.hasNext())
-                result.append(String.format(String.format("%s, ", formatString), columnName, escape(value)));
-            else
-                result.append(String.format(String.format("%s ", formatString), columnName, escape(value)));
-        }
-
-        List<String> stringSetConditions = update.getStringSetConditions();
-
-        if(stringSetConditions.size() > 0  && !setConditions.isEmpty()){
-            result.append(", ");
-        }
-
-        for(int i=0; i<stringSetConditions.size(); i++){
-            String condition = stringSetConditions.get(i);
-
-            if(i != stringSetConditions.size() - 1) {
-                result.append(String.format("%s, ", condition));
-            } else {
-                result.append(String.format("%s ", condition));
-            }
+    protected void appendLimit(Select<?> select, StringBuilder result) {
+        if(select.getLimit() == -1 && select.getOffset() > 0) {
+            appendSpace(result);
+            result.append("LIMIT 18446744073709551615 ");
         }
 
-        Map<String, Object> whereConditions = update.getWhereConditions();
-
-        boolean whereAppended = false;
-
-        if(whereConditions != null && !whereConditions.isEmpty()){
-            result.append("WHERE ");
-            whereAppended = true;
-            appendConditions(whereConditions, result);
-        }
-
-        List<String> stringWhereConditions = update.getStringWhereConditions();
-
-        if(stringWhereConditions != null && !stringWhereConditions.isEmpty()){
-            if(!whereAppended) {
-                result.append("WHERE ");
-                whereAppended = true;
-            } else result.append("AND ");
-
-            appendConditions(stringWhereConditions, result);
-        }
-
-        appendGenericConditions(update, result, whereAppended);
-
-        return result.toString().trim();
+        super.appendLimit(select, result);
     }
 
     /**
-     * Format an Insert object as a valid raw SQL string for the MySQL database
-     * @param insert the insert query
-     * @return valid MySQL code
+     * MySQL accepts at most 65535 bind parameters in a single statement
      */
     @Override
-    public String formatInsert(Insert<?> insert) {
-        String tableName = insert.getTableName();
-
-        if(tableName == null || tableName.isEmpty())
-            throw new IllegalStateException("Table name not specified");
-
-        Map<String, Object> columnValues = insert.getColumnValues();
-
-        if(columnValues.isEmpty())
-            throw new IllegalStateException("No values found to be inserted");
-
-        StringBuilder result = new StringBuilder(String.format("INSERT INTO %s(", tableName));
-
-        String[] columnNames = columnValues.keySet().toArray(new String[]{});
-
-        StringBuilder valuesString = new StringBuilder("VALUES(");
-
-        for (int i=0; i<columnNames.length; i++){
-            String columnName =  columnNames[i];
-
-            if(i != columnNames.length - 1)
-                result.append(String.format("%s, ", columnName));
-            else
-                result.append(String.format("%s) ", columnName));
-
-            Object value =  columnValues.get(columnNames[i]);
-
-            String formatString = (value != null && (String.class.isAssignableFrom(value.getClass()) ||
-                    java.util.Date.class.isAssignableFrom(value.getClass()))) ? "'%s'" : "%s";
-
-            if(i != columnNames.length - 1)
-                valuesString.append(String.format("%s, ", String.format(formatString, escape(value))));
-            else
-                valuesString.append(String.format("%s)", String.format(formatString, escape(value))));
-        }
-
-        return result.append(valuesString).toString().trim();
+    public int getMaxParameters() {
+        return 65535;
     }
 
     /**
-     * Format a Delete object as a valid raw SQL string for the MySQL database
-     * @param delete the delete query
-     * @return valid MySQL code
+     * Drops a temporary table without committing the current transaction, as a plain DROP TABLE would
      */
     @Override
-    public String formatDelete(Delete<?> delete) {
-        String tableName = delete.getTableName();
-
-        if(tableName == null || tableName.isEmpty())
-            throw new IllegalStateException("Table name not specified");
-
-        StringBuilder result = new StringBuilder(String.format("DELETE FROM %s ", tableName));
-
-        Map<String, Object> whereConditions = delete.getWhereConditions();
-
-        boolean whereAppended = false;
+    public String formatDropTempTable(String table) {
+        return "DROP TEMPORARY TABLE " + table;
+    }
 
-        if(whereConditions != null && !whereConditions.isEmpty()){
-            result.append("WHERE ");
-            whereAppended = true;
-            appendConditions(whereConditions, result);
+    /**
+     * MySQL upserts with <code>ON DUPLICATE KEY UPDATE column = VALUES(column)</code>. If no columns are updated,
+     * the first key column is set to itself, so that existing rows are left as they are
+     */
+    @Override
+    protected void appendUpsert(Upsert<?> upsert, String tableName, List<String> columns,
+                                List<Map<String, Object>> rows, StringBuilder result, List<Object> parameters) {
+        appendInsertRows(tableName, columns, rows, result, parameters);
+        result.append(" ON DUPLICATE KEY UPDATE ");
+
+        List<String> updateColumns = upsert.getUpdateColumns();
+        if(updateColumns.isEmpty()) {
+            String key = upsert.getKeyColumns().get(0);
+            result.append(key).append(" = ").append(key);
+            return;
         }
 
-        List<String> stringWhereConditions = delete.getStringWhereConditions();
-
-        if(stringWhereConditions != null && !stringWhereConditions.isEmpty()){
-            if(!whereAppended) {
-                result.append("WHERE ");
-                whereAppended = true;
-            } else result.append("AND ");
-
-            appendConditions(stringWhereConditions, result);
+        for(int i = 0; i < updateColumns.size(); i++){
+            String column = updateColumns.get(i);
+            result.append(column).append(" = VALUES(").append(column).append(')');
+            if(i != updateColumns.size() - 1) result.append(", ");
         }
+    }
 
-        appendGenericConditions(delete, result, !whereAppended);
-
-        return result.toString().trim();
+    /**
+     * MySQL reports deadlocks with error 1213 and lock wait timeouts with error 1205
+     */
+    @Override
+    public boolean isRetryable(SQLException exception) {
+        int code = exception.getErrorCode();
+        return code == 1213 || code == 1205 || super.isRetryable(exception);
     }
 }
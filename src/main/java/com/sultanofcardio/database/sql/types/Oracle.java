@@ -1,22 +1,28 @@
 package com.sultanofcardio.database.sql.types;
 
-import com.sultanofcardio.database.sql.statement.Delete;
-import com.sultanofcardio.database.sql.statement.Insert;
 import com.sultanofcardio.database.sql.statement.Select;
-import com.sultanofcardio.database.sql.statement.Update;
+import com.sultanofcardio.database.sql.statement.Upsert;
 
-import java.util.Iterator;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-
-import static com.sultanofcardio.database.sql.statement.Statement.escape;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Support for database connections to Oracle database servers
  */
-@SuppressWarnings("Duplicates")
 public final class Oracle extends DatabaseType {
 
+    private static final String NAME = "(?:\"[^\"]+\"|[A-Za-z][\\w$#]*)";
+    private static final Pattern PLAIN_COLUMN = Pattern.compile("\\s*(?:" + NAME + "\\s*\\.\\s*)*(" + NAME + ")\\s*");
+    private static final Pattern ALIASED_COLUMN = Pattern.compile("(?is)(?:.*?\\s+AS|\\s*(?:" + NAME +
+            "\\s*\\.\\s*)*" + NAME + ")\\s+(" + NAME + ")\\s*");
+
     Oracle(){
         super("Oracle", "jdbc:oracle:thin:@%s:%s:%s", "oracle.jdbc.driver.OracleDriver");
     }
@@ -36,239 +42,212 @@ public final class Oracle extends DatabaseType {
     }
 
     /**
-     * Format a Select object as a valid raw SQL string for the Oracle database
+     * Oracle limits the rows of an unordered query with a <code>ROWNUM &lt;= n</code> condition. ROWNUM is
+     * assigned before rows are sorted, so ordered queries and queries that skip rows are wrapped instead
      * @param select the select query
-     * @return valid Oracle SQL code
+     * @param result The SQL being built
+     * @param whereAppended whether or not a WHERE clause has already been started
+     * @see #formatSelect(Select, List)
      */
     @Override
-    public String formatSelect(Select<?> select) {
-        StringBuilder result = new StringBuilder(select.isDistinct() ? "SELECT DISTINCT " : "SELECT ");
-        String[] columns = select.getColumns();
-        if(columns != null && columns.length > 0) {
-            for (int i = 0; i < columns.length; i++) {
-                String column = columns[i];
-                if (i != columns.length - 1)
-                    result.append(String.format("%s, ", escape(column)));
-                else
-                    result.append(String.format("%s ", escape(column)));
-            }
-        } else {
-            result.append("* ");
-        }
-
-        String tableName = select.getTableName();
-
-        if(tableName == null || tableName.isEmpty())
-            throw new IllegalStateException("Table name not specified");
-
-        result.append(String.format("FROM %s ", tableName));
-
-        Map<String, Object> whereConditions = select.getWhereConditions();
-
-        boolean whereAppended = false;
-
-        if(whereConditions != null && !whereConditions.isEmpty()){
-            result.append("WHERE ");
-            whereAppended = true;
-            appendConditions(whereConditions, result);
+    protected void appendRowLimitCondition(Select<?> select, StringBuilder result, boolean whereAppended) {
+        if (select.getLimit() != -1 && !isWrapped(select)) {
+            result.append(whereAppended ? "AND " : "WHERE ");
+            result.append("ROWNUM <= ").append(select.getLimit()).append(' ');
         }
+    }
 
-        List<String> stringWhereConditions = select.getStringWhereConditions();
-
-        if(stringWhereConditions != null && !stringWhereConditions.isEmpty()){
-            if(!whereAppended) {
-                result.append("WHERE ");
-                whereAppended = true;
-            } else result.append("AND ");
+    /**
+     * Ordered queries with a limit and queries that skip rows are wrapped in a subquery, so that ROWNUM is
+     * assigned after the rows are sorted: <code>SELECT * FROM (...) WHERE ROWNUM &lt;= n</code>. Rows are skipped
+     * by numbering them in a second subquery, and the outer query selects the columns of the page by name, so that
+     * the row numbers are not returned. Unlike <code>FETCH FIRST n ROWS ONLY</code>, this works on every version of
+     * Oracle, and Oracle still stops sorting once it has the first n rows. <br><br>
+     *
+     * A query that skips rows but selects <code>*</code>, or a column it does not name, cannot be wrapped that way,
+     * so it is rendered with <code>OFFSET m ROWS FETCH NEXT n ROWS ONLY</code> instead, which needs Oracle 12c
+     * @param select the select query
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     * @return The formatted query
+     */
+    @Override
+    public String formatSelect(Select<?> select, List<Object> parameters) {
+        String query = super.formatSelect(select, parameters);
+        if(!isWrapped(select)) return query;
+
+        StringBuilder result = acquireBuilder();
+        try {
+            long offset = select.getOffset();
+            int limit = select.getLimit();
+
+            if(offset == 0) {
+                result.append("SELECT * FROM (").append(query).append(") WHERE ROWNUM <= ").append(limit);
+                return result.toString();
+            }
 
-            appendConditions(stringWhereConditions, result);
-        }
+            List<String> names = getColumnNames(select);
+            if(names == null) {
+                result.append(query).append(" OFFSET ").append(offset).append(" ROWS");
+                if(limit != -1)
+                    result.append(" FETCH NEXT ").append(limit).append(" ROWS ONLY");
 
-        appendGenericConditions(select, result, !whereAppended);
+                return result.toString();
+            }
 
-        if (select.getLimit() != -1) {
-            if(!whereAppended) {
-                result.append("WHERE ");
-            } else result.append("AND ");
+            result.append("SELECT ").append(String.join(", ", names))
+                    .append(" FROM (SELECT hoverdb_page.*, ROWNUM hoverdb_rownum FROM (").append(query)
+                    .append(") hoverdb_page");
+            if(limit != -1)
+                result.append(" WHERE ROWNUM <= ").append(offset + limit);
 
-            result.append(String.format("ROWNUM <= %s ", select.getLimit()));
+            result.append(") WHERE hoverdb_rownum > ").append(offset);
+            return result.toString();
+        } finally {
+            releaseBuilder(result);
         }
+    }
 
-        List<String> orderBy = select.getOrderBy();
-
-        if(orderBy != null && orderBy.size() > 0){
-            result.append("ORDER BY ");
-            for(int i=0; i < orderBy.size(); i++) {
-                String orderByCondition = orderBy.get(i);
-                result.append(orderByCondition);
-
-                if(i != orderBy.size() - 1)
-                    result.append(", ");
+    private static boolean isWrapped(Select<?> select) {
+        return select.getOffset() > 0 || (select.getLimit() != -1 && select.isOrdered());
+    }
 
-            }
+    /**
+     * Get the names of the columns a select returns, as the query wrapping it can refer to them: the alias of a
+     * column if it has one, or the column itself without its table
+     * @return the names, or null if the select returns <code>*</code>, a column without a name, or two columns with
+     * the same name
+     */
+    private static List<String> getColumnNames(Select<?> select) {
+        String[] columns = select.getColumns();
+        if(columns == null || columns.length == 0) return null;
+
+        List<String> names = new ArrayList<>(columns.length);
+        Set<String> seen = new HashSet<>();
+        for(String column: columns){
+            if(column == null) return null;
+
+            String name;
+            Matcher alias = ALIASED_COLUMN.matcher(column);
+            Matcher plain = PLAIN_COLUMN.matcher(column);
+            if(alias.matches()) name = alias.group(1);
+            else if(plain.matches()) name = plain.group(1);
+            else return null;
+
+            boolean quoted = name.startsWith("\"");
+            if(!seen.add(quoted ? name : name.toUpperCase(Locale.ROOT))) return null;
+            names.add(name);
         }
 
-        return result.toString().trim();
+        return names;
     }
 
     /**
-     * Format an Update object as a valid raw SQL string for the Oracle database
-     * @param update the update query
-     * @return valid Oracle SQL code
+     * Oracle only compares row values for equality, so seek conditions are expanded
+     * @see #appendExpandedSeekCondition(Select, StringBuilder, List)
      */
     @Override
-    public String formatUpdate(Update<?> update) {
-        String tableName = update.getTableName();
-
-        if(tableName == null || tableName.isEmpty())
-            throw new IllegalStateException("Table name not specified");
-
-        StringBuilder result = new StringBuilder(String.format("UPDATE %s SET ", tableName));
-
-        Map<String, Object> setConditions = update.getSetConditions();
-
-        Iterator<String> columnNameIterator = setConditions.keySet().iterator();
-
-        if(setConditions.isEmpty() && update.getStringSetConditions().isEmpty())
-            throw new IllegalStateException("No column values found to modify");
+    protected void appendSeekCondition(Select<?> select, StringBuilder result, List<Object> parameters) {
+        appendExpandedSeekCondition(select, result, parameters);
+    }
 
-        while (columnNameIterator.hasNext()){
-            String columnName = columnNameIterator.next();
-            Object value = setConditions.get(columnName);
+    /**
+     * Oracle has no LIMIT clause
+     * @see #appendRowLimitCondition(Select, StringBuilder, boolean)
+     */
+    @Override
+    protected void appendLimit(Select<?> select, StringBuilder result) {
+    }
 
-            String formatString = (value != null && (String.class.isAssignableFrom(value.getClass()) ||
-                    java.util.Date.class.isAssignableFrom(value.getClass()))) ? "%s = '%s'" : "%s = %s";
+    /**
+     * Oracle accepts at most 65535 bind parameters in a single statement
+     */
+    @Override
+    public int getMaxParameters() {
+        return 65535;
+    }
 
-            if(columnNameIterator.hasNext())
-                result.append(String.format(String.format("%s, ", formatString), columnName, escape(value)));
-            else
-                result.append(String.format(String.format("%s ", formatString), columnName, escape(value)));
-        }
+    /**
+     * Oracle accepts at most 1000 values in a single IN list
+     */
+    @Override
+    public int getMaxInListSize() {
+        return 1000;
+    }
 
-        List<String> stringSetConditions = update.getStringSetConditions();
+    /**
+     * Oracle versions before 18c cannot create temporary tables on the fly, so large IN lists are always split
+     * instead
+     */
+    @Override
+    public String formatCreateTempTable(String table, String column, boolean numeric, int length) {
+        return null;
+    }
 
-        if(stringSetConditions.size() > 0 && !setConditions.isEmpty()){
-            result.append(", ");
+    /**
+     * Oracle has no multi-row VALUES list, so several rows are inserted with
+     * <code>INSERT ALL INTO ... VALUES(...) INTO ... VALUES(...) SELECT 1 FROM DUAL</code>
+     * @param tableName the table to insert into
+     * @param columns the columns to insert into
+     * @param rows the rows to insert
+     * @param result The SQL being built
+     * @param parameters Collects the values bound to placeholders, or null to inline every value
+     */
+    @Override
+    protected void appendInsertRows(String tableName, List<String> columns, List<Map<String, Object>> rows,
+                                    StringBuilder result, List<Object> parameters) {
+        if(rows.size() == 1) {
+            super.appendInsertRows(tableName, columns, rows, result, parameters);
+            return;
         }
 
-        for(int i=0; i<stringSetConditions.size(); i++){
-            String condition = stringSetConditions.get(i);
-
-            if(i != stringSetConditions.size() - 1) {
-                result.append(String.format("%s, ", condition));
-            } else {
-                result.append(String.format("%s ", condition));
+        result.append("INSERT ALL ");
+        for(Map<String, Object> row: rows){
+            result.append("INTO ").append(tableName).append('(');
+            for(int i = 0; i < columns.size(); i++){
+                result.append(columns.get(i)).append(i != columns.size() - 1 ? ", " : ") ");
             }
+            result.append("VALUES");
+            appendInsertValues(columns, row, result, parameters);
+            result.append(' ');
         }
-
-        Map<String, Object> whereConditions = update.getWhereConditions();
-
-        boolean whereAppended = false;
-
-        if(whereConditions != null && !whereConditions.isEmpty()){
-            result.append("WHERE ");
-            whereAppended = true;
-            appendConditions(whereConditions, result);
-        }
-
-        List<String> stringWhereConditions = update.getStringWhereConditions();
-
-        if(stringWhereConditions != null && !stringWhereConditions.isEmpty()){
-            if(!whereAppended) {
-                result.append("WHERE ");
-                whereAppended = true;
-            } else result.append("AND ");
-
-            appendConditions(stringWhereConditions, result);
-        }
-
-        appendGenericConditions(update, result, whereAppended);
-
-        return result.toString().trim();
+        result.append("SELECT 1 FROM DUAL");
     }
 
     /**
-     * Format an Insert object as a valid raw SQL string for the Oracle database
-     * @param insert the insert query
-     * @return valid Oracle SQL code
+     * Oracle upserts with MERGE
      */
     @Override
-    public String formatInsert(Insert<?> insert) {
-        String tableName = insert.getTableName();
-
-        if(tableName == null || tableName.isEmpty())
-            throw new IllegalStateException("Table name not specified");
-
-        Map<String, Object> columnValues = insert.getColumnValues();
-
-        if(columnValues.isEmpty())
-            throw new IllegalStateException("No values found to be inserted");
-
-        StringBuilder result = new StringBuilder(String.format("INSERT INTO %s(", tableName));
-
-        String[] columnNames = columnValues.keySet().toArray(new String[]{});
-
-        StringBuilder valuesString = new StringBuilder("VALUES(");
-
-        for (int i=0; i<columnNames.length; i++){
-            String columnName =  columnNames[i];
-
-            if(i != columnNames.length - 1)
-                result.append(String.format("%s, ", columnName));
-            else
-                result.append(String.format("%s) ", columnName));
-
-            Object value =  columnValues.get(columnNames[i]);
-
-            String formatString = (value != null && (String.class.isAssignableFrom(value.getClass()) ||
-                    java.util.Date.class.isAssignableFrom(value.getClass()))) ? "'%s'" : "%s";
-
-            if(i != columnNames.length - 1)
-                valuesString.append(String.format("%s, ", String.format(formatString, escape(value))));
-            else
-                valuesString.append(String.format("%s)", String.format(formatString, escape(value))));
-        }
-
-        return result.append(valuesString).toString().trim();
+    protected void appendUpsert(Upsert<?> upsert, String tableName, List<String> columns,
+                                List<Map<String, Object>> rows, StringBuilder result, List<Object> parameters) {
+        appendMerge(upsert, tableName, columns, rows, result, parameters);
     }
 
     /**
-     * Format a Delete object as a valid raw SQL string for the Oracle database
-     * @param delete the delete query
-     * @return valid Oracle SQL code
+     * Oracle has no VALUES lists outside of inserts, so the source rows of a MERGE are selected from DUAL and
+     * joined with <code>UNION ALL</code>
      */
     @Override
-    public String formatDelete(Delete<?> delete) {
-        String tableName = delete.getTableName();
-
-        if(tableName == null || tableName.isEmpty())
-            throw new IllegalStateException("Table name not specified");
-
-        StringBuilder result = new StringBuilder(String.format("DELETE FROM %s ", tableName));
-
-        Map<String, Object> whereConditions = delete.getWhereConditions();
-
-        boolean whereAppended = false;
-
-        if(whereConditions != null && !whereConditions.isEmpty()){
-            result.append("WHERE ");
-            whereAppended = true;
-            appendConditions(whereConditions, result);
-        }
-
-        List<String> stringWhereConditions = delete.getStringWhereConditions();
-
-        if(stringWhereConditions != null && !stringWhereConditions.isEmpty()){
-            if(!whereAppended) {
-                result.append("WHERE ");
-                whereAppended = true;
-            } else result.append("AND ");
-
-            appendConditions(stringWhereConditions, result);
+    protected void appendMergeSource(List<String> columns, List<Map<String, Object>> rows, StringBuilder result,
+                                     List<Object> parameters) {
+        result.append('(');
+        for(int i = 0; i < rows.size(); i++){
+            if(i > 0) result.append(" UNION ALL ");
+            result.append("SELECT ");
+            for(int j = 0; j < columns.size(); j++){
+                appendValue(rows.get(i).get(columns.get(j)), result, parameters);
+                result.append(' ').append(columns.get(j)).append(j != columns.size() - 1 ? ", " : " ");
+            }
+            result.append("FROM DUAL");
         }
+        result.append(") hoverdb_source");
+    }
 
-        appendGenericConditions(delete, result, !whereAppended);
-
-        return result.toString().trim();
+    /**
+     * Oracle reports deadlocks with ORA-00060 and serialization failures with ORA-08177
+     */
+    @Override
+    public boolean isRetryable(SQLException exception) {
+        int code = exception.getErrorCode();
+        return code == 60 || code == 8177 || super.isRetryable(exception);
     }
 }
@@ -1,20 +1,15 @@
 package com.sultanofcardio.database.sql.types;
 
-import com.sultanofcardio.database.sql.statement.Delete;
-import com.sultanofcardio.database.sql.statement.Insert;
 import com.sultanofcardio.database.sql.statement.Select;
-import com.sultanofcardio.database.sql.statement.Update;
+import com.sultanofcardio.database.sql.statement.Upsert;
 
-import java.util.Iterator;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
 
-import static com.sultanofcardio.database.sql.statement.Statement.escape;
-
 /**
  * Support for database connections to SQLServer database servers
  */
-@SuppressWarnings("Duplicates")
 public final class SQLServer extends DatabaseType {
 
     SQLServer(){
@@ -36,236 +31,89 @@ public final class SQLServer extends DatabaseType {
     }
 
     /**
-     * Format a Select object as a valid raw SQL string for the SQLServer database
+     * SQLServer limits rows with a <code>TOP n</code> clause right after the SELECT keyword, unless rows are skipped
      * @param select the select query
-     * @return valid SQLServer SQL code
+     * @param result The SQL being built
      */
     @Override
-    public String formatSelect(Select<?> select) {
-        String topString = select.getLimit() != -1 ? "TOP %s " : "";
-        StringBuilder result = new StringBuilder(select.isDistinct() ? String.format("SELECT DISTINCT %s", topString) :
-                String.format("SELECT %s", topString));
-        String[] columns = select.getColumns();
-        if(columns != null && columns.length > 0) {
-            for (int i = 0; i < columns.length; i++) {
-                String column = columns[i];
-                if (i != columns.length - 1)
-                    result.append(String.format("%s, ", escape(column)));
-                else
-                    result.append(String.format("%s ", escape(column)));
-            }
-        } else {
-            result.append("* ");
-        }
-
-        String tableName = select.getTableName();
-
-        if(tableName == null || tableName.isEmpty())
-            throw new IllegalStateException("Table name not specified");
-
-        result.append(String.format("FROM %s ", tableName));
-
-        Map<String, Object> whereConditions = select.getWhereConditions();
-
-        boolean whereAppended = false;
-
-        if(whereConditions != null && !whereConditions.isEmpty()){
-            result.append("WHERE ");
-            whereAppended = true;
-            appendConditions(whereConditions, result);
-        }
-
-        List<String> stringWhereConditions = select.getStringWhereConditions();
+    protected void appendTop(Select<?> select, StringBuilder result) {
+        if(select.getLimit() != -1 && select.getOffset() == 0)
+            result.append("TOP ").append(select.getLimit()).append(' ');
+    }
 
-        if(stringWhereConditions != null && !stringWhereConditions.isEmpty()){
-            if(!whereAppended) {
-                result.append("WHERE ");
-                whereAppended = true;
-            } else result.append("AND ");
+    /**
+     * SQLServer has no row value comparisons, so seek conditions are expanded
+     * @see #appendExpandedSeekCondition(Select, StringBuilder, List)
+     */
+    @Override
+    protected void appendSeekCondition(Select<?> select, StringBuilder result, List<Object> parameters) {
+        appendExpandedSeekCondition(select, result, parameters);
+    }
 
-            appendConditions(stringWhereConditions, result);
-        }
+    /**
+     * SQLServer has no LIMIT clause. Rows are skipped with <code>OFFSET m ROWS FETCH NEXT n ROWS ONLY</code>,
+     * which is only allowed after an ORDER BY clause, so unordered queries are ordered by
+     * <code>(SELECT NULL)</code>
+     * @see #appendTop(Select, StringBuilder)
+     */
+    @Override
+    protected void appendLimit(Select<?> select, StringBuilder result) {
+        if(select.getOffset() == 0) return;
 
-        appendGenericConditions(select, result, !whereAppended);
+        if(!select.isOrdered())
+            result.append("ORDER BY (SELECT NULL)");
 
+        result.append(" OFFSET ").append(select.getOffset()).append(" ROWS");
         if(select.getLimit() != -1)
-            result = new StringBuilder(String.format(result.toString(), select.getLimit()));
-
-        List<String> orderBy = select.getOrderBy();
-
-        if(orderBy != null && orderBy.size() > 0){
-            result.append("ORDER BY ");
-            for(int i=0; i < orderBy.size(); i++) {
-                String orderByCondition = orderBy.get(i);
-                result.append(orderByCondition);
-
-                if(i != orderBy.size() - 1)
-                    result.append(", ");
-
-            }
-        }
-
-        return result.toString().trim();
+            result.append(" FETCH NEXT ").append(select.getLimit()).append(" ROWS ONLY");
     }
 
     /**
-     * Format an Update object as a valid raw SQL string for the SQLServer database
-     * @param update the update query
-     * @return valid SQLServer SQL code
+     * SQLServer accepts at most 2100 bind parameters in a single statement
      */
     @Override
-    public String formatUpdate(Update<?> update) {
-        String tableName = update.getTableName();
-
-        if(tableName == null || tableName.isEmpty())
-            throw new IllegalStateException("Table name not specified");
-
-        StringBuilder result = new StringBuilder(String.format("UPDATE %s SET ", tableName));
-
-        Map<String, Object> setConditions = update.getSetConditions();
-
-        Iterator<String> columnNameIterator = setConditions.keySet().iterator();
-
-        if(setConditions.isEmpty() && update.getStringSetConditions().isEmpty())
-            throw new IllegalStateException("No column values found to modify");
-
-        while (columnNameIterator.hasNext()){
-            String columnName = columnNameIterator.next();
-            Object value = setConditions.get(columnName);
-
-            String formatString = (value != null && (String.class.isAssignableFrom(value.getClass()) ||
-                    java.util.Date.class.isAssignableFrom(value.getClass()))) ? "%s = '%s'" : "%s = %s";
-
-            if(columnNameIterator.hasNext())
-                result.append(String.format(String.format("%s, ", formatString), columnName, escape(value)));
-            else
-                result.append(String.format(String.format("%s ", formatString), columnName, escape(value)));
-        }
-
-        List<String> stringSetConditions = update.getStringSetConditions();
-
-        if(stringSetConditions.size() > 0 && !setConditions.isEmpty()){
-            result.append(", ");
-        }
-
-        for(int i=0; i<stringSetConditions.size(); i++){
-            String condition = stringSetConditions.get(i);
-
-            if(i != stringSetConditions.size() - 1) {
-                result.append(String.format("%s, ", condition));
-            } else {
-                result.append(String.format("%s ", condition));
-            }
-        }
-
-        Map<String, Object> whereConditions = update.getWhereConditions();
-
-        boolean whereAppended = false;
-
-        if(whereConditions != null && !whereConditions.isEmpty()){
-            result.append("WHERE ");
-            whereAppended = true;
-            appendConditions(whereConditions, result);
-        }
-
-        List<String> stringWhereConditions = update.getStringWhereConditions();
-
-        if(stringWhereConditions != null && !stringWhereConditions.isEmpty()){
-            if(!whereAppended) {
-                result.append("WHERE ");
-                whereAppended = true;
-            } else result.append("AND ");
-
-            appendConditions(stringWhereConditions, result);
-        }
-
-        appendGenericConditions(update, result, whereAppended);
-
-        return result.toString().trim();
+    public int getMaxParameters() {
+        return 2100;
     }
 
     /**
-     * Format an Insert object as a valid raw SQL string for the SQLServer database
-     * @param insert the insert query
-     * @return valid SQLServer SQL code
+     * Tables whose names start with <code>#</code> are local to the connection that creates them
      */
     @Override
-    public String formatInsert(Insert<?> insert) {
-        String tableName = insert.getTableName();
-
-        if(tableName == null || tableName.isEmpty())
-            throw new IllegalStateException("Table name not specified");
-
-        Map<String, Object> columnValues = insert.getColumnValues();
-
-        if(columnValues.isEmpty())
-            throw new IllegalStateException("No values found to be inserted");
-
-        StringBuilder result = new StringBuilder(String.format("INSERT INTO %s(", tableName));
-
-        String[] columnNames = columnValues.keySet().toArray(new String[]{});
-
-        StringBuilder valuesString = new StringBuilder("VALUES(");
-
-        for (int i=0; i<columnNames.length; i++){
-            String columnName =  columnNames[i];
-
-            if(i != columnNames.length - 1)
-                result.append(String.format("%s, ", columnName));
-            else
-                result.append(String.format("%s) ", columnName));
-
-            Object value =  columnValues.get(columnNames[i]);
-
-            String formatString = (value != null && (String.class.isAssignableFrom(value.getClass()) ||
-                    java.util.Date.class.isAssignableFrom(value.getClass()))) ? "'%s'" : "%s";
-
-            if(i != columnNames.length - 1)
-                valuesString.append(String.format("%s, ", String.format(formatString, escape(value))));
-            else
-                valuesString.append(String.format("%s)", String.format(formatString, escape(value))));
-        }
+    public String getTempTableName(String name) {
+        return "#" + name;
+    }
 
-        return result.append(valuesString).toString().trim();
+    @Override
+    public String formatCreateTempTable(String table, String column, boolean numeric, int length) {
+        return "CREATE TABLE " + table + " (" + column + " " + getTempKeyType(numeric, length) + ")";
     }
 
     /**
-     * Format a Delete object as a valid raw SQL string for the SQLServer database
-     * @param delete the delete query
-     * @return valid SQLServer SQL code
+     * SQLServer accepts at most 1000 rows in a single VALUES list
+     * @param columns the number of columns in each row
+     * @return the row limit
      */
     @Override
-    public String formatDelete(Delete<?> delete) {
-        String tableName = delete.getTableName();
-
-        if(tableName == null || tableName.isEmpty())
-            throw new IllegalStateException("Table name not specified");
-
-        StringBuilder result = new StringBuilder(String.format("DELETE FROM %s ", tableName));
-
-        Map<String, Object> whereConditions = delete.getWhereConditions();
-
-        boolean whereAppended = false;
-
-        if(whereConditions != null && !whereConditions.isEmpty()){
-            result.append("WHERE ");
-            whereAppended = true;
-            appendConditions(whereConditions, result);
-        }
-
-        List<String> stringWhereConditions = delete.getStringWhereConditions();
-
-        if(stringWhereConditions != null && !stringWhereConditions.isEmpty()){
-            if(!whereAppended) {
-                result.append("WHERE ");
-                whereAppended = true;
-            } else result.append("AND ");
-
-            appendConditions(stringWhereConditions, result);
-        }
+    public int getMaxInsertRows(int columns) {
+        return Math.min(1000, super.getMaxInsertRows(columns));
+    }
 
-        appendGenericConditions(delete, result, !whereAppended);
+    /**
+     * SQLServer upserts with MERGE, which must end with a semicolon
+     */
+    @Override
+    protected void appendUpsert(Upsert<?> upsert, String tableName, List<String> columns,
+                                List<Map<String, Object>> rows, StringBuilder result, List<Object> parameters) {
+        appendMerge(upsert, tableName, columns, rows, result, parameters);
+        result.append(';');
+    }
 
-        return result.toString().trim();
+    /**
+     * SQLServer reports that a transaction was chosen as a deadlock victim with error 1205
+     */
+    @Override
+    public boolean isRetryable(SQLException exception) {
+        return exception.getErrorCode() == 1205 || super.isRetryable(exception);
     }
 }
@@ -1,6 +1,8 @@
 package com.sultanofcardio.database;
 
 import com.sultanofcardio.database.models.BasicEntity;
+import com.sultanofcardio.database.models.InheritedWords;
+import com.sultanofcardio.database.models.MappedWords;
 import com.sultanofcardio.database.sql.FileDatabase;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -10,6 +12,7 @@ import java.sql.SQLException;
 import java.util.List;
 
 import static com.sultanofcardio.database.sql.types.Types.SQLite;
+import static org.junit.Assert.*;
 
 public class EntityTest {
 
@@ -58,4 +61,34 @@ public class EntityTest {
         System.out.println(basicEntity);
     }
 
+    @Test
+    public void testMappedEntity() throws Exception {
+        FileDatabase db = FileDatabase.getInstance("sqlitedb");
+        assertEquals(1, new MappedWords(db, "Mapped words").save());
+
+        List<MappedWords> all = new MappedWords(db, null).loadAll();
+        assertFalse(all.isEmpty());
+
+        MappedWords first = all.get(0);
+        MappedWords loaded = Entity.load(MappedWords.class, db, first.getId());
+        assertEquals(first.getId(), loaded.getId());
+        assertEquals(first.getWords(), loaded.getWords());
+    }
+
+    @Test
+    public void testMappedEntityInheritedColumns() throws Exception {
+        FileDatabase db = FileDatabase.getInstance("sqlitedb");
+        assertEquals(1, new InheritedWords(db, "Inherited words").save());
+
+        List<InheritedWords> all = new InheritedWords(db, null).loadAll();
+        assertFalse(all.isEmpty());
+
+        InheritedWords first = all.get(0);
+        assertTrue(first.getId() > 0);
+
+        InheritedWords loaded = Entity.load(InheritedWords.class, db, first.getId());
+        assertEquals(first.getId(), loaded.getId());
+        assertEquals(first.getWords(), loaded.getWords());
+    }
+
 }
@@ -2,15 +2,44 @@ package com.sultanofcardio.database
 
 import com.sultanofcardio.database.sql.Database
 import com.sultanofcardio.database.sql.MemoryDatabase
+import com.sultanofcardio.database.sql.QueryCache
+import com.sultanofcardio.database.sql.RetryPolicy
+import com.sultanofcardio.database.sql.SlowQuery
+import com.sultanofcardio.database.sql.SlowQueryLog
+import com.sultanofcardio.database.sql.StatementInterceptor
+import com.sultanofcardio.database.sql.StatementInvocation
+import com.sultanofcardio.database.sql.StatementMetrics
+import com.sultanofcardio.database.sql.VirtualThreadExecutor
+import com.sultanofcardio.database.sql.statement.Condition
+import com.sultanofcardio.database.sql.statement.Insert
+import com.sultanofcardio.database.sql.statement.Statement
 import com.sultanofcardio.database.sql.transaction
 import com.sultanofcardio.database.sql.types.Types
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordingFile
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.count
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
 import org.h2.tools.Server
 import org.junit.AfterClass
 import org.junit.Assert
+import org.junit.Assume
 import org.junit.BeforeClass
 import org.junit.Test
+import java.nio.file.Files
 import java.sql.ResultSet
 import java.sql.SQLException
+import java.sql.SQLTransactionRollbackException
+import java.sql.Timestamp
+import java.util.Date
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
 
 class H2MemTest {
 
@@ -95,6 +124,83 @@ class H2MemTest {
         }
     }
 
+    @Test
+    @Throws(SQLException::class)
+    fun h2TransactionRollback() {
+        val words = "Rolled back ${System.nanoTime()}"
+        val sizeBefore = database.pool.size
+
+        try {
+            database.transaction {
+                insert().into("test_table").value("words", words).run()
+                throw IllegalStateException("Roll back")
+            }
+        } catch (e: IllegalStateException) {
+        }
+
+        database.select().from("test_table").where("words", words).execute { resultSet: ResultSet ->
+            Assert.assertFalse(resultSet.next())
+        }
+
+        // The transaction leased its connection from the pool rather than opening a new one
+        Assert.assertEquals(sizeBefore, database.pool.size)
+        database.getConnection().use { Assert.assertTrue(it.autoCommit) }
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2NestedTransaction() {
+        val kept = "Kept ${System.nanoTime()}"
+        val discarded = "Discarded ${System.nanoTime()}"
+
+        database.transaction {
+            insert().into("test_table").value("words", kept).run()
+
+            try {
+                transaction {
+                    insert().into("test_table").value("words", discarded).run()
+                    throw IllegalStateException("Roll back to the savepoint")
+                }
+            } catch (e: IllegalStateException) {
+            }
+        }
+
+        database.select().from("test_table").where("words", kept).execute { resultSet: ResultSet ->
+            Assert.assertTrue(resultSet.next())
+        }
+        database.select().from("test_table").where("words", discarded).execute { resultSet: ResultSet ->
+            Assert.assertFalse(resultSet.next())
+        }
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2RetryTransaction() {
+        val words = "Retried ${System.nanoTime()}"
+        val policy = RetryPolicy().setInitialBackoff(1)
+        var attempts = 0
+
+        database.transaction(retryPolicy = policy) {
+            insert().into("test_table").value("words", words).run()
+            if (++attempts == 1) throw SQLTransactionRollbackException("Deadlock", "40001")
+        }
+
+        // The first attempt was rolled back, so the row was only inserted once
+        database.select("COUNT(*)").from("test_table").where("words", words).execute { resultSet: ResultSet ->
+            Assert.assertTrue(resultSet.next())
+            Assert.assertEquals(1, resultSet.getInt(1))
+        }
+        Assert.assertEquals(2, attempts)
+        Assert.assertEquals(1, policy.retries)
+        Assert.assertEquals(1, policy.recoveries)
+
+        try {
+            database.transaction(retryPolicy = policy) { throw IllegalStateException("Not retryable") }
+        } catch (e: IllegalStateException) {
+        }
+        Assert.assertEquals(1, policy.retries)
+    }
+
     @Test
     @Throws(SQLException::class)
     fun h2InsertTest() {
@@ -115,6 +221,34 @@ class H2MemTest {
         Assert.assertNotEquals(-1, result)
     }
 
+    @Test
+    @Throws(SQLException::class)
+    fun h2PooledConnections() {
+        database.getConnection().use { first ->
+            database.getConnection().use { second ->
+                Assert.assertNotSame(first, second)
+                Assert.assertTrue(database.pool.size >= 2)
+            }
+        }
+
+        Assert.assertEquals(database.pool.size, database.pool.idleCount)
+        h2SelectTest()
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2StatementCache() {
+        h2InsertTest()
+        val select = database.select()
+                .from("test_table")
+                .where("id", 1)
+
+        database.execute(select) { resultSet: ResultSet -> Assert.assertNotNull(resultSet) }
+        val hits = database.pool.statementCacheHits
+        database.execute(select.where("id", 2)) { resultSet: ResultSet -> Assert.assertNotNull(resultSet) }
+        Assert.assertEquals(hits + 1, database.pool.statementCacheHits)
+    }
+
     @Test
     fun h2FormatSelect() {
         val select = database.select()
@@ -126,6 +260,521 @@ class H2MemTest {
         Assert.assertEquals("SELECT * FROM SOME_TABLE WHERE id = 24", selectQuery)
     }
 
+    @Test
+    fun h2FormatSeekAfter() {
+        val bound = database.select()
+                .from("SOME_TABLE")
+                .where("kind", 1)
+                .seekAfter(listOf("created", "id"), listOf(100, 24))
+                .limit(10)
+                .bind()
+        println(bound.sql)
+        Assert.assertEquals("SELECT * FROM SOME_TABLE WHERE kind = ? AND (created, id) > (?, ?) ORDER BY created, id LIMIT 10",
+                bound.sql)
+        Assert.assertEquals(listOf(1, 100, 24), bound.parameters)
+    }
+
+    @Test
+    fun h2BindConditions() {
+        val bound = database.select()
+                .from("SOME_TABLE")
+                .where("kind", 1)
+                .where(Condition.between("created", 10, 20)
+                        .and(Condition.`in`("status", "NEW", "PAID").or(Condition.isNull("status")))
+                        .and(Condition.not(Condition.like("name", "test%"))))
+                .bind()
+        println(bound.sql)
+        Assert.assertEquals("SELECT * FROM SOME_TABLE WHERE kind = ? AND (created BETWEEN ? AND ? AND " +
+                "(status IN (?, ?) OR status IS NULL) AND NOT (name LIKE ?))", bound.sql)
+        Assert.assertEquals(listOf(1, 10, 20, "NEW", "PAID", "test%"), bound.parameters)
+    }
+
+    @Test
+    fun h2ConditionQuery() {
+        database.insert().into("test_table").value("words", "Condition A").run()
+        database.insert().into("test_table").value("words", "Condition B").run()
+
+        val words = database.select("words")
+                .from("test_table")
+                .where(Condition.like("words", "Condition %").and(Condition.ne("words", "Condition B")))
+                .execute().use { resources -> resources.resultSet!!.list { it.getString("words") } }
+
+        Assert.assertTrue(words.isNotEmpty())
+        Assert.assertTrue(words.all { it == "Condition A" })
+    }
+
+    @Test
+    fun h2BindSelect() {
+        val bound = database.select()
+                .from("SOME_TABLE")
+                .where("id", 24)
+                .bind()
+        println(bound.sql)
+        Assert.assertEquals("SELECT * FROM SOME_TABLE WHERE id = ?", bound.sql)
+        Assert.assertEquals(listOf(24), bound.parameters)
+    }
+
+    @Test
+    fun h2BindDate() {
+        val date = Date()
+        val bound = database.select()
+                .from("SOME_TABLE")
+                .where("created", date)
+                .bind()
+        Assert.assertEquals("SELECT * FROM SOME_TABLE WHERE created = ?", bound.sql)
+        Assert.assertEquals(listOf(Timestamp(date.time)), bound.parameters)
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2BindInsert() {
+        val words = "Don't inline this"
+        val inserted = database.insert()
+                .into("test_table")
+                .value("words", words)
+                .run()
+
+        Assert.assertEquals(1L, inserted)
+
+        database.select()
+                .from("test_table")
+                .where("words", words)
+                .execute { resultSet: ResultSet ->
+                    Assert.assertTrue(resultSet.next())
+                    Assert.assertEquals(words, resultSet.getString("words"))
+                }
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2BatchInsert() {
+        val rows = (1..25).map { mapOf("words" to "batch row $it") }
+
+        val jdbc = database.insert()
+                .into("test_table")
+                .rows(rows)
+                .batchSize(10)
+                .runBatch()
+
+        Assert.assertArrayEquals(longArrayOf(10, 10, 5), jdbc)
+
+        val multiRow = database.insert()
+                .into("test_table")
+                .rows(rows)
+                .batchSize(10)
+                .batchMode(Insert.BatchMode.MULTI_ROW)
+                .runBatch()
+
+        Assert.assertArrayEquals(longArrayOf(10, 10, 5), multiRow)
+
+        database.execute("SELECT COUNT(*) FROM test_table WHERE words LIKE 'batch row %'") { resultSet: ResultSet ->
+            Assert.assertTrue(resultSet.next())
+            Assert.assertEquals(50, resultSet.getInt(1))
+        }
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2CloseDatabase() {
+        val scratch = MemoryDatabase.connect("h2scratch", Types.H2Mem, "h2scratch")
+        Assert.assertSame(scratch, MemoryDatabase.connect("h2scratch", Types.H2Mem, "h2scratch"))
+
+        scratch.close()
+
+        Assert.assertNull(Database.getInstance("h2scratch"))
+        Assert.assertTrue(scratch.pool.isClosed)
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2StreamSelect() {
+        database.insert()
+                .into("test_table")
+                .rows((1..10).map { mapOf("words" to "stream row $it") })
+                .runBatch()
+
+        val idleBefore = database.pool.idleCount
+        val streamed = database.select("words")
+                .from("test_table")
+                .where("words LIKE 'stream row %'")
+                .fetchSize(3)
+                .stream { it.getString("words") }
+                .use { rows -> rows.count() }
+
+        Assert.assertEquals(10L, streamed)
+        Assert.assertEquals(idleBefore, database.pool.idleCount)
+
+        val firstTwo = database.select("words")
+                .from("test_table")
+                .where("words LIKE 'stream row %'")
+                .sequence({ it.getString("words") }) { rows -> rows.take(2).toList() }
+
+        Assert.assertEquals(2, firstTwo.size)
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2QueryCache() {
+        val cached = MemoryDatabase.connect("h2cache", Types.H2Mem, "h2cache")
+        try {
+            cached.run("CREATE TABLE cached_table( id integer primary key, words varchar);")
+            cached.insert().into("cached_table").value("id", 1).value("words", "before").run()
+            cached.setQueryCache(QueryCache().setMaxSize(10).setTimeToLive(60_000))
+
+            val read = {
+                var words: String? = null
+                cached.select("words").from("cached_table").where("id", 1).execute { resultSet: ResultSet ->
+                    Assert.assertTrue(resultSet.next())
+                    words = resultSet.getString("words")
+                }
+                words
+            }
+
+            Assert.assertEquals("before", read())
+            Assert.assertEquals("before", read())
+            Assert.assertEquals("before", read())
+            Assert.assertEquals(2L, cached.queryCache.hits)
+            Assert.assertEquals(1L, cached.queryCache.misses)
+
+            cached.update("cached_table").set("words", "after").where("id", 1).run()
+
+            Assert.assertEquals("after", read())
+            Assert.assertEquals(2L, cached.queryCache.misses)
+        } finally {
+            cached.close()
+        }
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2StatementMetrics() {
+        val measured = MemoryDatabase.connect("h2metrics", Types.H2Mem, "h2metrics")
+        try {
+            measured.run("CREATE TABLE measured_table( id integer primary key, words varchar);")
+            measured.setMetrics(StatementMetrics())
+
+            for (id in 1..3) {
+                measured.insert().into("measured_table").value("id", id).value("words", "Row $id").run()
+            }
+            measured.select().from("measured_table").execute { resultSet: ResultSet ->
+                while (resultSet.next()) {
+                }
+            }
+            measured.run("DELETE FROM measured_table WHERE id = 3")
+
+            val insert = measured.metrics.statements.first { it.name.startsWith("INSERT INTO measured_table") }
+            Assert.assertEquals(3L, insert.count)
+            Assert.assertEquals(3L, insert.rowsAffected)
+
+            val select = measured.metrics.getStatement("SELECT * FROM measured_table")
+            Assert.assertEquals(1L, select.count)
+            Assert.assertEquals(3L, select.rowsReturned)
+            Assert.assertTrue(select.latency.getPercentile(0.99) <= select.latency.maxNanos)
+
+            // Raw SQL is counted under its fingerprint, with the literal replaced
+            Assert.assertEquals(1L, measured.metrics.getStatement("DELETE FROM measured_table WHERE id = ?").rowsAffected)
+            Assert.assertEquals(5L, measured.metrics.getType(Statement.Type.DML).count)
+        } finally {
+            measured.close()
+        }
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2SlowQueryLog() {
+        val entries = ArrayBlockingQueue<SlowQuery>(10)
+        val log = SlowQueryLog().setThreshold(50).setHandler { entries.add(it) }
+        database.setSlowQueryLog(log)
+        try {
+            database.select().from("test_table").where("id", 1).execute { resultSet: ResultSet ->
+                resultSet.next()
+                Thread.sleep(100)
+            }
+
+            val entry = entries.poll(5, TimeUnit.SECONDS)
+            Assert.assertNotNull(entry)
+            Assert.assertEquals(listOf(1), entry.parameters)
+            Assert.assertEquals(Thread.currentThread().name, entry.threadName)
+            Assert.assertTrue(entry.totalNanos >= TimeUnit.MILLISECONDS.toNanos(100))
+            Assert.assertTrue(entry.sql.startsWith("SELECT * FROM test_table"))
+        } finally {
+            database.setSlowQueryLog(null)
+            log.close()
+        }
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2FlightRecorderEvents() {
+        val file = Files.createTempFile("hoverdb", ".jfr")
+        try {
+            Recording().use { recording ->
+                recording.enable("com.sultanofcardio.hoverdb.Statement")
+                recording.enable("com.sultanofcardio.hoverdb.Transaction")
+                recording.start()
+
+                database.transaction {
+                    select().from("test_table").where("id", 1).execute { resultSet: ResultSet ->
+                        while (resultSet.next()) {
+                        }
+                    }
+                }
+
+                recording.stop()
+                recording.dump(file)
+            }
+
+            val events = RecordingFile.readAllEvents(file)
+            val statement = events.first { it.eventType.name == "com.sultanofcardio.hoverdb.Statement" }
+            Assert.assertEquals("SELECT * FROM test_table WHERE id = ?", statement.getString("fingerprint"))
+            Assert.assertTrue(events.any { it.eventType.name == "com.sultanofcardio.hoverdb.Transaction" })
+        } finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2StatementInterceptor() {
+        val intercepted = mutableListOf<String>()
+        val interceptor = object : StatementInterceptor {
+            override fun <R> intercept(invocation: StatementInvocation<R>): R {
+                intercepted.add(invocation.sql)
+                // Rewrite the query to only read the first row
+                if (invocation.kind == StatementInvocation.Kind.QUERY) invocation.sql = "${invocation.sql} LIMIT 1"
+                return invocation.proceed()
+            }
+        }
+
+        database.insert().into("test_table").value("words", "Intercepted").run()
+        database.addInterceptor(interceptor)
+        try {
+            var rows = 0
+            database.select().from("test_table").execute { resultSet: ResultSet ->
+                while (resultSet.next()) rows++
+            }
+
+            Assert.assertEquals(1, rows)
+            Assert.assertEquals(listOf("SELECT * FROM test_table"), intercepted)
+        } finally {
+            database.removeInterceptor(interceptor)
+        }
+    }
+
+    @Test
+    @Throws(SQLException::class)
+    fun h2InterceptBatchesAndCacheHits() {
+        val kinds = mutableListOf<StatementInvocation.Kind>()
+        val batchRows = mutableListOf<Int>()
+        val interceptor = object : StatementInterceptor {
+            override fun <R> intercept(invocation: StatementInvocation<R>): R {
+                kinds.add(invocation.kind)
+                if (invocation.kind == StatementInvocation.Kind.BATCH) batchRows.add(invocation.parameters.size)
+                return invocation.proceed()
+            }
+        }
+
+        val rows = (1..3).map { mapOf("words" to "intercepted batch row $it") }
+        database.addInterceptor(interceptor)
+        try {
+            database.insert().into("test_table").rows(rows).batchSize(2).runBatch()
+            Assert.assertEquals(listOf(StatementInvocation.Kind.BATCH, StatementInvocation.Kind.BATCH), kinds)
+            Assert.assertEquals(listOf(2, 1), batchRows)
+
+            kinds.clear()
+            database.insert().into("test_table").rows(rows).batchMode(Insert.BatchMode.MULTI_ROW).runBatch()
+            Assert.assertEquals(listOf(StatementInvocation.Kind.UPDATE), kinds)
+
+            kinds.clear()
+            database.setQueryCache(QueryCache())
+            val read = {
+                database.select("words").from("test_table").where("words", "intercepted batch row 1").execute().use {}
+            }
+            read()
+            read()
+            Assert.assertEquals(1L, database.queryCache.hits)
+            Assert.assertEquals(listOf(StatementInvocation.Kind.QUERY, StatementInvocation.Kind.QUERY), kinds)
+        } finally {
+            database.setQueryCache(null)
+            database.removeInterceptor(interceptor)
+        }
+    }
+
+    @Test
+    fun h2AsyncQuery() {
+        val inserted = database.insert().into("test_table").value("words", "Async").runAsync().get()
+        Assert.assertEquals(1L, inserted)
+
+        val words = database.select("words")
+                .from("test_table")
+                .where("words", "Async")
+                .executeAsync { resultSet: ResultSet -> resultSet.getString("words") }
+                .get(5, TimeUnit.SECONDS)
+
+        Assert.assertTrue(words.isNotEmpty())
+        Assert.assertTrue(words.all { it == "Async" })
+    }
+
+    @Test
+    fun h2CoroutineQuery() = runBlocking {
+        Assert.assertEquals(1L, database.insert().into("test_table").value("words", "Suspended").awaitRun())
+
+        val words = database.select("words")
+                .from("test_table")
+                .where("words", "Suspended")
+                .await { resultSet: ResultSet -> resultSet.getString("words") }
+        Assert.assertTrue(words.isNotEmpty())
+
+        val flowed = database.select("words")
+                .from("test_table")
+                .where("words", "Suspended")
+                .asFlow { resultSet: ResultSet -> resultSet.getString("words") }
+                .toList()
+        Assert.assertEquals(words, flowed)
+    }
+
+    @Test
+    fun h2CoroutineFlowCollectors() = runBlocking(Dispatchers.Default) {
+        database.insert().into("test_table").value("words", "Collected").run()
+
+        // More collectors than connections, each holding its connection while it is slow to collect
+        val collectors = database.pool.maxSize * 4
+        val counts = withTimeout(30_000) {
+            (1..collectors).map {
+                async {
+                    database.select("words")
+                            .from("test_table")
+                            .where("words", "Collected")
+                            .asFlow { resultSet: ResultSet -> resultSet.getString("words") }
+                            .onEach { delay(10) }
+                            .count()
+                }
+            }.awaitAll()
+        }
+
+        Assert.assertEquals(collectors, counts.size)
+        Assert.assertTrue(counts.all { it > 0 })
+    }
+
+    @Test
+    fun h2VirtualThreads() {
+        Assume.assumeTrue(VirtualThreadExecutor.isSupported())
+
+        database.useVirtualThreads()
+        try {
+            val executor = database.asyncExecutor as VirtualThreadExecutor
+            Assert.assertEquals(database.pool.maxSize, executor.maxConcurrency)
+
+            val counts = (1..100).map {
+                database.select().from("test_table").executeAsync { resultSet: ResultSet -> resultSet.getInt("id") }
+            }.map { it.get(5, TimeUnit.SECONDS).size }
+
+            Assert.assertEquals(1, counts.distinct().size)
+            Assert.assertTrue(database.pool.size <= database.pool.maxSize)
+        } finally {
+            database.setAsyncExecutor(null)
+        }
+    }
+
+    @Test
+    fun h2Offset() {
+        for (i in 1..5) database.insert().into("test_table").value("words", "Offset $i").run()
+
+        val all = database.select("id").from("test_table").orderBy("id").execute().use { resources ->
+            resources.resultSet!!.list { it.getInt("id") }
+        }
+        val page = database.select("id").from("test_table").orderBy("id").offset(2).limit(2).execute().use { resources ->
+            resources.resultSet!!.list { it.getInt("id") }
+        }
+
+        Assert.assertEquals(all.drop(2).take(2), page)
+    }
+
+    @Test
+    fun h2Paginate() {
+        for (i in 1..7) database.insert().into("test_table").value("words", "Page $i").run()
+
+        val expected = database.select("id").from("test_table").orderBy("id").execute().use { resources ->
+            resources.resultSet!!.list { it.getInt("id") }
+        }
+        val pages = database.select("id")
+                .from("test_table")
+                .paginate(listOf("id"), 3) { resultSet: ResultSet -> resultSet.getInt("id") }
+                .toList()
+
+        Assert.assertTrue(pages.all { it.size <= 3 })
+        Assert.assertEquals(expected, pages.flatten())
+    }
+
+    @Test
+    fun h2BindInList() {
+        val bound = database.select()
+                .from("SOME_TABLE")
+                .where("id", listOf(1, 2, 3))
+                .bind()
+        println(bound.sql)
+        Assert.assertEquals("SELECT * FROM SOME_TABLE WHERE id IN (?, ?, ?, ?)", bound.sql)
+        Assert.assertEquals(listOf(1, 2, 3, 3), bound.parameters)
+    }
+
+    @Test
+    fun h2LargeInList() {
+        for (i in 1..3) database.insert().into("test_table").value("words", "In list $i").run()
+
+        val expected = database.select("id").from("test_table").execute().use { resources ->
+            resources.resultSet!!.list { it.getInt("id") }
+        }.sorted()
+        val ids = expected + (1..40000).map { -it }
+
+        val chunked = database.select("id").from("test_table").where("id", ids).execute().use { resources ->
+            resources.resultSet!!.list { it.getInt("id") }
+        }
+        Assert.assertEquals(expected, chunked.sorted())
+
+        val streamed = database.select("id").from("test_table").where("id", ids).stream { it.getInt("id") }.use { rows ->
+            rows.iterator().asSequence().toList()
+        }
+        Assert.assertEquals(expected, streamed.sorted())
+
+        val flowed = runBlocking {
+            database.select("id").from("test_table").where("id", ids).asFlow { it.getInt("id") }.toList()
+        }
+        Assert.assertEquals(expected, flowed.sorted())
+
+        database.setTempTableThreshold(1000)
+        try {
+            val joined = database.select("id").from("test_table").where("id", ids).orderBy("id").execute().use { resources ->
+                resources.resultSet!!.list { it.getInt("id") }
+            }
+            Assert.assertEquals(expected, joined)
+        } finally {
+            database.setTempTableThreshold(0)
+        }
+    }
+
+    @Test
+    fun h2Upsert() {
+        database.upsert()
+                .into("test_table")
+                .onConflict("id")
+                .row(mapOf("id" to 1000, "words" to "Upsert A"))
+                .row(mapOf("id" to 1001, "words" to "Upsert B"))
+                .batchMode(Insert.BatchMode.MULTI_ROW)
+                .runBatch()
+
+        database.upsert()
+                .into("test_table")
+                .onConflict("id")
+                .value("id", 1001)
+                .value("words", "Upsert C")
+                .run()
+
+        val words = database.select("words").from("test_table").where("id", listOf(1000, 1001)).orderBy("id")
+                .execute().use { resources -> resources.resultSet!!.list { it.getString("words") } }
+
+        Assert.assertEquals(listOf("Upsert A", "Upsert C"), words)
+    }
+
     companion object {
 
         lateinit var databaseServer: Server
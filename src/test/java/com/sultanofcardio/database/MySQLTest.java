@@ -8,6 +8,7 @@ import com.sultanofcardio.database.sql.statement.Delete;
 import com.sultanofcardio.database.sql.statement.Insert;
 import com.sultanofcardio.database.sql.statement.Select;
 import com.sultanofcardio.database.sql.statement.Update;
+import com.sultanofcardio.database.sql.statement.Upsert;
 import org.junit.*;
 
 import java.sql.ResultSet;
@@ -177,5 +178,17 @@ public class MySQLTest {
         mysqlFormatUpdateLiteral();
     }
 
+    @Test
+    public void mysqlFormatUpsert(){
+        Database database = Database.getInstance("mysqldb");
 
+        Upsert<?> upsert = database.upsert()
+                .into("SOME_TABLE")
+                .onConflict("id")
+                .value("id", 24)
+                .value("name", "Sultan");
+
+        assertEquals("INSERT INTO SOME_TABLE(name, id) VALUES('Sultan', 24) ON DUPLICATE KEY UPDATE name = VALUES(name)",
+                upsert.toString());
+    }
 }
@@ -3,13 +3,17 @@ package com.sultanofcardio.database;
 import com.sultanofcardio.database.sql.Database;
 import com.sultanofcardio.database.sql.statement.Insert;
 import com.sultanofcardio.database.sql.statement.Select;
+import com.sultanofcardio.database.sql.statement.Upsert;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import static com.sultanofcardio.database.sql.types.Types.Oracle;
 import static com.sultanofcardio.database.sql.types.Types.PostgreSQL;
@@ -92,6 +96,73 @@ public class OracleTest {
         assertEquals("SELECT * FROM SOME_TABLE WHERE id = 24 AND ROWNUM <= 1", selectQuery);
     }
 
+    @Test
+    public void oracleFormatOrderedLimit(){
+        Database database = Database.getInstance("oracledb");
+
+        Select<?> select = database.select()
+                .from("SOME_TABLE")
+                .where("id", 24)
+                .orderBy("name")
+                .limit(5);
+
+        assertEquals("SELECT * FROM (SELECT * FROM SOME_TABLE WHERE id = 24 ORDER BY name) WHERE ROWNUM <= 5",
+                select.toString());
+    }
+
+    @Test
+    public void oracleFormatOffset(){
+        Database database = Database.getInstance("oracledb");
+
+        Select<?> select = database.select()
+                .from("SOME_TABLE")
+                .orderBy("name")
+                .offset(20)
+                .limit(10);
+
+        assertEquals("SELECT * FROM SOME_TABLE ORDER BY name OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY", select.toString());
+
+        select = database.select("id", "t.name", "UPPER(words) AS words")
+                .from("SOME_TABLE t")
+                .orderBy("name")
+                .offset(20)
+                .limit(10);
+
+        assertEquals("SELECT id, name, words FROM (SELECT hoverdb_page.*, ROWNUM hoverdb_rownum FROM (SELECT id, " +
+                "t.name, UPPER(words) AS words FROM SOME_TABLE t ORDER BY name) hoverdb_page WHERE ROWNUM <= 30) " +
+                "WHERE hoverdb_rownum > 20", select.toString());
+    }
+
+    @Test
+    public void oracleFormatLargeInList(){
+        Database database = Database.getInstance("oracledb");
+
+        List<Integer> ids = new ArrayList<>();
+        for(int i = 0; i < 2500; i++) ids.add(i);
+
+        String sql = database.select()
+                .from("SOME_TABLE")
+                .where("id", ids)
+                .toString();
+
+        assertTrue(sql.startsWith("SELECT * FROM SOME_TABLE WHERE (id IN (0, 1, 2, "));
+        assertTrue(sql.contains("998, 999) OR id IN (1000, 1001, "));
+        assertTrue(sql.contains("1998, 1999) OR id IN (2000, "));
+        assertTrue(sql.endsWith("2498, 2499))"));
+    }
+
+    @Test
+    public void oracleFormatSeekAfter(){
+        Database database = Database.getInstance("oracledb");
+
+        Select<?> select = database.select()
+                .from("SOME_TABLE")
+                .seekAfter(Arrays.asList("created", "id"), Arrays.asList(100, 24));
+
+        assertEquals("SELECT * FROM SOME_TABLE WHERE created >= 100 AND (created > 100 OR (created = 100 AND id > 24)) " +
+                "ORDER BY created, id", select.toString());
+    }
+
     @Test
     public void oracleFormatInsert(){
         Database database = Database.getInstance("oracledb");
@@ -112,5 +183,19 @@ public class OracleTest {
         System.out.println(selectQuery);
     }
 
+    @Test
+    public void oracleFormatUpsert(){
+        Database database = Database.getInstance("oracledb");
 
+        Upsert<?> upsert = database.upsert()
+                .into("SOME_TABLE")
+                .onConflict("id")
+                .value("id", 24)
+                .value("name", "Sultan");
+
+        assertEquals("MERGE INTO SOME_TABLE hoverdb_target USING (SELECT 'Sultan' name, 24 id FROM DUAL) hoverdb_source " +
+                "ON (hoverdb_target.id = hoverdb_source.id) WHEN MATCHED THEN UPDATE SET name = hoverdb_source.name " +
+                "WHEN NOT MATCHED THEN INSERT (name, id) VALUES (hoverdb_source.name, hoverdb_source.id)",
+                upsert.toString());
+    }
 }
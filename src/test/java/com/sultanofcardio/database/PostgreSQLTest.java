@@ -3,6 +3,7 @@ package com.sultanofcardio.database;
 import com.sultanofcardio.database.sql.Database;
 import com.sultanofcardio.database.sql.ResourceSet;
 import com.sultanofcardio.database.sql.statement.Select;
+import com.sultanofcardio.database.sql.statement.Upsert;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -90,5 +91,21 @@ public class PostgreSQLTest {
         assertEquals("SELECT * FROM SOME_TABLE WHERE id = 24", selectQuery);
     }
 
+    @Test
+    public void postgreSQLFormatUpsert(){
+        Database database = Database.getInstance("postgresqldb");
+
+        Upsert<?> upsert = database.upsert()
+                .into("SOME_TABLE")
+                .onConflict("id")
+                .value("id", 24)
+                .value("name", "Sultan");
 
+        assertEquals("INSERT INTO SOME_TABLE(name, id) VALUES('Sultan', 24) ON CONFLICT (id) DO UPDATE SET " +
+                "name = EXCLUDED.name", upsert.toString());
+
+        upsert.doNothing();
+        assertEquals("INSERT INTO SOME_TABLE(name, id) VALUES('Sultan', 24) ON CONFLICT (id) DO NOTHING",
+                upsert.toString());
+    }
 }
@@ -2,6 +2,7 @@ package com.sultanofcardio.database;
 
 import com.sultanofcardio.database.sql.Database;
 import com.sultanofcardio.database.sql.statement.Select;
+import com.sultanofcardio.database.sql.statement.Upsert;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -90,5 +91,38 @@ public class SQLServerTest {
         assertEquals("SELECT TOP 1 * FROM SOME_TABLE WHERE id = 24", selectQuery);
     }
 
+    @Test
+    public void sqlServerFormatOffset(){
+        Database database = Database.getInstance("sqlserverdb");
+
+        Select<?> ordered = database.select()
+                .from("SOME_TABLE")
+                .orderBy("name")
+                .offset(20)
+                .limit(10);
+
+        assertEquals("SELECT * FROM SOME_TABLE ORDER BY name OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY", ordered.toString());
+
+        Select<?> unordered = database.select()
+                .from("SOME_TABLE")
+                .offset(20);
 
+        assertEquals("SELECT * FROM SOME_TABLE ORDER BY (SELECT NULL) OFFSET 20 ROWS", unordered.toString());
+    }
+
+    @Test
+    public void sqlServerFormatUpsert(){
+        Database database = Database.getInstance("sqlserverdb");
+
+        Upsert<?> upsert = database.upsert()
+                .into("SOME_TABLE")
+                .onConflict("id")
+                .value("id", 24)
+                .value("name", "Sultan");
+
+        assertEquals("MERGE INTO SOME_TABLE hoverdb_target USING (VALUES ('Sultan', 24)) hoverdb_source (name, id) " +
+                "ON (hoverdb_target.id = hoverdb_source.id) WHEN MATCHED THEN UPDATE SET name = hoverdb_source.name " +
+                "WHEN NOT MATCHED THEN INSERT (name, id) VALUES (hoverdb_source.name, hoverdb_source.id);",
+                upsert.toString());
+    }
 }
@@ -1,6 +1,8 @@
 package com.sultanofcardio.database;
 
+import com.sultanofcardio.database.sql.BoundSql;
 import com.sultanofcardio.database.sql.FileDatabase;
+import com.sultanofcardio.database.sql.statement.Condition;
 import com.sultanofcardio.database.sql.statement.Select;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -8,6 +10,8 @@ import org.junit.Test;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.sultanofcardio.database.sql.types.Types.SQLite;
 import static org.junit.Assert.*;
@@ -91,5 +95,43 @@ public class SQLiteTest {
         assertEquals("SELECT * FROM SOME_TABLE WHERE id = 24 AND ROWNUM <= 1", selectQuery);
     }
 
+    @Test
+    public void sqliteBindLargeInList(){
+        FileDatabase database = FileDatabase.getInstance("sqlitedb");
+
+        List<Integer> ids = new ArrayList<>();
+        for(int i = 1; i <= 600; i++) ids.add(i);
+
+        BoundSql bound = database.select()
+                .from("SOME_TABLE")
+                .where("words", "a")
+                .where("id", ids)
+                .bind();
+
+        // Padding the list to 1024 placeholders would go past the 999 parameters SQLite accepts
+        assertEquals(999, bound.getParameters().size());
+        assertEquals(ids, bound.getParameters().subList(1, 601));
+        assertEquals(600, bound.getParameters().get(998));
+    }
+
+    @Test
+    public void sqliteBindLargeInListBeforeCondition(){
+        FileDatabase database = FileDatabase.getInstance("sqlitedb");
+
+        List<Integer> ids = new ArrayList<>();
+        for(int i = 1; i <= 600; i++) ids.add(i);
+
+        BoundSql bound = database.select()
+                .from("SOME_TABLE")
+                .where("id", ids)
+                .where(Condition.eq("words", "a"))
+                .bind();
+
+        // Padding would leave no room for the condition after the list, so the list is not padded
+        assertEquals(601, bound.getParameters().size());
+        assertEquals(ids, bound.getParameters().subList(0, 600));
+        assertEquals("a", bound.getParameters().get(600));
+    }
+
 
 }
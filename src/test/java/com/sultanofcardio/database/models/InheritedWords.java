@@ -0,0 +1,31 @@
+package com.sultanofcardio.database.models;
+
+import com.sultanofcardio.database.Column;
+import com.sultanofcardio.database.EntityName;
+import com.sultanofcardio.database.sql.Database;
+
+/**
+ * Entity whose id column is declared on its superclass
+ */
+@EntityName("test_table")
+public class InheritedWords extends MappedRecord<InheritedWords> {
+    @Column String words;
+
+    InheritedWords(Database database) {
+        super(database);
+    }
+
+    public InheritedWords(Database database, String words) {
+        super(database);
+        this.words = words;
+    }
+
+    public String getWords() {
+        return words;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("InheritedWords{id=%d, words='%s'}", id, words);
+    }
+}
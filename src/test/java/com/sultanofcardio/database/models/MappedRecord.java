@@ -0,0 +1,20 @@
+package com.sultanofcardio.database.models;
+
+import com.sultanofcardio.database.Id;
+import com.sultanofcardio.database.MappedEntity;
+import com.sultanofcardio.database.sql.Database;
+
+/**
+ * Base class whose mapped id is inherited by its entities
+ */
+public abstract class MappedRecord<T extends MappedRecord<T>> extends MappedEntity<T> {
+    @Id(generated = true) int id;
+
+    protected MappedRecord(Database database) {
+        super(database);
+    }
+
+    public int getId() {
+        return id;
+    }
+}
@@ -0,0 +1,38 @@
+package com.sultanofcardio.database.models;
+
+import com.sultanofcardio.database.Column;
+import com.sultanofcardio.database.EntityName;
+import com.sultanofcardio.database.Id;
+import com.sultanofcardio.database.MappedEntity;
+import com.sultanofcardio.database.sql.Database;
+
+/**
+ * Entity whose mapper is generated by the annotation processor
+ */
+@EntityName("test_table")
+public class MappedWords extends MappedEntity<MappedWords> {
+    @Id(generated = true) int id;
+    @Column String words;
+
+    MappedWords(Database database) {
+        super(database);
+    }
+
+    public MappedWords(Database database, String words) {
+        super(database);
+        this.words = words;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getWords() {
+        return words;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MappedWords{id=%d, words='%s'}", id, words);
+    }
+}